@@ -2,6 +2,11 @@ package space.shougat.blog.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Properties specific to JHipster.
  *
@@ -12,4 +17,383 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 @ConfigurationProperties(prefix = "application", ignoreUnknownFields = false)
 public class ApplicationProperties {
 
+    private final Security security = new Security();
+
+    private final Datasource datasource = new Datasource();
+
+    private final Search search = new Search();
+
+    public Security getSecurity() {
+        return security;
+    }
+
+    public Datasource getDatasource() {
+        return datasource;
+    }
+
+    public Search getSearch() {
+        return search;
+    }
+
+    public static class Security {
+
+        private final Jwt jwt = new Jwt();
+
+        private final PasswordHashing passwordHashing = new PasswordHashing();
+
+        private final RateLimit rateLimit = new RateLimit();
+
+        public Jwt getJwt() {
+            return jwt;
+        }
+
+        public PasswordHashing getPasswordHashing() {
+            return passwordHashing;
+        }
+
+        public RateLimit getRateLimit() {
+            return rateLimit;
+        }
+
+        public static class Jwt {
+
+            /**
+             * Maximum number of verified tokens kept in memory, 0 disables the cache.
+             */
+            private int verifiedTokenCacheSize = 10000;
+
+            /**
+             * Id of the key signing new tokens; when empty, tokens are signed with the JHipster JWT secret.
+             */
+            private String activeKeyId;
+
+            /**
+             * Additional base64 encoded HS512 secrets by key id, kept until the tokens they signed have expired.
+             */
+            private Map<String, String> keys = new HashMap<>();
+
+            public int getVerifiedTokenCacheSize() {
+                return verifiedTokenCacheSize;
+            }
+
+            public void setVerifiedTokenCacheSize(int verifiedTokenCacheSize) {
+                this.verifiedTokenCacheSize = verifiedTokenCacheSize;
+            }
+
+            public String getActiveKeyId() {
+                return activeKeyId;
+            }
+
+            public void setActiveKeyId(String activeKeyId) {
+                this.activeKeyId = activeKeyId;
+            }
+
+            public Map<String, String> getKeys() {
+                return keys;
+            }
+
+            public void setKeys(Map<String, String> keys) {
+                this.keys = keys;
+            }
+        }
+
+        public static class PasswordHashing {
+
+            /**
+             * Threads hashing and verifying passwords, defaults to the number of available processors.
+             */
+            private int poolSize = Runtime.getRuntime().availableProcessors();
+
+            /**
+             * Hashing requests waiting for a thread beyond which new requests are rejected with a 429 status.
+             */
+            private int maxQueueSize = 100;
+
+            /**
+             * Time a password hash should take, the BCrypt cost is calibrated at startup to stay within it.
+             */
+            private long targetHashTimeMs = 100;
+
+            /**
+             * Lowest BCrypt cost, used even on machines too slow to reach the target hash time.
+             */
+            private int minCost = 10;
+
+            /**
+             * Highest BCrypt cost.
+             */
+            private int maxCost = 14;
+
+            public int getPoolSize() {
+                return poolSize;
+            }
+
+            public void setPoolSize(int poolSize) {
+                this.poolSize = poolSize;
+            }
+
+            public int getMaxQueueSize() {
+                return maxQueueSize;
+            }
+
+            public void setMaxQueueSize(int maxQueueSize) {
+                this.maxQueueSize = maxQueueSize;
+            }
+
+            public long getTargetHashTimeMs() {
+                return targetHashTimeMs;
+            }
+
+            public void setTargetHashTimeMs(long targetHashTimeMs) {
+                this.targetHashTimeMs = targetHashTimeMs;
+            }
+
+            public int getMinCost() {
+                return minCost;
+            }
+
+            public void setMinCost(int minCost) {
+                this.minCost = minCost;
+            }
+
+            public int getMaxCost() {
+                return maxCost;
+            }
+
+            public void setMaxCost(int maxCost) {
+                this.maxCost = maxCost;
+            }
+        }
+
+        public static class RateLimit {
+
+            private boolean enabled = true;
+
+            /**
+             * Maximum number of token buckets kept in memory, idle buckets are dropped first when it is reached.
+             */
+            private int maxBuckets = 100000;
+
+            /**
+             * Limit of the authentication, registration and password reset endpoints, per IP address and per login.
+             */
+            private final Limit authentication = new Limit(10, 10);
+
+            /**
+             * Limit of the other API calls of anonymous users, per IP address.
+             */
+            private final Limit anonymous = new Limit(60, 120);
+
+            /**
+             * Limit of the API calls of authenticated users, per user, when none of their authorities has a limit.
+             */
+            private final Limit authenticated = new Limit(100, 600);
+
+            /**
+             * Limits of the API calls of authenticated users by authority, the highest one of a user applies.
+             */
+            private Map<String, Limit> authorities = new HashMap<>();
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public int getMaxBuckets() {
+                return maxBuckets;
+            }
+
+            public void setMaxBuckets(int maxBuckets) {
+                this.maxBuckets = maxBuckets;
+            }
+
+            public Limit getAuthentication() {
+                return authentication;
+            }
+
+            public Limit getAnonymous() {
+                return anonymous;
+            }
+
+            public Limit getAuthenticated() {
+                return authenticated;
+            }
+
+            public Map<String, Limit> getAuthorities() {
+                return authorities;
+            }
+
+            public void setAuthorities(Map<String, Limit> authorities) {
+                this.authorities = authorities;
+            }
+
+            public static class Limit {
+
+                /**
+                 * Requests allowed in a burst.
+                 */
+                private int capacity;
+
+                /**
+                 * Sustained rate, at which the bucket is refilled.
+                 */
+                private int requestsPerMinute;
+
+                public Limit() {
+                }
+
+                public Limit(int capacity, int requestsPerMinute) {
+                    this.capacity = capacity;
+                    this.requestsPerMinute = requestsPerMinute;
+                }
+
+                public int getCapacity() {
+                    return capacity;
+                }
+
+                public void setCapacity(int capacity) {
+                    this.capacity = capacity;
+                }
+
+                public int getRequestsPerMinute() {
+                    return requestsPerMinute;
+                }
+
+                public void setRequestsPerMinute(int requestsPerMinute) {
+                    this.requestsPerMinute = requestsPerMinute;
+                }
+            }
+        }
+    }
+
+    public static class Datasource {
+
+        /**
+         * Read replicas of the spring.datasource database, used by the read-only transactions.
+         */
+        private List<Replica> replicas = new ArrayList<>();
+
+        /**
+         * Replication lag beyond which a replica is not used until it has caught up.
+         */
+        private long maxReplicationLagMs = 5000;
+
+        public List<Replica> getReplicas() {
+            return replicas;
+        }
+
+        public void setReplicas(List<Replica> replicas) {
+            this.replicas = replicas;
+        }
+
+        public long getMaxReplicationLagMs() {
+            return maxReplicationLagMs;
+        }
+
+        public void setMaxReplicationLagMs(long maxReplicationLagMs) {
+            this.maxReplicationLagMs = maxReplicationLagMs;
+        }
+
+        public static class Replica {
+
+            private String url;
+
+            /**
+             * Defaults to the spring.datasource username.
+             */
+            private String username;
+
+            /**
+             * Defaults to the spring.datasource password.
+             */
+            private String password;
+
+            public String getUrl() {
+                return url;
+            }
+
+            public void setUrl(String url) {
+                this.url = url;
+            }
+
+            public String getUsername() {
+                return username;
+            }
+
+            public void setUsername(String username) {
+                this.username = username;
+            }
+
+            public String getPassword() {
+                return password;
+            }
+
+            public void setPassword(String password) {
+                this.password = password;
+            }
+        }
+    }
+
+    public static class Search {
+
+        private final Reindex reindex = new Reindex();
+
+        private final Lucene lucene = new Lucene();
+
+        public Reindex getReindex() {
+            return reindex;
+        }
+
+        public Lucene getLucene() {
+            return lucene;
+        }
+
+        public static class Reindex {
+
+            /**
+             * Threads reading the users and sending them to the search index, each one an id range at a time.
+             */
+            private int threads = 4;
+
+            /**
+             * Users read with one query and indexed with one bulk request.
+             */
+            private int batchSize = 1000;
+
+            public int getThreads() {
+                return threads;
+            }
+
+            public void setThreads(int threads) {
+                this.threads = threads;
+            }
+
+            public int getBatchSize() {
+                return batchSize;
+            }
+
+            public void setBatchSize(int batchSize) {
+                this.batchSize = batchSize;
+            }
+        }
+
+        public static class Lucene {
+
+            /**
+             * Directory of the embedded search index, used with the "lucene" profile.
+             */
+            private String directory = "target/lucene";
+
+            public String getDirectory() {
+                return directory;
+            }
+
+            public void setDirectory(String directory) {
+                this.directory = directory;
+            }
+        }
+    }
 }
@@ -1,13 +1,23 @@
 package space.shougat.blog.config;
 
+import space.shougat.blog.security.DomainUserDetailsService;
+
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.*;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.cache.SpringCacheBasedUserCache;
 
 @Configuration
 @EnableCaching
 @AutoConfigureAfter(value = { MetricsConfiguration.class })
 @AutoConfigureBefore(value = { WebConfigurer.class, DatabaseConfiguration.class })
 public class CacheConfiguration {
+
+    @Bean
+    public UserCache userCache(CacheManager cacheManager) throws Exception {
+        return new SpringCacheBasedUserCache(cacheManager.getCache(DomainUserDetailsService.USER_CACHE));
+    }
 }
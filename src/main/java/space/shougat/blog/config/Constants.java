@@ -10,6 +10,9 @@ public final class Constants {
 
     public static final String SYSTEM_ACCOUNT = "system";
 
+    // Searches the users in an embedded Lucene index instead of Elasticsearch
+    public static final String SPRING_PROFILE_LUCENE = "lucene";
+
     private Constants() {
     }
 }
@@ -1,43 +1,59 @@
 package space.shougat.blog.config;
 
-import java.io.IOException;
+import space.shougat.blog.config.elasticsearch.SmileEntityMapper;
+import space.shougat.blog.domain.User;
 
 import org.elasticsearch.client.Client;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
-import org.springframework.data.elasticsearch.core.EntityMapper;
+import org.springframework.data.elasticsearch.core.completion.Completion;
+import org.springframework.data.elasticsearch.repository.config.EnableElasticsearchRepositories;
 import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 
-import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.time.ZonedDateTime;
 
 @Configuration
+@Profile("!" + Constants.SPRING_PROFILE_LUCENE)
+@EnableElasticsearchRepositories("space.shougat.blog.repository.search")
 public class ElasticsearchConfiguration {
 
     @Bean
-    public ElasticsearchTemplate elasticsearchTemplate(Client client, Jackson2ObjectMapperBuilder jackson2ObjectMapperBuilder) {
-        return new ElasticsearchTemplate(client, new CustomEntityMapper(jackson2ObjectMapperBuilder.createXmlMapper(false).build()));
+    public SmileEntityMapper entityMapper(Jackson2ObjectMapperBuilder jackson2ObjectMapperBuilder) {
+        ObjectMapper jsonMapper = jackson2ObjectMapperBuilder.createXmlMapper(false).build();
+        ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+        jackson2ObjectMapperBuilder.configure(smileMapper);
+        for (ObjectMapper objectMapper : new ObjectMapper[]{jsonMapper, smileMapper}) {
+            objectMapper.addMixIn(User.class, UserDocumentMixin.class);
+            objectMapper.addMixIn(Completion.class, CompletionMixin.class);
+        }
+        return new SmileEntityMapper(jsonMapper, smileMapper);
     }
 
-    public class CustomEntityMapper implements EntityMapper {
+    @Bean
+    public ElasticsearchTemplate elasticsearchTemplate(Client client, SmileEntityMapper entityMapper) {
+        return new ElasticsearchTemplate(client, entityMapper);
+    }
 
-        private ObjectMapper objectMapper;
+    /**
+     * Keeps the reset key of the users out of the search index.
+     */
+    abstract static class UserDocumentMixin {
 
-        public CustomEntityMapper(ObjectMapper objectMapper) {
-            this.objectMapper = objectMapper;
-            objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-            objectMapper.configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true);
-        }
+        @JsonIgnore
+        abstract String getResetKey();
 
-        @Override
-        public String mapToString(Object object) throws IOException {
-            return objectMapper.writeValueAsString(object);
-        }
+        @JsonIgnore
+        abstract ZonedDateTime getResetDate();
+    }
 
-        @Override
-        public <T> T mapToObject(String source, Class<T> clazz) throws IOException {
-            return objectMapper.readValue(source, clazz);
-        }
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    abstract static class CompletionMixin {
     }
 }
@@ -0,0 +1,78 @@
+package space.shougat.blog.config;
+
+import space.shougat.blog.config.datasource.ReplicaRoutingDataSource;
+
+import com.codahale.metrics.MetricRegistry;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Send the read-only transactions to the read replicas of the database, when some are configured.
+ * <p>
+ * The primary pool is configured by the spring.datasource properties, as Spring Boot would; each replica gets a
+ * pool with the same settings.
+ * </p>
+ */
+@Configuration
+@ConditionalOnProperty("application.datasource.replicas[0].url")
+public class ReplicaDataSourceConfiguration {
+
+    private final Logger log = LoggerFactory.getLogger(ReplicaDataSourceConfiguration.class);
+
+    @Bean
+    @ConfigurationProperties(prefix = "spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties dataSourceProperties) {
+        return (HikariDataSource) dataSourceProperties.initializeDataSourceBuilder()
+            .type(HikariDataSource.class)
+            .build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public ReplicaRoutingDataSource replicaRoutingDataSource(HikariDataSource primaryDataSource,
+            ApplicationProperties applicationProperties, MetricRegistry metricRegistry) {
+        List<ApplicationProperties.Datasource.Replica> replicas = applicationProperties.getDatasource().getReplicas();
+        Map<String, DataSource> replicaDataSources = new LinkedHashMap<>();
+        for (int i = 0; i < replicas.size(); i++) {
+            ApplicationProperties.Datasource.Replica replica = replicas.get(i);
+            String name = "replica-" + i;
+            HikariConfig config = new HikariConfig();
+            primaryDataSource.copyState(config);
+            config.setPoolName(name);
+            config.setJdbcUrl(replica.getUrl());
+            if (replica.getUsername() != null) {
+                config.setUsername(replica.getUsername());
+                config.setPassword(replica.getPassword());
+            }
+            config.setReadOnly(true);
+            config.setMetricRegistry(metricRegistry);
+            log.info("Configuring read replica {}", replica.getUrl());
+            replicaDataSources.put(name, new HikariDataSource(config));
+        }
+        return new ReplicaRoutingDataSource(primaryDataSource, replicaDataSources,
+            applicationProperties.getDatasource().getMaxReplicationLagMs(), metricRegistry);
+    }
+
+    /**
+     * The DataSource of the application, which gets a connection from the primary or from a replica when the first
+     * statement of a transaction is executed.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+}
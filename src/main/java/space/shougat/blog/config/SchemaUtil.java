@@ -0,0 +1,32 @@
+package space.shougat.blog.config;
+
+import org.slf4j.Logger;
+import org.springframework.dao.InvalidDataAccessResourceUsageException;
+
+/**
+ * Utility class for the tasks reading the database on a schedule.
+ * <p>
+ * Liquibase runs asynchronously in development, so these tasks can run before the schema is up to date: a missing
+ * table or column is then expected for a short while, while any other failure is an error.
+ * </p>
+ */
+public final class SchemaUtil {
+
+    private SchemaUtil() {
+    }
+
+    /**
+     * Log the failure of a scheduled task: as a warning if the schema is not up to date yet, as an error otherwise.
+     *
+     * @param log the logger of the task
+     * @param task what the task could not do, such as "refresh the token revocations"
+     * @param e the failure
+     */
+    public static void logScheduledTaskFailure(Logger log, String task, RuntimeException e) {
+        if (e instanceof InvalidDataAccessResourceUsageException) {
+            log.warn("Could not {}, the schema may not be up to date yet: {}", task, e.getMessage());
+        } else {
+            log.error("Could not {}", task, e);
+        }
+    }
+}
@@ -1,10 +1,16 @@
 package space.shougat.blog.config;
 
+import space.shougat.blog.repository.UserRepository;
 import space.shougat.blog.security.*;
 import space.shougat.blog.security.jwt.*;
+import space.shougat.blog.security.ratelimit.RateLimitFilter;
+import space.shougat.blog.security.ratelimit.RateLimiter;
 
 import io.github.jhipster.security.*;
 
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import org.springframework.beans.factory.BeanInitializationException;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -16,8 +22,8 @@ import org.springframework.security.config.annotation.web.builders.WebSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.userdetails.UserCache;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.data.repository.query.SecurityEvaluationContextExtension;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
@@ -38,22 +44,54 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
 
     private final CorsFilter corsFilter;
 
+    private final PasswordHashingExecutor passwordHashingExecutor;
+
+    private final UserRepository userRepository;
+
+    private final CalibratedPasswordEncoder calibratedPasswordEncoder;
+
+    private final UserCache userCache;
+
+    private final ApplicationProperties applicationProperties;
+
+    private final RateLimiter rateLimiter;
+
+    private final ObjectMapper objectMapper;
+
+    private final MetricRegistry metricRegistry;
+
     public SecurityConfiguration(AuthenticationManagerBuilder authenticationManagerBuilder, UserDetailsService userDetailsService,
             TokenProvider tokenProvider,
-        CorsFilter corsFilter) {
+        CorsFilter corsFilter, PasswordHashingExecutor passwordHashingExecutor, UserRepository userRepository,
+        ApplicationProperties applicationProperties, UserCache userCache, RateLimiter rateLimiter,
+        ObjectMapper objectMapper, MetricRegistry metricRegistry) {
 
         this.authenticationManagerBuilder = authenticationManagerBuilder;
         this.userDetailsService = userDetailsService;
         this.tokenProvider = tokenProvider;
         this.corsFilter = corsFilter;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+        this.userRepository = userRepository;
+        this.userCache = userCache;
+        this.applicationProperties = applicationProperties;
+        this.rateLimiter = rateLimiter;
+        this.objectMapper = objectMapper;
+        this.metricRegistry = metricRegistry;
+        ApplicationProperties.Security.PasswordHashing passwordHashing =
+            applicationProperties.getSecurity().getPasswordHashing();
+        this.calibratedPasswordEncoder = CalibratedPasswordEncoder.calibrate(passwordHashing.getTargetHashTimeMs(),
+            passwordHashing.getMinCost(), passwordHashing.getMaxCost());
     }
 
     @PostConstruct
     public void init() {
         try {
-            authenticationManagerBuilder
-                .userDetailsService(userDetailsService)
-                    .passwordEncoder(passwordEncoder());
+            RehashingAuthenticationProvider authenticationProvider =
+                new RehashingAuthenticationProvider(calibratedPasswordEncoder, passwordEncoder(), userRepository,
+                    userCache);
+            authenticationProvider.setUserDetailsService(userDetailsService);
+            authenticationProvider.afterPropertiesSet();
+            authenticationManagerBuilder.authenticationProvider(authenticationProvider);
         } catch (Exception e) {
             throw new BeanInitializationException("Security configuration failed", e);
         }
@@ -66,7 +104,7 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
 
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return new PooledPasswordEncoder(calibratedPasswordEncoder, passwordHashingExecutor);
     }
 
     @Override
@@ -104,6 +142,7 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
             .antMatchers("/api/authenticate").permitAll()
             .antMatchers("/api/account/reset_password/init").permitAll()
             .antMatchers("/api/account/reset_password/finish").permitAll()
+            .antMatchers("/api/account/availability").permitAll()
             .antMatchers("/api/profile-info").permitAll()
             .antMatchers("/api/**").authenticated()
             .antMatchers("/websocket/tracker").hasAuthority(AuthoritiesConstants.ADMIN)
@@ -115,7 +154,11 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
             .antMatchers("/swagger-ui/index.html").hasAuthority(AuthoritiesConstants.ADMIN)
         .and()
             .apply(securityConfigurerAdapter());
-
+        if (applicationProperties.getSecurity().getRateLimit().isEnabled()) {
+            // after the JWTFilter, which runs before the UsernamePasswordAuthenticationFilter
+            http.addFilterAfter(new RateLimitFilter(rateLimiter, applicationProperties, objectMapper, metricRegistry),
+                UsernamePasswordAuthenticationFilter.class);
+        }
     }
 
     private JWTConfigurer securityConfigurerAdapter() {
@@ -0,0 +1,187 @@
+package space.shougat.blog.config.datasource;
+
+import space.shougat.blog.config.SchemaUtil;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * DataSource sending the read-only transactions to read replicas, and everything else to the primary database.
+ * <p>
+ * The replicas are used in turn, skipping the ones whose replication lag exceeds the maximum: the lag is measured
+ * every second by writing the current time to the heartbeat row of the primary, and reading it back from each
+ * replica. The read-only transactions use the primary when no replica is available.
+ * </p>
+ * <p>
+ * The target is chosen when the first statement of a transaction is executed, so this DataSource must be wrapped in
+ * a {@link LazyConnectionDataSourceProxy}: the transaction managers get their connection before the transaction is
+ * marked read-only.
+ * </p>
+ * <p>
+ * The reads which must see the latest writes, because their result is cached or guards a security decision, are run
+ * with {@link #readFromPrimary(Supplier)}.
+ * </p>
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    private static final String PRIMARY = "primary";
+
+    private static final String UPDATE_HEARTBEAT = "update jhi_replication_heartbeat set beat_time = ? where id = 1";
+
+    private static final String SELECT_HEARTBEAT = "select beat_time from jhi_replication_heartbeat where id = 1";
+
+    private static final ThreadLocal<Boolean> PRIMARY_READS = new ThreadLocal<>();
+
+    private final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    private final JdbcTemplate primaryJdbcTemplate;
+
+    private final List<Replica> replicas = new ArrayList<>();
+
+    private final long maxReplicationLagMs;
+
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    private final Counter primaryFallbacks;
+
+    /**
+     * @param replicas the replica DataSources by name
+     */
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, long maxReplicationLagMs,
+            MetricRegistry metricRegistry) {
+        this.primaryJdbcTemplate = new JdbcTemplate(primary);
+        this.maxReplicationLagMs = maxReplicationLagMs;
+        Map<Object, Object> targetDataSources = new HashMap<>();
+        targetDataSources.put(PRIMARY, primary);
+        replicas.forEach((name, dataSource) -> {
+            Replica replica = new Replica(name, dataSource, metricRegistry);
+            this.replicas.add(replica);
+            targetDataSources.put(name, dataSource);
+        });
+        setTargetDataSources(targetDataSources);
+        setDefaultTargetDataSource(primary);
+        this.primaryFallbacks = metricRegistry.counter(MetricRegistry.name(ReplicaRoutingDataSource.class,
+            "primary-fallbacks"));
+    }
+
+    /**
+     * Run reads on the primary database, including their read-only transactions.
+     * <p>
+     * This applies to the transactions started by the reads: a read-only transaction which already runs on a replica
+     * keeps it. Without replicas, the reads are simply run.
+     * </p>
+     *
+     * @param reads the reads, starting their own transactions
+     * @return the result of the reads
+     */
+    public static <T> T readFromPrimary(Supplier<T> reads) {
+        Boolean previous = PRIMARY_READS.get();
+        PRIMARY_READS.set(Boolean.TRUE);
+        try {
+            return reads.get();
+        } finally {
+            if (previous == null) {
+                PRIMARY_READS.remove();
+            }
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || PRIMARY_READS.get() != null) {
+            return PRIMARY;
+        }
+        int start = nextReplica.getAndIncrement();
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get(Math.floorMod(start + i, replicas.size()));
+            if (replica.lagMs <= maxReplicationLagMs) {
+                replica.selections.inc();
+                return replica.name;
+            }
+        }
+        primaryFallbacks.inc();
+        return PRIMARY;
+    }
+
+    /**
+     * Write the heartbeat to the primary, and measure the replication lag of each replica.
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void checkReplicationLag() {
+        try {
+            primaryJdbcTemplate.update(UPDATE_HEARTBEAT, new Timestamp(System.currentTimeMillis()));
+        } catch (RuntimeException e) {
+            SchemaUtil.logScheduledTaskFailure(log, "write the replication heartbeat", e);
+        }
+        for (Replica replica : replicas) {
+            long lagMs;
+            try {
+                Timestamp heartbeat = replica.jdbcTemplate.queryForObject(SELECT_HEARTBEAT, Timestamp.class);
+                lagMs = heartbeat == null ? Long.MAX_VALUE
+                    : Math.max(0, System.currentTimeMillis() - heartbeat.getTime());
+            } catch (RuntimeException e) {
+                log.warn("Could not read the replication heartbeat of {}: {}", replica.name, e.getMessage());
+                lagMs = Long.MAX_VALUE;
+            }
+            if (lagMs > maxReplicationLagMs && replica.lagMs <= maxReplicationLagMs) {
+                log.warn("Replica {} is lagging behind, it is not used until it has caught up", replica.name);
+            }
+            replica.lagMs = lagMs;
+        }
+    }
+
+    /**
+     * Close the replica DataSources; the primary is managed by the application context.
+     */
+    @Override
+    public void close() throws IOException {
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof Closeable) {
+                ((Closeable) replica.dataSource).close();
+            }
+        }
+    }
+
+    private static final class Replica {
+
+        private final String name;
+
+        private final DataSource dataSource;
+
+        private final JdbcTemplate jdbcTemplate;
+
+        private final Counter selections;
+
+        /**
+         * Not used until the first check.
+         */
+        private volatile long lagMs = Long.MAX_VALUE;
+
+        Replica(String name, DataSource dataSource, MetricRegistry metricRegistry) {
+            this.name = name;
+            this.dataSource = dataSource;
+            this.jdbcTemplate = new JdbcTemplate(dataSource);
+            this.selections = metricRegistry.counter(MetricRegistry.name(ReplicaRoutingDataSource.class, name,
+                "selections"));
+            String lagName = MetricRegistry.name(ReplicaRoutingDataSource.class, name, "lag-ms");
+            metricRegistry.remove(lagName);
+            metricRegistry.register(lagName, (Gauge<Long>) () -> lagMs);
+        }
+    }
+}
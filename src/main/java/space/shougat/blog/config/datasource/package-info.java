@@ -0,0 +1,4 @@
+/**
+ * Datasource specific code.
+ */
+package space.shougat.blog.config.datasource;
@@ -0,0 +1,84 @@
+package space.shougat.blog.config.elasticsearch;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.springframework.data.elasticsearch.core.EntityMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * EntityMapper writing the documents in Smile, the binary encoding of JSON, and reading them from the bytes of the
+ * responses, without intermediate strings.
+ * <p>
+ * The writers and readers of each class are created once, with their root serializer and deserializer. The documents
+ * are read in Smile or in JSON, depending on the format they were indexed in. The string methods, used by the
+ * ElasticsearchTemplate, map JSON.
+ * </p>
+ */
+public class SmileEntityMapper implements EntityMapper {
+
+    private final ObjectMapper jsonMapper;
+
+    private final ObjectMapper smileMapper;
+
+    private final ConcurrentMap<Class<?>, ObjectWriter> smileWriters = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Class<?>, ObjectReader> smileReaders = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Class<?>, ObjectReader> jsonReaders = new ConcurrentHashMap<>();
+
+    public SmileEntityMapper(ObjectMapper jsonMapper, ObjectMapper smileMapper) {
+        if (!(smileMapper.getFactory() instanceof SmileFactory)) {
+            throw new IllegalArgumentException("The Smile mapper must use a SmileFactory");
+        }
+        this.jsonMapper = configure(jsonMapper);
+        this.smileMapper = configure(smileMapper);
+    }
+
+    private static ObjectMapper configure(ObjectMapper objectMapper) {
+        return objectMapper
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true);
+    }
+
+    /**
+     * Write a document in Smile.
+     */
+    public byte[] mapToBytes(Object object) throws IOException {
+        return smileWriters.computeIfAbsent(object.getClass(), smileMapper::writerFor).writeValueAsBytes(object);
+    }
+
+    /**
+     * Read a document from its source, in Smile or in JSON.
+     */
+    public <T> T mapToObject(BytesReference source, Class<T> clazz) throws IOException {
+        ObjectReader reader = XContentFactory.xContentType(source) == XContentType.SMILE
+            ? smileReaders.computeIfAbsent(clazz, smileMapper::readerFor)
+            : jsonReaders.computeIfAbsent(clazz, jsonMapper::readerFor);
+        if (source.hasArray()) {
+            return reader.readValue(source.array(), source.arrayOffset(), source.length());
+        }
+        try (InputStream inputStream = source.streamInput()) {
+            return reader.readValue(inputStream);
+        }
+    }
+
+    @Override
+    public String mapToString(Object object) throws IOException {
+        return jsonMapper.writeValueAsString(object);
+    }
+
+    @Override
+    public <T> T mapToObject(String source, Class<T> clazz) throws IOException {
+        return jsonReaders.computeIfAbsent(clazz, jsonMapper::readerFor).readValue(source);
+    }
+}
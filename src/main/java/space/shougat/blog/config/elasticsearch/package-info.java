@@ -0,0 +1,4 @@
+/**
+ * Elasticsearch specific code.
+ */
+package space.shougat.blog.config.elasticsearch;
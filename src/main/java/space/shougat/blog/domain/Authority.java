@@ -26,6 +26,9 @@ public class Authority implements Serializable {
     @Column(length = 50)
     private String name;
 
+    @Column(name = "bit_index", unique = true)
+    private Integer bitIndex;
+
     public String getName() {
         return name;
     }
@@ -34,6 +37,14 @@ public class Authority implements Serializable {
         this.name = name;
     }
 
+    public Integer getBitIndex() {
+        return bitIndex;
+    }
+
+    public void setBitIndex(Integer bitIndex) {
+        this.bitIndex = bitIndex;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
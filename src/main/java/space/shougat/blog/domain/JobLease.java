@@ -0,0 +1,81 @@
+package space.shougat.blog.domain;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+
+/**
+ * Lease of a scheduled job, held by one node at a time until its expiration.
+ */
+@Entity
+@Table(name = "jhi_job_lease")
+public class JobLease implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @NotNull
+    @Size(max = 50)
+    @Id
+    @Column(length = 50)
+    private String name;
+
+    @Size(max = 100)
+    @Column(length = 100)
+    private String owner;
+
+    @NotNull
+    @Column(name = "locked_until", nullable = false)
+    private ZonedDateTime lockedUntil;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public ZonedDateTime getLockedUntil() {
+        return lockedUntil;
+    }
+
+    public void setLockedUntil(ZonedDateTime lockedUntil) {
+        this.lockedUntil = lockedUntil;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        JobLease jobLease = (JobLease) o;
+        return name != null && name.equals(jobLease.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return name != null ? name.hashCode() : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "JobLease{" +
+            "name='" + name + '\'' +
+            ", owner='" + owner + '\'' +
+            ", lockedUntil='" + lockedUntil + '\'' +
+            "}";
+    }
+}
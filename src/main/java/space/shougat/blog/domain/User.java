@@ -25,7 +25,7 @@ import java.time.ZonedDateTime;
 @Entity
 @Table(name = "jhi_user")
 @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
-@Document(indexName = "user")
+@Document(indexName = "user", createIndex = false)
 public class User extends AbstractAuditingEntity implements Serializable {
 
     private static final long serialVersionUID = 1L;
@@ -83,6 +83,11 @@ public class User extends AbstractAuditingEntity implements Serializable {
     @Column(name = "reset_date")
     private ZonedDateTime resetDate = null;
 
+    @JsonIgnore
+    @Version
+    @Column(nullable = false)
+    private Long version;
+
     @JsonIgnore
     @ManyToMany
     @JoinTable(
@@ -182,6 +187,14 @@ public class User extends AbstractAuditingEntity implements Serializable {
        this.resetDate = resetDate;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public String getLangKey() {
         return langKey;
     }
@@ -0,0 +1,38 @@
+package space.shougat.blog.repository;
+
+import space.shougat.blog.domain.JobLease;
+
+import java.time.ZonedDateTime;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+/**
+ * Spring Data JPA repository for the JobLease entity.
+ */
+public interface JobLeaseRepository extends JpaRepository<JobLease, String> {
+
+    /**
+     * Take the lease if it is expired or already held by this owner.
+     *
+     * @return 1 if the lease is taken, 0 otherwise
+     */
+    @Modifying
+    @Query("update JobLease jobLease set jobLease.owner = :owner, jobLease.lockedUntil = :lockedUntil " +
+        "where jobLease.name = :name and (jobLease.lockedUntil < :now or jobLease.owner = :owner)")
+    int acquire(@Param("name") String name, @Param("owner") String owner, @Param("now") ZonedDateTime now,
+        @Param("lockedUntil") ZonedDateTime lockedUntil);
+
+    @Modifying
+    @Query("update JobLease jobLease set jobLease.owner = null, jobLease.lockedUntil = :now " +
+        "where jobLease.name = :name and jobLease.owner = :owner")
+    int release(@Param("name") String name, @Param("owner") String owner, @Param("now") ZonedDateTime now);
+
+    /**
+     * @return 1 if the lease is held, 0 otherwise
+     */
+    @Query("select count(jobLease) from JobLease jobLease " +
+        "where jobLease.name = :name and jobLease.owner is not null and jobLease.lockedUntil >= :now")
+    long countLocked(@Param("name") String name, @Param("now") ZonedDateTime now);
+}
@@ -0,0 +1,28 @@
+package space.shougat.blog.repository;
+
+import space.shougat.blog.domain.TokenRevocation;
+
+import java.time.ZonedDateTime;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Spring Data JPA repository for the TokenRevocation entity.
+ */
+public interface TokenRevocationRepository extends JpaRepository<TokenRevocation, Long> {
+
+    List<TokenRevocation> findAllByRevokedAtAfter(ZonedDateTime dateTime);
+
+    @Query("select max(tokenRevocation.revokedAt) from TokenRevocation tokenRevocation " +
+        "where tokenRevocation.login = :login")
+    Optional<ZonedDateTime> findLastRevokedAtByLogin(@Param("login") String login);
+
+    @Modifying
+    @Query("delete from TokenRevocation tokenRevocation where tokenRevocation.revokedAt < :dateTime")
+    int deleteAllByRevokedAtBefore(@Param("dateTime") ZonedDateTime dateTime);
+}
@@ -0,0 +1,106 @@
+package space.shougat.blog.repository;
+
+import space.shougat.blog.domain.Authority;
+import space.shougat.blog.domain.User;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Repository inserting and deleting users with JDBC batches.
+ * <p>
+ * The User ids are generated by the database, which prevents Hibernate from batching the inserts: this repository
+ * inserts the users with one batch, reads their ids back with one query, and inserts their authorities with another
+ * batch. The users are not added to the persistence context.
+ * </p>
+ */
+@Repository
+public class UserBatchRepository {
+
+    private static final String INSERT_USER = "insert into jhi_user (login, password_hash, first_name, last_name, " +
+        "email, image_url, activated, lang_key, activation_key, reset_key, created_by, created_date, reset_date, " +
+        "last_modified_by, last_modified_date, version) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+
+    private static final String INSERT_USER_AUTHORITY =
+        "insert into jhi_user_authority (user_id, authority_name) values (?, ?)";
+
+    private static final String DELETE_NOT_ACTIVATED_USER_AUTHORITIES = "delete from jhi_user_authority " +
+        "where user_id in (select id from jhi_user where id between ? and ? and activated = ? and created_date < ?)";
+
+    private static final String SELECT_IDS = "select id, login from jhi_user where login in (:logins)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    public UserBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    /**
+     * Insert new users and their authorities, and set their generated ids.
+     */
+    public void insertAll(List<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_USER, users, users.size(), (ps, user) -> {
+            ps.setString(1, user.getLogin());
+            ps.setString(2, user.getPassword());
+            ps.setString(3, user.getFirstName());
+            ps.setString(4, user.getLastName());
+            ps.setString(5, user.getEmail());
+            ps.setString(6, user.getImageUrl());
+            ps.setBoolean(7, user.getActivated());
+            ps.setString(8, user.getLangKey());
+            ps.setString(9, user.getActivationKey());
+            ps.setString(10, user.getResetKey());
+            ps.setString(11, user.getCreatedBy());
+            ps.setTimestamp(12, toTimestamp(user.getCreatedDate()));
+            ps.setTimestamp(13, toTimestamp(user.getResetDate()));
+            ps.setString(14, user.getLastModifiedBy());
+            ps.setTimestamp(15, toTimestamp(user.getLastModifiedDate()));
+        });
+
+        Map<String, User> usersByLogin = users.stream().collect(Collectors.toMap(User::getLogin, Function.identity()));
+        namedParameterJdbcTemplate.query(SELECT_IDS, new MapSqlParameterSource("logins", usersByLogin.keySet()),
+            rs -> {
+                User user = usersByLogin.get(rs.getString("login"));
+                user.setId(rs.getLong("id"));
+                user.setVersion(0L);
+            });
+
+        List<Object[]> userAuthorities = new ArrayList<>();
+        for (User user : users) {
+            for (Authority authority : user.getAuthorities()) {
+                userAuthorities.add(new Object[]{user.getId(), authority.getName()});
+            }
+        }
+        if (!userAuthorities.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_USER_AUTHORITY, userAuthorities);
+        }
+    }
+
+    /**
+     * Delete the authorities of the not activated users created before a date in a range of ids.
+     *
+     * @return the number of authorities deleted
+     */
+    public int deleteAuthoritiesOfNotActivatedUsers(long minId, long maxId, ZonedDateTime createdBefore) {
+        return jdbcTemplate.update(DELETE_NOT_ACTIVATED_USER_AUTHORITIES, minId, maxId, false,
+            toTimestamp(createdBefore));
+    }
+
+    private static Timestamp toTimestamp(ZonedDateTime date) {
+        return date == null ? null : Timestamp.from(date.toInstant());
+    }
+}
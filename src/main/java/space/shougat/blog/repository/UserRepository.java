@@ -1,23 +1,64 @@
 package space.shougat.blog.repository;
 
 import space.shougat.blog.domain.User;
+import space.shougat.blog.service.dto.UserDTO;
 
 import java.time.ZonedDateTime;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
 
 /**
  * Spring Data JPA repository for the User entity.
  */
 public interface UserRepository extends JpaRepository<User, Long> {
 
+    /**
+     * Projection of the user columns to UserDTOs, without their authorities: the DTOs are not managed entities.
+     */
+    String USER_DTO_QUERY = "select new space.shougat.blog.service.dto.UserDTO(user.id, user.login, user.firstName, " +
+        "user.lastName, user.email, user.activated, user.imageUrl, user.langKey, user.createdBy, user.createdDate, " +
+        "user.lastModifiedBy, user.lastModifiedDate) from User user";
+
     Optional<User> findOneByActivationKey(String activationKey);
 
     List<User> findAllByActivatedIsFalseAndCreatedDateBefore(ZonedDateTime dateTime);
 
+    /**
+     * Lock the next not activated users created before a date, ordered by id.
+     *
+     * @return the id and login of the users
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select user.id, user.login from User user " +
+        "where user.activated = false and user.createdDate < :dateTime and user.id > :id order by user.id")
+    List<Object[]> findIdsAndLoginsByActivatedIsFalseAndCreatedDateBeforeAndIdGreaterThan(
+        @Param("dateTime") ZonedDateTime dateTime, @Param("id") Long id, Pageable pageable);
+
+    /**
+     * Delete the not activated users created before a date in a range of ids; their authorities must be deleted
+     * first.
+     */
+    @Modifying
+    @Query("delete from User user " +
+        "where user.id between :minId and :maxId and user.activated = false and user.createdDate < :dateTime")
+    int deleteAllByIdBetweenAndActivatedIsFalseAndCreatedDateBefore(@Param("minId") Long minId,
+        @Param("maxId") Long maxId, @Param("dateTime") ZonedDateTime dateTime);
+
     Optional<User> findOneByResetKey(String resetKey);
 
     Optional<User> findOneByEmail(String email);
@@ -29,4 +70,87 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     @EntityGraph(attributePaths = "authorities")
     Optional<User> findOneWithAuthoritiesByLogin(String login);
+
+    /**
+     * @return the id and version of the user with this login, to check the ETag of a request without loading the user
+     */
+    @Query("select user.id, user.version from User user where user.login = :login")
+    List<Object[]> findIdAndVersionByLogin(@Param("login") String login);
+
+    @Query(value = USER_DTO_QUERY, countQuery = "select count(user) from User user")
+    Page<UserDTO> findAllAsDTO(Pageable pageable);
+
+    @Query(USER_DTO_QUERY)
+    Slice<UserDTO> findSliceAsDTO(Pageable pageable);
+
+    @Query(USER_DTO_QUERY + " where user.id > :id")
+    Slice<UserDTO> findSliceAsDTOByIdGreaterThan(@Param("id") Long id, Pageable pageable);
+
+    @Query(USER_DTO_QUERY + " where user.id < :id")
+    Slice<UserDTO> findSliceAsDTOByIdLessThan(@Param("id") Long id, Pageable pageable);
+
+    @Query(USER_DTO_QUERY + " where user.login > :login")
+    Slice<UserDTO> findSliceAsDTOByLoginGreaterThan(@Param("login") String login, Pageable pageable);
+
+    @Query(USER_DTO_QUERY + " where user.login < :login")
+    Slice<UserDTO> findSliceAsDTOByLoginLessThan(@Param("login") String login, Pageable pageable);
+
+    /**
+     * @return pairs of user id and authority name
+     */
+    @Query("select user.id, authority.name from User user join user.authorities authority where user.id in :ids")
+    List<Object[]> findAuthorityNamesByUserIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Stream all the users with their authorities, ordered by id, reading the rows with a forward-only cursor and
+     * without storing them in the second-level cache: the stream must be consumed within a transaction, and closed.
+     */
+    @QueryHints({
+        @QueryHint(name = org.hibernate.annotations.QueryHints.FETCH_SIZE, value = "500"),
+        @QueryHint(name = org.hibernate.annotations.QueryHints.CACHE_MODE, value = "IGNORE"),
+        @QueryHint(name = org.hibernate.annotations.QueryHints.READ_ONLY, value = "true")})
+    @Query("select user from User user left join fetch user.authorities order by user.id")
+    Stream<User> streamAllWithAuthorities();
+
+    /**
+     * @return the lowest and highest user ids, null if there is no user
+     */
+    @Query("select min(user.id), max(user.id) from User user")
+    List<Object[]> findIdRange();
+
+    /**
+     * Get the next users of a range of ids, without storing them in the second-level cache.
+     */
+    @QueryHints({
+        @QueryHint(name = org.hibernate.annotations.QueryHints.CACHE_MODE, value = "IGNORE"),
+        @QueryHint(name = org.hibernate.annotations.QueryHints.READ_ONLY, value = "true")})
+    @Query("select user from User user where user.id > :afterId and user.id <= :maxId order by user.id")
+    List<User> findAllByIdGreaterThanAndIdLessThanEqual(@Param("afterId") Long afterId, @Param("maxId") Long maxId,
+        Pageable pageable);
+
+    @Query("select user.login from User user where user.login in :logins")
+    List<String> findLoginsByLoginIn(@Param("logins") Collection<String> logins);
+
+    @Query("select user.email from User user where user.email in :emails")
+    List<String> findEmailsByEmailIn(@Param("emails") Collection<String> emails);
+
+    /**
+     * @return the id, login and e-mail of the users with this login or this e-mail
+     */
+    @Query("select user.id, user.login, user.email from User user where user.login = :login or user.email = :email")
+    List<Object[]> findIdentitiesByLoginOrEmail(@Param("login") String login, @Param("email") String email);
+
+    long countByLogin(String login);
+
+    long countByEmailIgnoreCase(String email);
+
+    /**
+     * Stream the login and e-mail of all the users: the stream must be consumed within a transaction, and closed.
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.FETCH_SIZE, value = "1000"))
+    @Query("select user.login, user.email from User user")
+    Stream<Object[]> streamAllLoginsAndEmails();
+
+    @Query("select user.login, user.email from User user where user.lastModifiedDate > :date")
+    List<Object[]> findLoginsAndEmailsByLastModifiedDateAfter(@Param("date") ZonedDateTime date);
 }
@@ -0,0 +1,123 @@
+package space.shougat.blog.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository of the outbox of the users to index in Elasticsearch, with JDBC.
+ * <p>
+ * An entry only holds the id of a user: the indexer reads the user when the entry is processed, and removes the user
+ * from the index if it no longer exists.
+ * </p>
+ */
+@Repository
+public class UserSearchOutboxRepository {
+
+    private static final String INSERT_ENTRY = "insert into jhi_user_search_outbox (user_id, created_date) values (?, ?)";
+
+    private static final String SELECT_ENTRIES =
+        "select id, user_id, attempts, created_date from jhi_user_search_outbox order by id";
+
+    private static final String DELETE_ENTRIES = "delete from jhi_user_search_outbox where id in (:ids)";
+
+    private static final String INCREMENT_ATTEMPTS =
+        "update jhi_user_search_outbox set attempts = attempts + 1 where id in (:ids)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    public UserSearchOutboxRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    /**
+     * Add an entry for each user, with one batch.
+     */
+    public void insertAll(Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.from(Instant.now());
+        jdbcTemplate.batchUpdate(INSERT_ENTRY, userIds, userIds.size(), (ps, userId) -> {
+            ps.setLong(1, userId);
+            ps.setTimestamp(2, now);
+        });
+    }
+
+    /**
+     * @return the oldest entries, up to a limit
+     */
+    public List<Entry> findOldest(int limit) {
+        return jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(SELECT_ENTRIES);
+            ps.setMaxRows(limit);
+            return ps;
+        }, (rs, rowNum) -> new Entry(rs.getLong("id"), rs.getLong("user_id"), rs.getInt("attempts"),
+            rs.getTimestamp("created_date").toInstant()));
+    }
+
+    public int deleteAll(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return namedParameterJdbcTemplate.update(DELETE_ENTRIES, new MapSqlParameterSource("ids", ids));
+    }
+
+    public int incrementAttempts(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return namedParameterJdbcTemplate.update(INCREMENT_ATTEMPTS, new MapSqlParameterSource("ids", ids));
+    }
+
+    /**
+     * An entry of the outbox.
+     */
+    public static final class Entry {
+
+        private final long id;
+
+        private final long userId;
+
+        private final int attempts;
+
+        private final Instant createdDate;
+
+        public Entry(long id, long userId, int attempts, Instant createdDate) {
+            this.id = id;
+            this.userId = userId;
+            this.attempts = attempts;
+            this.createdDate = createdDate;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public long getUserId() {
+            return userId;
+        }
+
+        /**
+         * The number of times the user was rejected by Elasticsearch.
+         */
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public Instant getCreatedDate() {
+            return createdDate;
+        }
+    }
+}
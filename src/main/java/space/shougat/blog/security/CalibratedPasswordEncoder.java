@@ -0,0 +1,118 @@
+package space.shougat.blog.security;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * Password encoder whose work factor is calibrated against a target hash time, so that hashing takes about the same
+ * time on every machine.
+ * <p>
+ * Hashes are stored in the modular crypt format ("$2a$10$..."), which holds the algorithm and the cost: they are
+ * verified by the encoder of their algorithm, with their own cost, and {@link #upgradeEncoding(String)} tells when
+ * they should be replaced by a hash with the current parameters.
+ * </p>
+ */
+public class CalibratedPasswordEncoder implements PasswordEncoder {
+
+    private static final String BCRYPT = "2a";
+
+    private static final Pattern MODULAR_CRYPT_FORMAT = Pattern.compile("\\A\\$([0-9a-z]+)\\$(\\d\\d)\\$");
+
+    private static final int CALIBRATION_RUNS = 3;
+
+    private final Logger log = LoggerFactory.getLogger(CalibratedPasswordEncoder.class);
+
+    private final int cost;
+
+    private final PasswordEncoder encoder;
+
+    private final Map<String, PasswordEncoder> encodersByAlgorithm;
+
+    public CalibratedPasswordEncoder(int cost) {
+        this.cost = cost;
+        this.encoder = new BCryptPasswordEncoder(cost);
+        Map<String, PasswordEncoder> encoders = new HashMap<>();
+        encoders.put(BCRYPT, encoder);
+        this.encodersByAlgorithm = Collections.unmodifiableMap(encoders);
+    }
+
+    /**
+     * Create an encoder with the highest BCrypt cost whose hash time stays within the target on this machine.
+     *
+     * @param targetHashTimeMs the target hash time, in milliseconds
+     * @param minCost the lowest acceptable cost, used even if it is slower than the target
+     * @param maxCost the highest cost
+     */
+    public static CalibratedPasswordEncoder calibrate(long targetHashTimeMs, int minCost, int maxCost) {
+        long hashTime = Long.MAX_VALUE;
+        for (int i = 0; i < CALIBRATION_RUNS; i++) {
+            long start = System.nanoTime();
+            BCrypt.hashpw("calibration", BCrypt.gensalt(minCost));
+            hashTime = Math.min(hashTime, System.nanoTime() - start);
+        }
+        long targetHashTime = TimeUnit.MILLISECONDS.toNanos(targetHashTimeMs);
+        int cost = minCost;
+        // each additional cost doubles the hash time
+        while (cost < maxCost && hashTime * 2 <= targetHashTime) {
+            cost++;
+            hashTime *= 2;
+        }
+        CalibratedPasswordEncoder calibratedPasswordEncoder = new CalibratedPasswordEncoder(cost);
+        calibratedPasswordEncoder.log.info("Password hashing calibrated to BCrypt cost {} (about {} ms per hash)",
+            cost, TimeUnit.NANOSECONDS.toMillis(hashTime));
+        return calibratedPasswordEncoder;
+    }
+
+    public int getCost() {
+        return cost;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return encoder.encode(rawPassword);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        Matcher matcher = parse(encodedPassword);
+        if (matcher == null) {
+            log.warn("Encoded password is not in the modular crypt format");
+            return false;
+        }
+        PasswordEncoder algorithmEncoder = encodersByAlgorithm.get(matcher.group(1));
+        if (algorithmEncoder == null) {
+            log.warn("Encoded password uses an unsupported algorithm: {}", matcher.group(1));
+            return false;
+        }
+        return algorithmEncoder.matches(rawPassword, encodedPassword);
+    }
+
+    /**
+     * @return true if the password should be hashed again, because its hash uses another algorithm or a lower cost
+     */
+    public boolean upgradeEncoding(String encodedPassword) {
+        Matcher matcher = parse(encodedPassword);
+        if (matcher == null) {
+            return false;
+        }
+        return !BCRYPT.equals(matcher.group(1)) || Integer.parseInt(matcher.group(2)) < cost;
+    }
+
+    private static Matcher parse(String encodedPassword) {
+        if (encodedPassword == null) {
+            return null;
+        }
+        Matcher matcher = MODULAR_CRYPT_FORMAT.matcher(encodedPassword);
+        return matcher.find() ? matcher : null;
+    }
+}
@@ -1,51 +1,101 @@
 package space.shougat.blog.security;
 
+import space.shougat.blog.config.datasource.ReplicaRoutingDataSource;
 import space.shougat.blog.domain.User;
 import space.shougat.blog.repository.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserCache;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.util.*;
 import java.util.stream.Collectors;
 
 /**
  * Authenticate a user from the database.
+ * <p>
+ * Loaded users are kept in the {@link UserCache} with the version of their row, which changes with their password,
+ * activation and authorities. A cached user is only used while the version in the database is the same, so the
+ * changes made by any node apply to the next authentication: checking the version is a query on the login, cheaper
+ * than loading the user with its authorities. The UserService also evicts the users it modifies.
+ * </p>
+ * <p>
+ * The users and their versions are read from the primary database, as a replica could still have their previous
+ * password or authorities.
+ * </p>
  */
 @Component("userDetailsService")
 public class DomainUserDetailsService implements UserDetailsService {
 
+    public static final String USER_CACHE = "space.shougat.blog.security.DomainUserDetailsService.users";
+
     private final Logger log = LoggerFactory.getLogger(DomainUserDetailsService.class);
 
     private final UserRepository userRepository;
 
-    public DomainUserDetailsService(UserRepository userRepository) {
+    private final UserCache userCache;
+
+    private final GrantedAuthorityRegistry grantedAuthorityRegistry;
+
+    public DomainUserDetailsService(UserRepository userRepository, UserCache userCache,
+            GrantedAuthorityRegistry grantedAuthorityRegistry) {
         this.userRepository = userRepository;
+        this.userCache = userCache;
+        this.grantedAuthorityRegistry = grantedAuthorityRegistry;
     }
 
     @Override
-    @Transactional
     public UserDetails loadUserByUsername(final String login) {
         log.debug("Authenticating {}", login);
         String lowercaseLogin = login.toLowerCase(Locale.ENGLISH);
-        Optional<User> userFromDatabase = userRepository.findOneWithAuthoritiesByLogin(lowercaseLogin);
+        UserDetails cachedUser = userCache.getUserFromCache(lowercaseLogin);
+        if (!(cachedUser instanceof VersionedUser) || !isCurrent((VersionedUser) cachedUser)) {
+            cachedUser = loadUserFromDatabase(lowercaseLogin);
+            userCache.putUserInCache(cachedUser);
+        }
+        // authentication erases the password of the returned instance, so never hand out the cached one
+        return new org.springframework.security.core.userdetails.User(cachedUser.getUsername(),
+            cachedUser.getPassword(), cachedUser.getAuthorities());
+    }
+
+    private boolean isCurrent(VersionedUser cachedUser) {
+        List<Object[]> identities = ReplicaRoutingDataSource.readFromPrimary(() ->
+            userRepository.findIdAndVersionByLogin(cachedUser.getUsername()));
+        return !identities.isEmpty() && cachedUser.version.equals(identities.get(0)[1]);
+    }
+
+    private UserDetails loadUserFromDatabase(String lowercaseLogin) {
+        Optional<User> userFromDatabase = ReplicaRoutingDataSource.readFromPrimary(() ->
+            userRepository.findOneWithAuthoritiesByLogin(lowercaseLogin));
         return userFromDatabase.map(user -> {
             if (!user.getActivated()) {
                 throw new UserNotActivatedException("User " + lowercaseLogin + " was not activated");
             }
             List<GrantedAuthority> grantedAuthorities = user.getAuthorities().stream()
-                    .map(authority -> new SimpleGrantedAuthority(authority.getName()))
+                    .map(authority -> grantedAuthorityRegistry.get(authority.getName()))
                 .collect(Collectors.toList());
-            return new org.springframework.security.core.userdetails.User(lowercaseLogin,
-                user.getPassword(),
-                grantedAuthorities);
+            return new VersionedUser(lowercaseLogin, user.getPassword(), grantedAuthorities, user.getVersion());
         }).orElseThrow(() -> new UsernameNotFoundException("User " + lowercaseLogin + " was not found in the " +
         "database"));
     }
+
+    /**
+     * User details with the version of the user they were loaded from.
+     */
+    private static final class VersionedUser extends org.springframework.security.core.userdetails.User {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Long version;
+
+        VersionedUser(String username, String password, Collection<? extends GrantedAuthority> authorities,
+                Long version) {
+            super(username, password, authorities);
+            this.version = version;
+        }
+    }
 }
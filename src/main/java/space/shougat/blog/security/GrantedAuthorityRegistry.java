@@ -0,0 +1,213 @@
+package space.shougat.blog.security;
+
+import space.shougat.blog.config.SchemaUtil;
+import space.shougat.blog.domain.Authority;
+import space.shougat.blog.repository.AuthorityRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Canonical, shared {@link Authority} and {@link GrantedAuthority} instances for the authorities of the jhi_authority
+ * table.
+ * <p>
+ * The table is tiny and almost never changes: it is loaded at startup, reloaded when an unknown authority is
+ * requested, and checked for changes every minute, so that user writes and authentications do not look authorities
+ * up in the database. The shared Authority entities are detached and must not be modified.
+ * </p>
+ * <p>
+ * Each authority with a bit index can be encoded as one bit of a mask, which is how authorities are stored in JWTs.
+ * Decoded authority lists are immutable and shared between all the requests using the same set of authorities.
+ * </p>
+ */
+@Component
+public class GrantedAuthorityRegistry {
+
+    private final Logger log = LoggerFactory.getLogger(GrantedAuthorityRegistry.class);
+
+    private final AuthorityRepository authorityRepository;
+
+    private final ConcurrentMap<Long, List<GrantedAuthority>> authoritiesByMask = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, List<GrantedAuthority>> authoritiesByNames = new ConcurrentHashMap<>();
+
+    private volatile Snapshot snapshot;
+
+    public GrantedAuthorityRegistry(AuthorityRepository authorityRepository) {
+        this.authorityRepository = authorityRepository;
+    }
+
+    /**
+     * Encode authorities as a bit mask.
+     *
+     * @param authorities the authorities to encode
+     * @return the mask, or null if one of the authorities has no bit index
+     */
+    public Long toMask(Collection<? extends GrantedAuthority> authorities) {
+        Snapshot current = getSnapshot();
+        for (GrantedAuthority authority : authorities) {
+            if (!current.authoritiesByName.containsKey(authority.getAuthority())) {
+                current = load();
+                break;
+            }
+        }
+        return toMask(current, authorities);
+    }
+
+    /**
+     * Decode a bit mask created by {@link #toMask(Collection)}. Bits of authorities which do not exist anymore are
+     * ignored.
+     */
+    public List<GrantedAuthority> fromMask(long mask) {
+        List<GrantedAuthority> authorities = authoritiesByMask.get(mask);
+        if (authorities != null) {
+            return authorities;
+        }
+        Snapshot current = getSnapshot();
+        if ((mask & ~current.knownBits) != 0) {
+            current = load();
+        }
+        List<GrantedAuthority> decoded = new ArrayList<>(Long.bitCount(mask));
+        for (long remaining = mask; remaining != 0; remaining &= remaining - 1) {
+            GrantedAuthority authority = current.authoritiesByBit.get(Long.numberOfTrailingZeros(remaining));
+            if (authority != null) {
+                decoded.add(authority);
+            }
+        }
+        authorities = Collections.unmodifiableList(decoded);
+        authoritiesByMask.putIfAbsent(mask, authorities);
+        return authorities;
+    }
+
+    /**
+     * Decode a comma separated list of authority names.
+     */
+    public List<GrantedAuthority> fromNames(String names) {
+        return authoritiesByNames.computeIfAbsent(names, key -> {
+            List<GrantedAuthority> decoded = new ArrayList<>();
+            for (String name : StringUtils.commaDelimitedListToSet(key)) {
+                if (StringUtils.hasText(name)) {
+                    decoded.add(get(name.trim()));
+                }
+            }
+            return Collections.unmodifiableList(decoded);
+        });
+    }
+
+    /**
+     * Return the shared instance for this authority name.
+     */
+    public GrantedAuthority get(String name) {
+        GrantedAuthority authority = getSnapshot().authoritiesByName.get(name);
+        return authority != null ? authority : new SimpleGrantedAuthority(name);
+    }
+
+    /**
+     * Return the shared entity of this authority name, to be added to the authorities of a user.
+     *
+     * @return the authority, or null if it does not exist
+     */
+    public Authority getAuthority(String name) {
+        Authority authority = getSnapshot().entitiesByName.get(name);
+        return authority != null ? authority : load().entitiesByName.get(name);
+    }
+
+    /**
+     * @return the names of all the authorities
+     */
+    public Set<String> getAuthorityNames() {
+        return getSnapshot().entitiesByName.keySet();
+    }
+
+    /**
+     * Reload the authorities from the database, to be called when they are modified.
+     * <p>
+     * This is scheduled to get fired every minute, and at startup.
+     * </p>
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void refresh() {
+        try {
+            load();
+        } catch (RuntimeException e) {
+            SchemaUtil.logScheduledTaskFailure(log, "load the authorities", e);
+        }
+    }
+
+    private synchronized Snapshot load() {
+        log.debug("Loading authorities");
+        Snapshot loaded = new Snapshot(authorityRepository.findAll());
+        Snapshot current = snapshot;
+        if (current != null && current.bitIndexesByName.equals(loaded.bitIndexesByName)) {
+            // keep the decoded authority lists
+            return current;
+        }
+        snapshot = loaded;
+        authoritiesByMask.clear();
+        authoritiesByNames.clear();
+        return loaded;
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        return current != null ? current : load();
+    }
+
+    private Long toMask(Snapshot current, Collection<? extends GrantedAuthority> authorities) {
+        long mask = 0;
+        for (GrantedAuthority authority : authorities) {
+            Integer bit = current.bitsByName.get(authority.getAuthority());
+            if (bit == null) {
+                return null;
+            }
+            mask |= 1L << bit;
+        }
+        return mask;
+    }
+
+    /**
+     * Immutable view of the authority table.
+     */
+    private static final class Snapshot {
+
+        private final Map<String, Authority> entitiesByName;
+
+        private final Map<String, Integer> bitIndexesByName = new HashMap<>();
+
+        private final Map<String, GrantedAuthority> authoritiesByName = new HashMap<>();
+
+        private final Map<String, Integer> bitsByName = new HashMap<>();
+
+        private final Map<Integer, GrantedAuthority> authoritiesByBit = new HashMap<>();
+
+        private final long knownBits;
+
+        Snapshot(List<Authority> authorities) {
+            long bits = 0;
+            Map<String, Authority> entities = new HashMap<>();
+            for (Authority authority : authorities) {
+                entities.put(authority.getName(), authority);
+                bitIndexesByName.put(authority.getName(), authority.getBitIndex());
+                GrantedAuthority grantedAuthority = new SimpleGrantedAuthority(authority.getName());
+                authoritiesByName.put(authority.getName(), grantedAuthority);
+                Integer bit = authority.getBitIndex();
+                if (bit != null && bit >= 0 && bit < Long.SIZE) {
+                    bitsByName.put(authority.getName(), bit);
+                    authoritiesByBit.put(bit, grantedAuthority);
+                    bits |= 1L << bit;
+                }
+            }
+            this.entitiesByName = Collections.unmodifiableMap(entities);
+            this.knownBits = bits;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package space.shougat.blog.security;
+
+import space.shougat.blog.config.ApplicationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Bounded pool running the password hashing and verification, so that a burst of logins or of password changes
+ * cannot take all the web server threads.
+ * <p>
+ * The pool is sized to the number of cores. When too many tasks are already waiting for a thread, new ones are
+ * rejected with a {@link PasswordHashingRejectedException}.
+ * </p>
+ * <p>
+ * The pool only runs the hashes. The requests needing a hash without holding a web server thread, such as the logins,
+ * run on a second pool with one thread per task the hashing pool can hold, running or queued: they run their queries
+ * there, and wait for their hashes.
+ * </p>
+ */
+@Component
+public class PasswordHashingExecutor {
+
+    private static final ThreadLocal<Boolean> RUNNING_TASK = new ThreadLocal<>();
+
+    private final Logger log = LoggerFactory.getLogger(PasswordHashingExecutor.class);
+
+    private final ThreadPoolTaskExecutor executor;
+
+    private final ThreadPoolTaskExecutor requestExecutor;
+
+    private final int poolSize;
+
+    private final Timer latency;
+
+    private final Meter rejections;
+
+    public PasswordHashingExecutor(ApplicationProperties applicationProperties, MetricRegistry metricRegistry) {
+        ApplicationProperties.Security.PasswordHashing passwordHashing =
+            applicationProperties.getSecurity().getPasswordHashing();
+        log.debug("Creating password hashing executor with {} threads", passwordHashing.getPoolSize());
+        poolSize = passwordHashing.getPoolSize();
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(passwordHashing.getPoolSize());
+        executor.setMaxPoolSize(passwordHashing.getPoolSize());
+        executor.setQueueCapacity(passwordHashing.getMaxQueueSize());
+        executor.setThreadNamePrefix("password-hashing-");
+        executor.initialize();
+        requestExecutor = new ThreadPoolTaskExecutor();
+        requestExecutor.setCorePoolSize(passwordHashing.getPoolSize() + passwordHashing.getMaxQueueSize());
+        requestExecutor.setMaxPoolSize(passwordHashing.getPoolSize() + passwordHashing.getMaxQueueSize());
+        requestExecutor.setQueueCapacity(0);
+        requestExecutor.setAllowCoreThreadTimeOut(true);
+        requestExecutor.setThreadNamePrefix("password-hashing-request-");
+        requestExecutor.initialize();
+
+        this.latency = metricRegistry.timer(MetricRegistry.name(PasswordHashingExecutor.class, "latency"));
+        this.rejections = metricRegistry.meter(MetricRegistry.name(PasswordHashingExecutor.class, "rejections"));
+        String queueDepthName = MetricRegistry.name(PasswordHashingExecutor.class, "queue-depth");
+        metricRegistry.remove(queueDepthName);
+        metricRegistry.register(queueDepthName,
+            (Gauge<Integer>) () -> executor.getThreadPoolExecutor().getQueue().size());
+    }
+
+    /**
+     * Run a task on the pool.
+     *
+     * @throws PasswordHashingRejectedException if too many tasks are waiting
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(() -> run(task), executor);
+        } catch (RejectedExecutionException e) {
+            rejections.mark();
+            throw new PasswordHashingRejectedException();
+        }
+    }
+
+    /**
+     * Run a request needing password hashes on the pool of requests, whose hashes then run on the hashing pool.
+     *
+     * @throws PasswordHashingRejectedException if the pool of requests is full
+     */
+    public <T> CompletableFuture<T> submitRequest(Supplier<T> request) {
+        try {
+            return CompletableFuture.supplyAsync(request, requestExecutor);
+        } catch (RejectedExecutionException e) {
+            rejections.mark();
+            throw new PasswordHashingRejectedException();
+        }
+    }
+
+    /**
+     * Run a task on the pool and wait for its result. Tasks started from the pool itself run directly.
+     *
+     * @throws PasswordHashingRejectedException if too many tasks are waiting
+     */
+    public <T> T execute(Supplier<T> task) {
+        if (RUNNING_TASK.get() != null) {
+            return task.get();
+        }
+        return join(submit(task));
+    }
+
+    /**
+     * Run a batch of tasks on the pool and wait for their results, in the order of the tasks.
+     * <p>
+     * At most one task per thread of the pool is submitted at a time, so that the batch does not fill the queue
+     * shared with the logins; tasks started from the pool itself run directly.
+     * </p>
+     *
+     * @throws PasswordHashingRejectedException if the queue is full while no task of the batch is running
+     */
+    public <T> List<T> executeAll(List<Supplier<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (RUNNING_TASK.get() != null) {
+            tasks.forEach(task -> results.add(task.get()));
+            return results;
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<>(tasks.size());
+        for (Supplier<T> task : tasks) {
+            if (futures.size() - results.size() >= poolSize) {
+                results.add(join(futures.get(results.size())));
+            }
+            CompletableFuture<T> future = null;
+            while (future == null) {
+                try {
+                    future = submit(task);
+                } catch (PasswordHashingRejectedException e) {
+                    if (futures.size() == results.size()) {
+                        throw e;
+                    }
+                    // wait for a task of the batch to make room in the pool
+                    results.add(join(futures.get(results.size())));
+                }
+            }
+            futures.add(future);
+        }
+        while (results.size() < futures.size()) {
+            results.add(join(futures.get(results.size())));
+        }
+        return results;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        requestExecutor.shutdown();
+        executor.shutdown();
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private <T> T run(Supplier<T> task) {
+        RUNNING_TASK.set(Boolean.TRUE);
+        try (Timer.Context ignored = latency.time()) {
+            return task.get();
+        } finally {
+            RUNNING_TASK.remove();
+        }
+    }
+}
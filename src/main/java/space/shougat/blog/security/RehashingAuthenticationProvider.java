@@ -0,0 +1,65 @@
+package space.shougat.blog.security;
+
+import space.shougat.blog.config.datasource.ReplicaRoutingDataSource;
+import space.shougat.blog.repository.UserRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * Authentication provider replacing the password hash of a user on successful login, when the hash was created with
+ * outdated parameters.
+ *
+ * @see CalibratedPasswordEncoder#upgradeEncoding(String)
+ */
+public class RehashingAuthenticationProvider extends DaoAuthenticationProvider {
+
+    private final Logger log = LoggerFactory.getLogger(RehashingAuthenticationProvider.class);
+
+    private final CalibratedPasswordEncoder calibratedPasswordEncoder;
+
+    private final PasswordEncoder passwordEncoder;
+
+    private final UserRepository userRepository;
+
+    private final UserCache userCache;
+
+    /**
+     * @param calibratedPasswordEncoder the encoder telling which hashes are outdated
+     * @param passwordEncoder the encoder hashing and verifying the passwords, delegating to the calibrated encoder
+     * @param userRepository the repository the upgraded hashes are saved to
+     * @param userCache the cache of the user details service, from which the upgraded users are evicted
+     */
+    public RehashingAuthenticationProvider(CalibratedPasswordEncoder calibratedPasswordEncoder,
+            PasswordEncoder passwordEncoder, UserRepository userRepository, UserCache userCache) {
+        this.calibratedPasswordEncoder = calibratedPasswordEncoder;
+        this.passwordEncoder = passwordEncoder;
+        this.userRepository = userRepository;
+        this.userCache = userCache;
+        setPasswordEncoder(passwordEncoder);
+    }
+
+    @Override
+    protected void additionalAuthenticationChecks(UserDetails userDetails,
+            UsernamePasswordAuthenticationToken authentication) {
+        super.additionalAuthenticationChecks(userDetails, authentication);
+        String encodedPassword = userDetails.getPassword();
+        if (calibratedPasswordEncoder.upgradeEncoding(encodedPassword)) {
+            String rawPassword = authentication.getCredentials().toString();
+            ReplicaRoutingDataSource.readFromPrimary(() -> userRepository.findOneByLogin(userDetails.getUsername()))
+                // do not overwrite a password changed in the meantime
+                .filter(user -> encodedPassword.equals(user.getPassword()))
+                .ifPresent(user -> {
+                    user.setPassword(passwordEncoder.encode(rawPassword));
+                    userRepository.save(user);
+                    userCache.removeUserFromCache(user.getLogin());
+                    log.debug("Upgraded the password hash of User: {}", user.getLogin());
+                });
+        }
+    }
+}
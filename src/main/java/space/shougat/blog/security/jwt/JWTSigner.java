@@ -0,0 +1,200 @@
+package space.shougat.blog.security.jwt;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.*;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.util.StringUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.*;
+import io.jsonwebtoken.impl.DefaultClaims;
+import io.jsonwebtoken.impl.DefaultJwsHeader;
+import io.jsonwebtoken.impl.TextCodec;
+
+/**
+ * Signs and verifies HS512 compact JWTs.
+ * <p>
+ * The key material and the encoded JOSE header of every key are computed once, and each thread reuses its own
+ * {@link Mac} instance per key instead of creating and initializing one for every token.
+ * </p>
+ * <p>
+ * Several keys can be active at the same time: new tokens are signed with the active key and carry its id in the
+ * "kid" header, while tokens signed with any other configured key are still accepted. Tokens without a "kid" header
+ * are verified with the legacy key, so tokens issued before key rotation was configured remain valid.
+ * </p>
+ */
+public class JWTSigner {
+
+    private static final String ALGORITHM = "HS512";
+
+    private static final String MAC_ALGORITHM = "HmacSHA512";
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final SigningKey legacyKey;
+
+    private final Map<String, SigningKey> keysById = new HashMap<>();
+
+    private final Map<String, SigningKey> keysByEncodedHeader = new HashMap<>();
+
+    private final SigningKey activeKey;
+
+    /**
+     * @param legacySecret the base64 encoded secret used for tokens without a "kid" header
+     * @param secretsById additional base64 encoded secrets, by key id
+     * @param activeKeyId the id of the key used to sign new tokens, or null to sign with the legacy secret
+     */
+    public JWTSigner(String legacySecret, Map<String, String> secretsById, String activeKeyId) {
+        this.legacyKey = new SigningKey(null, legacySecret);
+        keysByEncodedHeader.put(legacyKey.encodedHeader, legacyKey);
+        secretsById.forEach((id, secret) -> {
+            SigningKey key = new SigningKey(id, secret);
+            keysById.put(id, key);
+            keysByEncodedHeader.put(key.encodedHeader, key);
+        });
+        if (StringUtils.hasText(activeKeyId)) {
+            this.activeKey = keysById.get(activeKeyId);
+            if (this.activeKey == null) {
+                throw new IllegalArgumentException("No JWT signing key is configured with id " + activeKeyId);
+            }
+        } else {
+            this.activeKey = legacyKey;
+        }
+    }
+
+    /**
+     * Sign the claims with the active key.
+     *
+     * @param claims the claims, as JSON compatible values
+     * @return the compact JWT
+     */
+    public String sign(Map<String, Object> claims) {
+        String payload;
+        try {
+            payload = ENCODER.encodeToString(objectMapper.writeValueAsBytes(claims));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to serialize JWT claims", e);
+        }
+        String signingInput = activeKey.encodedHeader + '.' + payload;
+        return signingInput + '.' + ENCODER.encodeToString(activeKey.mac(signingInput));
+    }
+
+    /**
+     * Verify the signature and the expiration of the token.
+     *
+     * @param token the compact JWT
+     * @return the claims of the token
+     * @throws SignatureException if the token was not signed with one of the configured keys
+     * @throws MalformedJwtException if the token is not a compact JWS
+     * @throws ExpiredJwtException if the token has expired
+     * @throws PrematureJwtException if the token is not valid yet
+     */
+    public Claims verify(String token) {
+        int headerEnd = token.indexOf('.');
+        int payloadEnd = token.lastIndexOf('.');
+        if (headerEnd < 0 || headerEnd == payloadEnd || token.indexOf('.', headerEnd + 1) != payloadEnd) {
+            throw new MalformedJwtException("JWT strings must contain exactly 2 period characters.");
+        }
+        String encodedHeader = token.substring(0, headerEnd);
+        SigningKey key = keysByEncodedHeader.get(encodedHeader);
+        Map<String, Object> header;
+        if (key != null) {
+            header = key.header;
+        } else {
+            header = readJson(encodedHeader);
+            if (!ALGORITHM.equals(header.get(JwsHeader.ALGORITHM))) {
+                throw new SignatureException("Unsupported JWT signing algorithm " + header.get(JwsHeader.ALGORITHM));
+            }
+            Object keyId = header.get(JwsHeader.KEY_ID);
+            key = keyId == null ? legacyKey : keysById.get(keyId.toString());
+            if (key == null) {
+                throw new SignatureException("Unknown JWT signing key " + keyId);
+            }
+        }
+
+        byte[] signature;
+        try {
+            signature = DECODER.decode(token.substring(payloadEnd + 1));
+        } catch (IllegalArgumentException e) {
+            throw new MalformedJwtException("Unable to decode JWT signature", e);
+        }
+        if (!MessageDigest.isEqual(signature, key.mac(token.substring(0, payloadEnd)))) {
+            throw new SignatureException("JWT signature does not match locally computed signature. " +
+                "JWT validity cannot be asserted and should not be trusted.");
+        }
+
+        Claims claims = new DefaultClaims(readJson(token.substring(headerEnd + 1, payloadEnd)));
+        long now = System.currentTimeMillis();
+        Date expiration = claims.getExpiration();
+        if (expiration != null && now > expiration.getTime()) {
+            throw new ExpiredJwtException(new DefaultJwsHeader(header), claims,
+                "JWT expired at " + expiration + ". Current time: " + new Date(now));
+        }
+        Date notBefore = claims.getNotBefore();
+        if (notBefore != null && now < notBefore.getTime()) {
+            throw new PrematureJwtException(new DefaultJwsHeader(header), claims,
+                "JWT must not be accepted before " + notBefore + ". Current time: " + new Date(now));
+        }
+        return claims;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readJson(String segment) {
+        try {
+            return objectMapper.readValue(DECODER.decode(segment), Map.class);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new MalformedJwtException("Unable to read JWT segment", e);
+        }
+    }
+
+    private final class SigningKey {
+
+        private final SecretKeySpec keySpec;
+
+        private final Map<String, Object> header = new LinkedHashMap<>();
+
+        private final String encodedHeader;
+
+        private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
+
+        SigningKey(String id, String base64Secret) {
+            if (!StringUtils.hasText(base64Secret)) {
+                throw new IllegalArgumentException("The JWT secret of key " + id + " must not be empty");
+            }
+            this.keySpec = new SecretKeySpec(TextCodec.BASE64.decode(base64Secret), MAC_ALGORITHM);
+            header.put(JwsHeader.ALGORITHM, ALGORITHM);
+            if (id != null) {
+                header.put(JwsHeader.KEY_ID, id);
+            }
+            try {
+                this.encodedHeader = ENCODER.encodeToString(objectMapper.writeValueAsBytes(header));
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to serialize JWT header", e);
+            }
+            newMac();
+        }
+
+        byte[] mac(String signingInput) {
+            return macs.get().doFinal(signingInput.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        private Mac newMac() {
+            try {
+                Mac mac = Mac.getInstance(MAC_ALGORITHM);
+                mac.init(keySpec);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Unable to initialize " + MAC_ALGORITHM, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package space.shougat.blog.security.jwt;
+
+import space.shougat.blog.config.SchemaUtil;
+import space.shougat.blog.domain.TokenRevocation;
+import space.shougat.blog.repository.TokenRevocationRepository;
+import space.shougat.blog.service.util.BloomFilter;
+
+import io.github.jhipster.config.JHipsterProperties;
+
+import java.time.ZonedDateTime;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Denylist of revoked JWTs: a revocation rejects all the tokens issued to a user up to the revocation date.
+ * <p>
+ * Revocations are stored in the jhi_token_revocation table, so that they are shared by all the nodes. Each node keeps
+ * a Bloom filter of the revoked logins and the exact revocation dates in memory, and refreshes them incrementally
+ * from the table: checking a token never needs a database access, and most tokens are cleared by the Bloom filter
+ * alone.
+ * </p>
+ * <p>
+ * The "iat" claim of the tokens is in seconds, so revocations are compared in seconds too: a token issued in the
+ * second of a revocation is accepted, as it may be the one of a login right after a password change.
+ * </p>
+ * <p>
+ * Until the revocations are loaded, the tokens are checked against the table, so that a node failing to load them
+ * does not accept the revoked tokens; the "loaded" gauge reports whether they are.
+ * </p>
+ */
+@Component
+public class TokenDenylist {
+
+    private static final int MIN_EXPECTED_REVOCATIONS = 1024;
+
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    /**
+     * Revocations committed by other nodes can become visible a little after their revocation date.
+     */
+    private static final long REFRESH_OVERLAP_SECONDS = 60;
+
+    private final Logger log = LoggerFactory.getLogger(TokenDenylist.class);
+
+    private final TokenRevocationRepository tokenRevocationRepository;
+
+    private final JHipsterProperties jHipsterProperties;
+
+    private final Counter bloomPositives;
+
+    private final Counter revokedTokens;
+
+    private final Counter databaseChecks;
+
+    private volatile Revocations revocations = new Revocations(MIN_EXPECTED_REVOCATIONS);
+
+    private volatile ZonedDateTime lastRefresh;
+
+    public TokenDenylist(TokenRevocationRepository tokenRevocationRepository, JHipsterProperties jHipsterProperties,
+            MetricRegistry metricRegistry) {
+        this.tokenRevocationRepository = tokenRevocationRepository;
+        this.jHipsterProperties = jHipsterProperties;
+        this.bloomPositives = metricRegistry.counter(MetricRegistry.name(TokenDenylist.class, "bloom-positives"));
+        this.revokedTokens = metricRegistry.counter(MetricRegistry.name(TokenDenylist.class, "revoked-tokens"));
+        this.databaseChecks = metricRegistry.counter(MetricRegistry.name(TokenDenylist.class, "database-checks"));
+        String loadedName = MetricRegistry.name(TokenDenylist.class, "loaded");
+        metricRegistry.remove(loadedName);
+        metricRegistry.register(loadedName, (Gauge<Boolean>) this::isLoaded);
+    }
+
+    /**
+     * Check whether a token was revoked.
+     *
+     * @param login the subject of the token
+     * @param issuedAt the "iat" claim of the token, tokens without it are revoked by any revocation of their user
+     * @return true if the token must be rejected
+     */
+    public boolean isRevoked(String login, Date issuedAt) {
+        Long revokedAt;
+        if (lastRefresh == null) {
+            databaseChecks.inc();
+            revokedAt = tokenRevocationRepository.findLastRevokedAtByLogin(login)
+                .map(ZonedDateTime::toEpochSecond)
+                .orElse(null);
+        } else {
+            Revocations current = revocations;
+            if (!current.bloomFilter.mightContain(login)) {
+                return false;
+            }
+            bloomPositives.inc();
+            revokedAt = current.revokedAtByLogin.get(login);
+        }
+        if (revokedAt == null || (issuedAt != null && issuedAt.getTime() / 1000 >= revokedAt)) {
+            return false;
+        }
+        revokedTokens.inc();
+        return true;
+    }
+
+    /**
+     * @return true if the revocations were loaded, false if the tokens are checked against the table
+     */
+    public boolean isLoaded() {
+        return lastRefresh != null;
+    }
+
+    /**
+     * Revoke all the tokens issued to this user before the current second.
+     * <p>
+     * The revocation applies on this node once the transaction is committed, so that a rollback does not leave it
+     * in memory until the next reload.
+     * </p>
+     */
+    @Transactional
+    public void revokeTokens(String login) {
+        TokenRevocation tokenRevocation = new TokenRevocation();
+        tokenRevocation.setLogin(login);
+        tokenRevocation.setRevokedAt(ZonedDateTime.now());
+        tokenRevocationRepository.save(tokenRevocation);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                revocations.add(tokenRevocation);
+                log.debug("Revoked the tokens of user {}", login);
+            }
+        });
+    }
+
+    /**
+     * Load the revocations created since the last refresh, by this node or by the others.
+     */
+    @Scheduled(fixedDelay = 10000)
+    public void refresh() {
+        try {
+            if (lastRefresh == null) {
+                reload();
+                return;
+            }
+            ZonedDateTime now = ZonedDateTime.now();
+            List<TokenRevocation> created =
+                tokenRevocationRepository.findAllByRevokedAtAfter(lastRefresh.minusSeconds(REFRESH_OVERLAP_SECONDS));
+            Revocations current = revocations;
+            created.forEach(current::add);
+            lastRefresh = now;
+        } catch (RuntimeException e) {
+            SchemaUtil.logScheduledTaskFailure(log, "refresh the token revocations", e);
+        }
+    }
+
+    /**
+     * Revocations older than the longest token validity cannot match a valid token anymore: delete them, and rebuild
+     * the Bloom filter without them.
+     * <p>
+     * This is scheduled to get fired every hour.
+     * </p>
+     */
+    @Scheduled(cron = "0 30 * * * ?")
+    @Transactional
+    public void removeObsoleteRevocations() {
+        int deleted = tokenRevocationRepository.deleteAllByRevokedAtBefore(obsoleteBefore());
+        log.debug("Deleted {} obsolete token revocations", deleted);
+        reload();
+    }
+
+    private void reload() {
+        ZonedDateTime now = ZonedDateTime.now();
+        List<TokenRevocation> all = tokenRevocationRepository.findAllByRevokedAtAfter(obsoleteBefore());
+        Revocations reloaded = new Revocations(Math.max(MIN_EXPECTED_REVOCATIONS, 2 * all.size()));
+        all.forEach(reloaded::add);
+        revocations = reloaded;
+        lastRefresh = now;
+        log.debug("Loaded {} token revocations", all.size());
+    }
+
+    private ZonedDateTime obsoleteBefore() {
+        JHipsterProperties.Security.Authentication.Jwt jwt = jHipsterProperties.getSecurity().getAuthentication().getJwt();
+        long maxValidity = Math.max(jwt.getTokenValidityInSeconds(), jwt.getTokenValidityInSecondsForRememberMe());
+        return ZonedDateTime.now().minusSeconds(maxValidity);
+    }
+
+    private static final class Revocations {
+
+        private final BloomFilter bloomFilter;
+
+        /**
+         * Revocation dates, in seconds since the epoch.
+         */
+        private final ConcurrentMap<String, Long> revokedAtByLogin = new ConcurrentHashMap<>();
+
+        Revocations(int expectedRevocations) {
+            this.bloomFilter = new BloomFilter(expectedRevocations, FALSE_POSITIVE_PROBABILITY);
+        }
+
+        void add(TokenRevocation tokenRevocation) {
+            long revokedAt = tokenRevocation.getRevokedAt().toEpochSecond();
+            revokedAtByLogin.merge(tokenRevocation.getLogin(), revokedAt, Math::max);
+            bloomFilter.put(tokenRevocation.getLogin());
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package space.shougat.blog.security.jwt;
 
+import space.shougat.blog.config.ApplicationProperties;
+import space.shougat.blog.security.GrantedAuthorityRegistry;
+
 import io.github.jhipster.config.JHipsterProperties;
 
 import java.util.*;
@@ -8,13 +11,11 @@ import javax.annotation.PostConstruct;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
-import org.springframework.security.core.userdetails.User;
 import org.springframework.stereotype.Component;
 
+import com.codahale.metrics.MetricRegistry;
 import io.jsonwebtoken.*;
 
 @Component
@@ -24,7 +25,7 @@ public class TokenProvider {
 
     private static final String AUTHORITIES_KEY = "auth";
 
-    private String secretKey;
+    private JWTSigner jwtSigner;
 
     private long tokenValidityInMilliseconds;
 
@@ -32,14 +33,30 @@ public class TokenProvider {
 
     private final JHipsterProperties jHipsterProperties;
 
-    public TokenProvider(JHipsterProperties jHipsterProperties) {
+    private final ApplicationProperties applicationProperties;
+
+    private final GrantedAuthorityRegistry grantedAuthorityRegistry;
+
+    private final TokenDenylist tokenDenylist;
+
+    private final VerifiedTokenCache verifiedTokenCache;
+
+    public TokenProvider(JHipsterProperties jHipsterProperties, ApplicationProperties applicationProperties,
+            GrantedAuthorityRegistry grantedAuthorityRegistry, TokenDenylist tokenDenylist,
+            MetricRegistry metricRegistry) {
         this.jHipsterProperties = jHipsterProperties;
+        this.applicationProperties = applicationProperties;
+        this.grantedAuthorityRegistry = grantedAuthorityRegistry;
+        this.tokenDenylist = tokenDenylist;
+        this.verifiedTokenCache = new VerifiedTokenCache(
+            applicationProperties.getSecurity().getJwt().getVerifiedTokenCacheSize(), metricRegistry);
     }
 
     @PostConstruct
     public void init() {
-        this.secretKey =
-            jHipsterProperties.getSecurity().getAuthentication().getJwt().getSecret();
+        ApplicationProperties.Security.Jwt jwt = applicationProperties.getSecurity().getJwt();
+        this.jwtSigner = new JWTSigner(jHipsterProperties.getSecurity().getAuthentication().getJwt().getSecret(),
+            jwt.getKeys(), jwt.getActiveKeyId());
 
         this.tokenValidityInMilliseconds =
             1000 * jHipsterProperties.getSecurity().getAuthentication().getJwt().getTokenValidityInSeconds();
@@ -47,10 +64,20 @@ public class TokenProvider {
             1000 * jHipsterProperties.getSecurity().getAuthentication().getJwt().getTokenValidityInSecondsForRememberMe();
     }
 
+    /**
+     * Create a token for this authentication.
+     * <p>
+     * Authorities are stored in the "auth" claim as a bit mask (see {@link GrantedAuthorityRegistry}), or as a comma
+     * separated list of names if one of them has no bit index.
+     * </p>
+     */
     public String createToken(Authentication authentication, Boolean rememberMe) {
-        String authorities = authentication.getAuthorities().stream()
-            .map(GrantedAuthority::getAuthority)
-            .collect(Collectors.joining(","));
+        Object authorities = grantedAuthorityRegistry.toMask(authentication.getAuthorities());
+        if (authorities == null) {
+            authorities = authentication.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .collect(Collectors.joining(","));
+        }
 
         long now = (new Date()).getTime();
         Date validity;
@@ -60,33 +87,72 @@ public class TokenProvider {
             validity = new Date(now + this.tokenValidityInMilliseconds);
         }
 
-        return Jwts.builder()
-            .setSubject(authentication.getName())
-            .claim(AUTHORITIES_KEY, authorities)
-            .signWith(SignatureAlgorithm.HS512, secretKey)
-            .setExpiration(validity)
-            .compact();
+        Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put(Claims.SUBJECT, authentication.getName());
+        claims.put(AUTHORITIES_KEY, authorities);
+        claims.put(Claims.ISSUED_AT, now / 1000);
+        claims.put(Claims.EXPIRATION, validity.getTime() / 1000);
+        return jwtSigner.sign(claims);
     }
 
     public Authentication getAuthentication(String token) {
-        Claims claims = Jwts.parser()
-            .setSigningKey(secretKey)
-            .parseClaimsJws(token)
-            .getBody();
-
-        Collection<? extends GrantedAuthority> authorities =
-            Arrays.stream(claims.get(AUTHORITIES_KEY).toString().split(","))
-                .map(SimpleGrantedAuthority::new)
-                .collect(Collectors.toList());
+        Claims claims = jwtSigner.verify(token);
+        return new VerifiedToken(claims.getSubject(), getAuthorities(claims), claims.getIssuedAt(),
+            claims.getExpiration()).toAuthentication();
+    }
 
-        User principal = new User(claims.getSubject(), "", authorities);
+    /**
+     * Validate the token and build its authentication, verifying the signature at most once per token.
+     * <p>
+     * The denylist is checked on every call, so a revocation also applies to the tokens already in the cache. The
+     * cache keeps the login and the authorities of the tokens, and each call gets a new authentication.
+     * </p>
+     *
+     * @param authToken the compact JWT
+     * @return the authentication, or null if the signature is invalid or the token was revoked
+     * @throws ExpiredJwtException if the token has expired
+     */
+    public Authentication getAuthenticationIfValid(String authToken) {
+        VerifiedToken verifiedToken = verifiedTokenCache.get(authToken);
+        if (verifiedToken == null) {
+            Claims claims;
+            try {
+                claims = jwtSigner.verify(authToken);
+            } catch (SignatureException e) {
+                log.info("Invalid JWT signature: " + e.getMessage());
+                return null;
+            }
+            verifiedToken = new VerifiedToken(claims.getSubject(), getAuthorities(claims), claims.getIssuedAt(),
+                claims.getExpiration());
+            verifiedTokenCache.put(authToken, verifiedToken);
+        }
+        if (tokenDenylist.isRevoked(verifiedToken.getLogin(), verifiedToken.getIssuedAt())) {
+            log.info("Revoked JWT of user {}", verifiedToken.getLogin());
+            return null;
+        }
+        return verifiedToken.toAuthentication();
+    }
 
-        return new UsernamePasswordAuthenticationToken(principal, "", authorities);
+    private List<GrantedAuthority> getAuthorities(Claims claims) {
+        Object encodedAuthorities = claims.get(AUTHORITIES_KEY);
+        List<GrantedAuthority> authorities;
+        if (encodedAuthorities instanceof Number) {
+            authorities = grantedAuthorityRegistry.fromMask(((Number) encodedAuthorities).longValue());
+        } else if (encodedAuthorities != null) {
+            authorities = grantedAuthorityRegistry.fromNames(encodedAuthorities.toString());
+        } else {
+            authorities = Collections.emptyList();
+        }
+        return authorities;
     }
 
     public boolean validateToken(String authToken) {
         try {
-            Jwts.parser().setSigningKey(secretKey).parseClaimsJws(authToken);
+            Claims claims = jwtSigner.verify(authToken);
+            if (tokenDenylist.isRevoked(claims.getSubject(), claims.getIssuedAt())) {
+                log.info("Revoked JWT of user {}", claims.getSubject());
+                return false;
+            }
             return true;
         } catch (SignatureException e) {
             log.info("Invalid JWT signature: " + e.getMessage());
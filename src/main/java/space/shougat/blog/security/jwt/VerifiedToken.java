@@ -0,0 +1,68 @@
+package space.shougat.blog.security.jwt;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+/**
+ * A token whose signature has been verified, with the claims needed to authenticate its requests.
+ * <p>
+ * It is shared by the concurrent requests of the token, so it only holds immutable values, and builds a new
+ * authentication for each request.
+ * </p>
+ */
+public class VerifiedToken {
+
+    private final String login;
+
+    private final List<GrantedAuthority> authorities;
+
+    private final long issuedAt;
+
+    private final long expiration;
+
+    /**
+     * @param issuedAt the "iat" claim, or null for tokens issued without it
+     * @param expiration the "exp" claim, or null for tokens issued without it
+     */
+    public VerifiedToken(String login, List<GrantedAuthority> authorities, Date issuedAt, Date expiration) {
+        this.login = login;
+        this.authorities = Collections.unmodifiableList(authorities);
+        this.issuedAt = issuedAt != null ? issuedAt.getTime() : -1;
+        this.expiration = expiration != null ? expiration.getTime() : -1;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+
+    public List<GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    /**
+     * @return a new authentication of the token
+     */
+    public Authentication toAuthentication() {
+        return new UsernamePasswordAuthenticationToken(new User(login, "", authorities), "", authorities);
+    }
+
+    /**
+     * @return the "iat" claim, or null for tokens issued without it
+     */
+    public Date getIssuedAt() {
+        return issuedAt >= 0 ? new Date(issuedAt) : null;
+    }
+
+    /**
+     * @return the "exp" claim, or null for tokens issued without it
+     */
+    public Date getExpiration() {
+        return expiration >= 0 ? new Date(expiration) : null;
+    }
+}
@@ -0,0 +1,139 @@
+package space.shougat.blog.security.jwt;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Bounded cache of tokens whose signature has already been verified, keyed by a SHA-256 digest of the token.
+ * <p>
+ * An entry never outlives the "exp" claim of its token: once expired it is dropped, so the token is parsed again and
+ * rejected by the JWT parser as usual. Entries are never invalidated otherwise: the revocations are checked on each
+ * request, and the login and authorities of a token never change.
+ * </p>
+ */
+public class VerifiedTokenCache {
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final int maxEntries;
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    private final Counter evictions;
+
+    public VerifiedTokenCache(int maxEntries, MetricRegistry metricRegistry) {
+        this.maxEntries = maxEntries;
+        this.hits = metricRegistry.counter(MetricRegistry.name(VerifiedTokenCache.class, "hits"));
+        this.misses = metricRegistry.counter(MetricRegistry.name(VerifiedTokenCache.class, "misses"));
+        this.evictions = metricRegistry.counter(MetricRegistry.name(VerifiedTokenCache.class, "evictions"));
+        String sizeName = MetricRegistry.name(VerifiedTokenCache.class, "size");
+        metricRegistry.remove(sizeName);
+        metricRegistry.register(sizeName, (Gauge<Integer>) entries::size);
+    }
+
+    /**
+     * Return the token previously verified, or null if it is unknown or expired.
+     */
+    public VerifiedToken get(String token) {
+        if (maxEntries <= 0) {
+            return null;
+        }
+        String key = digest(token);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.inc();
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            if (entries.remove(key, entry)) {
+                evictions.inc();
+            }
+            misses.inc();
+            return null;
+        }
+        hits.inc();
+        return entry.verifiedToken;
+    }
+
+    /**
+     * Remember a verified token until its expiration date. Tokens without expiration are never cached.
+     */
+    public void put(String token, VerifiedToken verifiedToken) {
+        if (maxEntries <= 0 || verifiedToken.getExpiration() == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long expiresAt = verifiedToken.getExpiration().getTime();
+        if (expiresAt <= now) {
+            return;
+        }
+        if (entries.size() >= maxEntries) {
+            evict(now);
+        }
+        entries.put(digest(token), new Entry(verifiedToken, expiresAt));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Drop expired entries first, then arbitrary ones until there is room for a new entry.
+     */
+    private void evict(long now) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isExpired(now)) {
+                iterator.remove();
+                evictions.inc();
+            }
+        }
+        iterator = entries.values().iterator();
+        while (entries.size() >= maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions.inc();
+        }
+    }
+
+    private static String digest(String token) {
+        MessageDigest messageDigest = SHA_256.get();
+        messageDigest.reset();
+        return Base64.getEncoder().encodeToString(messageDigest.digest(token.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static final class Entry {
+
+        private final VerifiedToken verifiedToken;
+
+        private final long expiresAt;
+
+        Entry(VerifiedToken verifiedToken, long expiresAt) {
+            this.verifiedToken = verifiedToken;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
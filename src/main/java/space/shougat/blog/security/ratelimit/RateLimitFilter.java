@@ -0,0 +1,270 @@
+package space.shougat.blog.security.ratelimit;
+
+import space.shougat.blog.config.ApplicationProperties;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Rejects the requests exceeding their rate limit with a 429 status and a Retry-After header.
+ * <ul>
+ * <li>the authentication, registration and password reset endpoints are limited per IP address, and per login or
+ * e-mail address read from the request body</li>
+ * <li>the other API calls are limited per user for authenticated users, with the highest limit of their
+ * authorities, and per IP address for anonymous users</li>
+ * </ul>
+ * The authentication requests with a body too large to be read are rejected with a 413 status.
+ * This filter must run after the JWTFilter, which authenticates the users.
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    /**
+     * Maximum size of the bodies of the authentication requests, read to find the login: larger ones are rejected,
+     * as they could not be limited per login.
+     */
+    private static final int MAX_BODY_SIZE = 4096;
+
+    private static final RequestMatcher AUTHENTICATE = new AntPathRequestMatcher("/api/authenticate", "POST");
+
+    private static final RequestMatcher REGISTER = new AntPathRequestMatcher("/api/register", "POST");
+
+    private static final RequestMatcher RESET_PASSWORD_INIT =
+        new AntPathRequestMatcher("/api/account/reset_password/init", "POST");
+
+    private static final RequestMatcher API = new AntPathRequestMatcher("/api/**");
+
+    private final RateLimiter rateLimiter;
+
+    private final ApplicationProperties.Security.RateLimit rateLimit;
+
+    private final ObjectMapper objectMapper;
+
+    private final Counter authenticationLimited;
+
+    private final Counter anonymousLimited;
+
+    private final Counter authenticatedLimited;
+
+    public RateLimitFilter(RateLimiter rateLimiter, ApplicationProperties applicationProperties,
+            ObjectMapper objectMapper, MetricRegistry metricRegistry) {
+        this.rateLimiter = rateLimiter;
+        this.rateLimit = applicationProperties.getSecurity().getRateLimit();
+        this.objectMapper = objectMapper;
+        this.authenticationLimited =
+            metricRegistry.counter(MetricRegistry.name(RateLimitFilter.class, "authentication", "limited"));
+        this.anonymousLimited =
+            metricRegistry.counter(MetricRegistry.name(RateLimitFilter.class, "anonymous", "limited"));
+        this.authenticatedLimited =
+            metricRegistry.counter(MetricRegistry.name(RateLimitFilter.class, "authenticated", "limited"));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+        throws ServletException, IOException {
+        String accountField = accountField(request);
+        if (accountField != null) {
+            if (isLimited(response, "authentication-ip:" + request.getRemoteAddr(), rateLimit.getAuthentication(),
+                    authenticationLimited)) {
+                return;
+            }
+            BufferedBodyRequest bufferedRequest = new BufferedBodyRequest(request);
+            if (!bufferedRequest.complete) {
+                response.sendError(HttpStatus.PAYLOAD_TOO_LARGE.value(), "Request body too large");
+                return;
+            }
+            String account = bufferedRequest.readAccount(accountField);
+            if (account != null && isLimited(response, "authentication-account:" + account,
+                    rateLimit.getAuthentication(), authenticationLimited)) {
+                return;
+            }
+            filterChain.doFilter(bufferedRequest, response);
+            return;
+        }
+        if (API.matches(request)) {
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            boolean limited;
+            if (authentication == null || authentication instanceof AnonymousAuthenticationToken) {
+                limited = isLimited(response, "anonymous:" + request.getRemoteAddr(), rateLimit.getAnonymous(),
+                    anonymousLimited);
+            } else {
+                limited = isLimited(response, "user:" + authentication.getName(), getLimit(authentication),
+                    authenticatedLimited);
+            }
+            if (limited) {
+                return;
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    /**
+     * @return the JSON field holding the login of this authentication request, "" if the whole body is the e-mail
+     * address, or null if this is not an authentication request
+     */
+    private String accountField(HttpServletRequest request) {
+        if (AUTHENTICATE.matches(request)) {
+            return "username";
+        }
+        if (REGISTER.matches(request)) {
+            return "login";
+        }
+        if (RESET_PASSWORD_INIT.matches(request)) {
+            return "";
+        }
+        return null;
+    }
+
+    private ApplicationProperties.Security.RateLimit.Limit getLimit(Authentication authentication) {
+        ApplicationProperties.Security.RateLimit.Limit limit = rateLimit.getAuthenticated();
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            ApplicationProperties.Security.RateLimit.Limit authorityLimit =
+                rateLimit.getAuthorities().get(authority.getAuthority());
+            if (authorityLimit != null && (limit == rateLimit.getAuthenticated()
+                    || authorityLimit.getRequestsPerMinute() > limit.getRequestsPerMinute())) {
+                limit = authorityLimit;
+            }
+        }
+        return limit;
+    }
+
+    private boolean isLimited(HttpServletResponse response, String key,
+            ApplicationProperties.Security.RateLimit.Limit limit, Counter counter) throws IOException {
+        long waitNanos = rateLimiter.tryAcquire(key, limit);
+        if (waitNanos == 0) {
+            return false;
+        }
+        counter.inc();
+        long retryAfterSeconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), "Too many requests");
+        return true;
+    }
+
+    /**
+     * Request whose body is read ahead, up to the maximum size, to find the login, and replayed to the application.
+     */
+    private final class BufferedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] head;
+
+        private final boolean complete;
+
+        private ServletInputStream inputStream;
+
+        BufferedBodyRequest(HttpServletRequest request) throws IOException {
+            super(request);
+            InputStream in = request.getInputStream();
+            byte[] buffer = new byte[MAX_BODY_SIZE + 1];
+            int length = 0;
+            int read;
+            while (length < buffer.length && (read = in.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+            }
+            this.head = Arrays.copyOf(buffer, length);
+            this.complete = length <= MAX_BODY_SIZE;
+        }
+
+        String readAccount(String field) {
+            if (head.length == 0) {
+                return null;
+            }
+            try {
+                String account;
+                if (field.isEmpty()) {
+                    account = new String(head, getCharset());
+                } else {
+                    JsonNode value = objectMapper.readTree(head).get(field);
+                    account = value != null && value.isTextual() ? value.asText() : null;
+                }
+                return account != null ? account.trim().toLowerCase(Locale.ENGLISH) : null;
+            } catch (IOException e) {
+                // invalid bodies are rejected by the application
+                return null;
+            }
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                inputStream = new ReplayInputStream(new ByteArrayInputStream(head));
+            }
+            return inputStream;
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+            return new BufferedReader(new InputStreamReader(getInputStream(), getCharset()));
+        }
+
+        private Charset getCharset() {
+            String encoding = getCharacterEncoding();
+            return encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+        }
+    }
+
+    private static final class ReplayInputStream extends ServletInputStream {
+
+        private final InputStream in;
+
+        private boolean finished;
+
+        ReplayInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = in.read();
+            finished = read == -1;
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            finished = read == -1;
+            return read;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            throw new UnsupportedOperationException("Non-blocking reads are not supported");
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package space.shougat.blog.security.ratelimit;
+
+import space.shougat.blog.config.ApplicationProperties;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.stereotype.Component;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Token buckets by key, in a striped map bounded to {@code application.security.rate-limit.max-buckets} buckets.
+ * <p>
+ * When a stripe is full, its full buckets are dropped first, as they behave like new ones; if this is not enough,
+ * arbitrary buckets are dropped, which only makes the limiter more lenient for their keys.
+ * </p>
+ */
+@Component
+public class RateLimiter {
+
+    private static final int STRIPES = 16;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    public RateLimiter(ApplicationProperties applicationProperties, MetricRegistry metricRegistry) {
+        int maxBucketsPerStripe =
+            Math.max(1, applicationProperties.getSecurity().getRateLimit().getMaxBuckets() / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(maxBucketsPerStripe);
+        }
+        String bucketsName = MetricRegistry.name(RateLimiter.class, "buckets");
+        metricRegistry.remove(bucketsName);
+        metricRegistry.register(bucketsName, (Gauge<Integer>) this::size);
+    }
+
+    /**
+     * Take a token from the bucket of this key.
+     *
+     * @param key the key, prefixed by the kind of limit so that a key is always used with the same limit
+     * @param limit the limit of the bucket, used when it is created
+     * @return 0 if the request is allowed, or the nanoseconds to wait before it can be
+     */
+    public long tryAcquire(String key, ApplicationProperties.Security.RateLimit.Limit limit) {
+        long now = System.nanoTime();
+        return stripes[(key.hashCode() & Integer.MAX_VALUE) % STRIPES].get(key, limit, now).tryConsume(now);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.buckets.size();
+        }
+        return size;
+    }
+
+    private static final class Stripe {
+
+        private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+        private final int maxBuckets;
+
+        Stripe(int maxBuckets) {
+            this.maxBuckets = maxBuckets;
+        }
+
+        TokenBucket get(String key, ApplicationProperties.Security.RateLimit.Limit limit, long now) {
+            TokenBucket bucket = buckets.get(key);
+            if (bucket != null) {
+                return bucket;
+            }
+            if (buckets.size() >= maxBuckets) {
+                evict(now);
+            }
+            return buckets.computeIfAbsent(key,
+                k -> new TokenBucket(limit.getCapacity(), limit.getRequestsPerMinute(), now));
+        }
+
+        private void evict(long now) {
+            buckets.values().removeIf(bucket -> bucket.isFull(now));
+            Iterator<TokenBucket> iterator = buckets.values().iterator();
+            while (buckets.size() >= maxBuckets && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package space.shougat.blog.security.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket.
+ * <p>
+ * Instead of a token count and a refill date, the bucket only stores the date at which it will be full again, in a
+ * single {@link AtomicLong}: taking a token moves that date forward by the time it takes to refill one token, and is
+ * refused when it would move it further than the time to refill the whole bucket.
+ * </p>
+ */
+final class TokenBucket {
+
+    private final long nanosPerToken;
+
+    private final long capacityNanos;
+
+    private final AtomicLong fullAt;
+
+    TokenBucket(int capacity, int tokensPerMinute, long now) {
+        this.nanosPerToken = TimeUnit.MINUTES.toNanos(1) / Math.max(1, tokensPerMinute);
+        this.capacityNanos = nanosPerToken * Math.max(1, capacity);
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * Take a token.
+     *
+     * @param now the current {@link System#nanoTime()}
+     * @return 0 if a token was taken, or the nanoseconds to wait for the next token
+     */
+    long tryConsume(long now) {
+        while (true) {
+            long current = fullAt.get();
+            long next = (current - now > 0 ? current : now) + nanosPerToken;
+            long overflow = next - now - capacityNanos;
+            if (overflow > 0) {
+                return overflow;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * @return true if the bucket is full, so dropping it does not change the limit of its key
+     */
+    boolean isFull(long now) {
+        return fullAt.get() - now <= 0;
+    }
+}
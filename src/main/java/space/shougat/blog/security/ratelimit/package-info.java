@@ -0,0 +1,4 @@
+/**
+ * Rate limiting of the API calls.
+ */
+package space.shougat.blog.security.ratelimit;
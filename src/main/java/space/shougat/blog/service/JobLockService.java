@@ -0,0 +1,70 @@
+package space.shougat.blog.service;
+
+import space.shougat.blog.repository.JobLeaseRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+/**
+ * Service for locking scheduled jobs across the nodes, with leases stored in the jhi_job_lease table.
+ * <p>
+ * A lease expires after its duration, so that a job locked by a node which stopped can run again: jobs running
+ * longer than their lease must renew it. Each job needs a row in the table, created by a Liquibase changelog.
+ * </p>
+ */
+@Service
+public class JobLockService {
+
+    private final Logger log = LoggerFactory.getLogger(JobLockService.class);
+
+    private final JobLeaseRepository jobLeaseRepository;
+
+    /**
+     * Identifies this node, and this application instance if several run on the same host.
+     */
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName() + "/" +
+        UUID.randomUUID().toString().substring(0, 8);
+
+    public JobLockService(JobLeaseRepository jobLeaseRepository) {
+        this.jobLeaseRepository = jobLeaseRepository;
+    }
+
+    /**
+     * Take or renew the lease of a job.
+     *
+     * @return true if this node holds the lease for the given duration, false if another node holds it
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public boolean tryLock(String job, Duration duration) {
+        ZonedDateTime now = ZonedDateTime.now();
+        boolean locked = jobLeaseRepository.acquire(job, owner, now, now.plus(duration)) == 1;
+        if (!locked && !jobLeaseRepository.exists(job)) {
+            log.warn("The lease of job {} is missing from the database", job);
+        }
+        return locked;
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void unlock(String job) {
+        jobLeaseRepository.release(job, owner, ZonedDateTime.now());
+    }
+
+    /**
+     * Check the lease of a job, in a read-write transaction so that it is read from the primary database: a replica
+     * could still show a lease taken by another node as free.
+     *
+     * @return true if a node, this one included, holds the lease of a job
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public boolean isLocked(String job) {
+        return jobLeaseRepository.countLocked(job, ZonedDateTime.now()) > 0;
+    }
+}
@@ -2,9 +2,9 @@ package space.shougat.blog.service;
 
 import space.shougat.blog.domain.Authority;
 import space.shougat.blog.domain.User;
-import space.shougat.blog.repository.AuthorityRepository;
 import space.shougat.blog.repository.UserRepository;
-import space.shougat.blog.repository.search.UserSearchRepository;
+import space.shougat.blog.security.AuthoritiesConstants;
+import space.shougat.blog.security.GrantedAuthorityRegistry;
 
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -16,6 +16,7 @@ import org.springframework.social.connect.ConnectionRepository;
 import org.springframework.social.connect.UserProfile;
 import org.springframework.social.connect.UsersConnectionRepository;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.HashSet;
 import java.util.Locale;
@@ -29,7 +30,7 @@ public class SocialService {
 
     private final UsersConnectionRepository usersConnectionRepository;
 
-    private final AuthorityRepository authorityRepository;
+    private final GrantedAuthorityRegistry grantedAuthorityRegistry;
 
     private final PasswordEncoder passwordEncoder;
 
@@ -37,18 +38,19 @@ public class SocialService {
 
     private final MailService mailService;
 
-    private final UserSearchRepository userSearchRepository;
+    private final UserSearchIndexer userSearchIndexer;
 
-    public SocialService(UsersConnectionRepository usersConnectionRepository, AuthorityRepository authorityRepository,
+    public SocialService(UsersConnectionRepository usersConnectionRepository,
+            GrantedAuthorityRegistry grantedAuthorityRegistry,
             PasswordEncoder passwordEncoder, UserRepository userRepository,
-            MailService mailService, UserSearchRepository userSearchRepository) {
+            MailService mailService, UserSearchIndexer userSearchIndexer) {
 
         this.usersConnectionRepository = usersConnectionRepository;
-        this.authorityRepository = authorityRepository;
+        this.grantedAuthorityRegistry = grantedAuthorityRegistry;
         this.passwordEncoder = passwordEncoder;
         this.userRepository = userRepository;
         this.mailService = mailService;
-        this.userSearchRepository = userSearchRepository;
+        this.userSearchIndexer = userSearchIndexer;
     }
 
     public void deleteUserSocialConnection(String login) {
@@ -60,6 +62,7 @@ public class SocialService {
             });
     }
 
+    @Transactional
     public void createSocialUser(Connection<?> connection, String langKey) {
         if (connection == null) {
             log.error("Cannot create social user because connection is null");
@@ -98,7 +101,7 @@ public class SocialService {
         String login = getLoginDependingOnProviderId(userProfile, providerId);
         String encryptedPassword = passwordEncoder.encode(RandomStringUtils.random(10));
         Set<Authority> authorities = new HashSet<>(1);
-        authorities.add(authorityRepository.findOne("ROLE_USER"));
+        authorities.add(grantedAuthorityRegistry.getAuthority(AuthoritiesConstants.USER));
 
         User newUser = new User();
         newUser.setLogin(login);
@@ -111,8 +114,9 @@ public class SocialService {
         newUser.setLangKey(langKey);
         newUser.setImageUrl(imageUrl);
 
-        userSearchRepository.save(newUser);
-        return userRepository.save(newUser);
+        userRepository.save(newUser);
+        userSearchIndexer.scheduleIndexing(newUser.getId());
+        return newUser;
     }
 
     /**
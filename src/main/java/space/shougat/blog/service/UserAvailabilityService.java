@@ -0,0 +1,212 @@
+package space.shougat.blog.service;
+
+import space.shougat.blog.config.SchemaUtil;
+import space.shougat.blog.repository.UserRepository;
+import space.shougat.blog.service.util.BloomFilter;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.ZonedDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Service checking whether logins and e-mail addresses are already used.
+ * <p>
+ * Conflicts are checked with one query returning the ids of the users with the login or the e-mail, instead of
+ * loading the users. The availability checks of the registration form are answered by Bloom filters of the used
+ * logins and e-mails when they can: a value missing from a filter is available, so only the values that might be
+ * used need a query. The e-mails are put in the filters and checked in lowercase, as they are registered.
+ * </p>
+ * <p>
+ * The filters are local to each node, refreshed from the users modified since the last refresh, and rebuilt every
+ * hour to forget the deleted users: a value used on another node for less than the refresh delay can be reported as
+ * available. This is acceptable for the registration form, whose submission is checked against the database.
+ * </p>
+ */
+@Service
+public class UserAvailabilityService {
+
+    public enum Conflict {
+        LOGIN, EMAIL
+    }
+
+    private static final int MIN_EXPECTED_USERS = 10000;
+
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    /**
+     * Users modified on other nodes can become visible a little after their modification date.
+     */
+    private static final long REFRESH_OVERLAP_SECONDS = 60;
+
+    private final Logger log = LoggerFactory.getLogger(UserAvailabilityService.class);
+
+    private final UserRepository userRepository;
+
+    private final Counter filterNegatives;
+
+    private final Counter databaseChecks;
+
+    private volatile Filters filters;
+
+    private volatile ZonedDateTime lastRefresh;
+
+    public UserAvailabilityService(UserRepository userRepository, MetricRegistry metricRegistry) {
+        this.userRepository = userRepository;
+        this.filterNegatives = metricRegistry.counter(MetricRegistry.name(UserAvailabilityService.class,
+            "filter-negatives"));
+        this.databaseChecks = metricRegistry.counter(MetricRegistry.name(UserAvailabilityService.class,
+            "database-checks"));
+    }
+
+    /**
+     * Find the conflicts of a new or updated user with the other users.
+     *
+     * @param login the lowercase login of the user
+     * @param email the e-mail of the user
+     * @param userId the id of the updated user, or null for a new user
+     */
+    @Transactional(readOnly = true)
+    public EnumSet<Conflict> findConflicts(String login, String email, Long userId) {
+        return findConflicts(login, email, identity -> identity[0].equals(userId));
+    }
+
+    /**
+     * @return true if the e-mail is used by another user than the one with this login
+     */
+    @Transactional(readOnly = true)
+    public boolean isEmailUsedByAnotherUser(String email, String login) {
+        return findConflicts(null, email, identity -> ((String) identity[1]).equalsIgnoreCase(login))
+            .contains(Conflict.EMAIL);
+    }
+
+    private EnumSet<Conflict> findConflicts(String login, String email, Predicate<Object[]> isSameUser) {
+        EnumSet<Conflict> conflicts = EnumSet.noneOf(Conflict.class);
+        for (Object[] identity : userRepository.findIdentitiesByLoginOrEmail(login, email)) {
+            if (isSameUser.test(identity)) {
+                continue;
+            }
+            // the database may compare the values ignoring their case, as MySQL does
+            if (login != null && login.equalsIgnoreCase((String) identity[1])) {
+                conflicts.add(Conflict.LOGIN);
+            }
+            if (email != null && email.equalsIgnoreCase((String) identity[2])) {
+                conflicts.add(Conflict.EMAIL);
+            }
+        }
+        return conflicts;
+    }
+
+    /**
+     * @param login a lowercase login
+     * @return true if no user has this login
+     */
+    @Transactional(readOnly = true)
+    public boolean isLoginAvailable(String login) {
+        Filters current = filters;
+        if (current != null && !current.logins.mightContain(login)) {
+            filterNegatives.inc();
+            return true;
+        }
+        databaseChecks.inc();
+        return userRepository.countByLogin(login) == 0;
+    }
+
+    /**
+     * @param email a lowercase e-mail
+     * @return true if no user has this e-mail, whatever its case
+     */
+    @Transactional(readOnly = true)
+    public boolean isEmailAvailable(String email) {
+        Filters current = filters;
+        if (current != null && !current.emails.mightContain(email)) {
+            filterNegatives.inc();
+            return true;
+        }
+        databaseChecks.inc();
+        return userRepository.countByEmailIgnoreCase(email) == 0;
+    }
+
+    /**
+     * Add the login and e-mail of a user created or modified on this node, without waiting for the next refresh.
+     */
+    public void addUsed(String login, String email) {
+        Filters current = filters;
+        if (current != null) {
+            current.add(login, email);
+        }
+    }
+
+    /**
+     * Load the users modified since the last refresh, by this node or by the others.
+     */
+    @Scheduled(fixedDelay = 10000)
+    @Transactional(readOnly = true)
+    public void refresh() {
+        try {
+            if (lastRefresh == null) {
+                rebuild();
+                return;
+            }
+            ZonedDateTime now = ZonedDateTime.now();
+            List<Object[]> modified = userRepository.findLoginsAndEmailsByLastModifiedDateAfter(
+                lastRefresh.minusSeconds(REFRESH_OVERLAP_SECONDS));
+            Filters current = filters;
+            modified.forEach(identity -> current.add((String) identity[0], (String) identity[1]));
+            lastRefresh = now;
+        } catch (RuntimeException e) {
+            SchemaUtil.logScheduledTaskFailure(log, "refresh the availability filters", e);
+        }
+    }
+
+    /**
+     * Rebuild the filters from all the users, to forget the deleted users and the previous logins and e-mails.
+     * <p>
+     * This is scheduled to get fired every hour.
+     * </p>
+     */
+    @Scheduled(cron = "0 15 * * * ?")
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        ZonedDateTime now = ZonedDateTime.now();
+        long count = userRepository.count();
+        Filters rebuilt = new Filters((int) Math.min(Integer.MAX_VALUE, Math.max(MIN_EXPECTED_USERS, 2 * count)));
+        try (Stream<Object[]> identities = userRepository.streamAllLoginsAndEmails()) {
+            identities.forEach(identity -> rebuilt.add((String) identity[0], (String) identity[1]));
+        }
+        filters = rebuilt;
+        lastRefresh = now;
+        log.debug("Built the availability filters of {} users", count);
+    }
+
+    private static final class Filters {
+
+        private final BloomFilter logins;
+
+        private final BloomFilter emails;
+
+        Filters(int expectedUsers) {
+            this.logins = new BloomFilter(expectedUsers, FALSE_POSITIVE_PROBABILITY);
+            this.emails = new BloomFilter(expectedUsers, FALSE_POSITIVE_PROBABILITY);
+        }
+
+        void add(String login, String email) {
+            if (login != null) {
+                logins.put(login);
+            }
+            if (email != null) {
+                emails.put(email.toLowerCase(Locale.ENGLISH));
+            }
+        }
+    }
+}
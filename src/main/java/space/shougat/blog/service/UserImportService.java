@@ -0,0 +1,301 @@
+package space.shougat.blog.service;
+
+import space.shougat.blog.config.Constants;
+import space.shougat.blog.domain.User;
+import space.shougat.blog.repository.UserRepository;
+import space.shougat.blog.security.GrantedAuthorityRegistry;
+import space.shougat.blog.security.PasswordHashingExecutor;
+import space.shougat.blog.security.PasswordHashingRejectedException;
+import space.shougat.blog.security.SecurityUtils;
+import space.shougat.blog.service.dto.UserImportResultDTO;
+import space.shougat.blog.service.util.RandomUtil;
+import space.shougat.blog.web.rest.vm.ManagedUserVM;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.Errors;
+import org.springframework.validation.FieldError;
+import org.springframework.validation.Validator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Service importing users in bulk.
+ * <p>
+ * The users are read one per line, and created by batches: the passwords of a batch are hashed in parallel, the
+ * users are inserted with JDBC batches and indexed with one bulk request, then their creation e-mails are queued.
+ * Each line gets a result, so that the rejected users can be fixed and imported again. When the password hashing
+ * pool rejects a batch, the import stops: the batches already saved are reported, and the next users are
+ * interrupted, to be imported again later.
+ * </p>
+ */
+@Service
+public class UserImportService {
+
+    static final int BATCH_SIZE = 500;
+
+    /**
+     * Encoder of the generated passwords: they are random and never disclosed, the users set their password with
+     * the reset key of the creation e-mail, so they do not need the key stretching of the calibrated encoder.
+     */
+    private static final PasswordEncoder GENERATED_PASSWORD_ENCODER = new BCryptPasswordEncoder(4, new SecureRandom());
+
+    private final Logger log = LoggerFactory.getLogger(UserImportService.class);
+
+    private final UserService userService;
+
+    private final UserRepository userRepository;
+
+    private final GrantedAuthorityRegistry grantedAuthorityRegistry;
+
+    private final PasswordEncoder passwordEncoder;
+
+    private final PasswordHashingExecutor passwordHashingExecutor;
+
+    private final MailService mailService;
+
+    private final ObjectReader userReader;
+
+    private final Validator validator;
+
+    private final Meter importedUsers;
+
+    public UserImportService(UserService userService, UserRepository userRepository,
+            GrantedAuthorityRegistry grantedAuthorityRegistry, PasswordEncoder passwordEncoder,
+            PasswordHashingExecutor passwordHashingExecutor, MailService mailService, ObjectMapper objectMapper,
+            Validator validator, MetricRegistry metricRegistry) {
+        this.userService = userService;
+        this.userRepository = userRepository;
+        this.grantedAuthorityRegistry = grantedAuthorityRegistry;
+        this.passwordEncoder = passwordEncoder;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+        this.mailService = mailService;
+        this.userReader = objectMapper.readerFor(ManagedUserVM.class);
+        this.validator = validator;
+        this.importedUsers = metricRegistry.meter(MetricRegistry.name(UserImportService.class, "rows"));
+    }
+
+    /**
+     * Import users, read from newline-delimited JSON with the fields of a ManagedUserVM.
+     * <p>
+     * Users without a password get a random one, and set theirs with the creation e-mail.
+     * </p>
+     *
+     * @return the result of each non-blank line; the users not imported because the password hashing pool
+     * rejected a batch are INTERRUPTED
+     */
+    public List<UserImportResultDTO> importUsers(BufferedReader reader) throws IOException {
+        Set<String> authorities = grantedAuthorityRegistry.getAuthorityNames();
+        String auditor = Optional.ofNullable(SecurityUtils.getCurrentUserLogin()).orElse(Constants.SYSTEM_ACCOUNT);
+        List<UserImportResultDTO> results = new ArrayList<>();
+        Set<String> logins = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+        List<Row> batch = new ArrayList<>(BATCH_SIZE);
+        boolean interrupted = false;
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            ManagedUserVM userVM;
+            try {
+                userVM = userReader.readValue(line);
+            } catch (IOException e) {
+                results.add(rejected(lineNumber, null, "Invalid JSON"));
+                continue;
+            }
+            String error = validate(userVM, authorities);
+            String login = userVM.getLogin() == null ? null : userVM.getLogin().toLowerCase(Locale.ENGLISH);
+            String email = userVM.getEmail() == null ? null : userVM.getEmail().toLowerCase(Locale.ENGLISH);
+            if (error == null && !logins.add(login)) {
+                error = "Login already in the import";
+            }
+            if (error == null && email != null && !emails.add(email)) {
+                error = "Email already in the import";
+            }
+            if (error != null) {
+                results.add(rejected(lineNumber, login, error));
+                continue;
+            }
+            batch.add(new Row(lineNumber, userVM, email));
+            if (batch.size() == BATCH_SIZE) {
+                interrupted = importOrInterrupt(batch, auditor, interrupted, results);
+                batch.clear();
+            }
+        }
+        importOrInterrupt(batch, auditor, interrupted, results);
+        results.sort(Comparator.comparingInt(UserImportResultDTO::getLine));
+        return results;
+    }
+
+    private String validate(ManagedUserVM userVM, Set<String> authorities) {
+        if (userVM.getLogin() == null) {
+            return "Login is required";
+        }
+        Errors errors = new BeanPropertyBindingResult(userVM, "user");
+        validator.validate(userVM, errors);
+        FieldError fieldError = errors.getFieldError();
+        if (fieldError != null) {
+            return fieldError.getField() + " " + fieldError.getDefaultMessage();
+        }
+        if (userVM.getAuthorities() != null) {
+            for (String authority : userVM.getAuthorities()) {
+                if (!authorities.contains(authority)) {
+                    return "Unknown authority: " + authority;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Import a batch, unless the import was interrupted.
+     *
+     * @return true if the import is interrupted
+     */
+    private boolean importOrInterrupt(List<Row> batch, String auditor, boolean interrupted,
+            List<UserImportResultDTO> results) {
+        if (!interrupted) {
+            try {
+                results.addAll(importBatch(batch, auditor));
+                return false;
+            } catch (PasswordHashingRejectedException e) {
+                log.warn("Interrupted the import before a batch of {} users: too many password hashing requests",
+                    batch.size());
+            }
+        }
+        for (Row row : batch) {
+            results.add(new UserImportResultDTO(row.line, row.userVM.getLogin().toLowerCase(Locale.ENGLISH),
+                UserImportResultDTO.Status.INTERRUPTED, "The import was interrupted before this user"));
+        }
+        return true;
+    }
+
+    private List<UserImportResultDTO> importBatch(List<Row> batch, String auditor) {
+        List<UserImportResultDTO> results = new ArrayList<>(batch.size());
+        if (batch.isEmpty()) {
+            return results;
+        }
+        Set<String> existingLogins = new HashSet<>(userRepository.findLoginsByLoginIn(
+            batch.stream().map(row -> row.userVM.getLogin().toLowerCase(Locale.ENGLISH)).collect(Collectors.toList())));
+        List<String> batchEmails = batch.stream()
+            .map(row -> row.email)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
+        // the database may compare the e-mails ignoring their case, and return them as they are stored
+        Set<String> existingEmails = batchEmails.isEmpty() ? Collections.emptySet()
+            : userRepository.findEmailsByEmailIn(batchEmails).stream()
+                .map(email -> email.toLowerCase(Locale.ENGLISH))
+                .collect(Collectors.toSet());
+
+        List<Row> rows = new ArrayList<>(batch.size());
+        for (Row row : batch) {
+            String login = row.userVM.getLogin().toLowerCase(Locale.ENGLISH);
+            if (existingLogins.contains(login)) {
+                results.add(rejected(row.line, login, "Login already in use"));
+            } else if (existingEmails.contains(row.email)) {
+                results.add(rejected(row.line, login, "Email already in use"));
+            } else {
+                rows.add(row);
+            }
+        }
+        if (rows.isEmpty()) {
+            return results;
+        }
+
+        List<Supplier<String>> hashes = rows.stream()
+            .map(row -> row.userVM.getPassword())
+            .map(password -> password == null
+                ? (Supplier<String>) () -> GENERATED_PASSWORD_ENCODER.encode(RandomUtil.generatePassword())
+                : (Supplier<String>) () -> passwordEncoder.encode(password))
+            .collect(Collectors.toList());
+        List<String> encodedPasswords = passwordHashingExecutor.executeAll(hashes);
+
+        ZonedDateTime now = ZonedDateTime.now();
+        List<User> users = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            users.add(toUser(rows.get(i), encodedPasswords.get(i), auditor, now));
+        }
+        try {
+            userService.createUsers(users);
+        } catch (RuntimeException e) {
+            log.warn("Could not import a batch of {} users: {}", users.size(), e.getMessage());
+            for (Row row : rows) {
+                results.add(new UserImportResultDTO(row.line, row.userVM.getLogin().toLowerCase(Locale.ENGLISH),
+                    UserImportResultDTO.Status.FAILED, "The batch of this user could not be saved"));
+            }
+            return results;
+        }
+        for (int i = 0; i < rows.size(); i++) {
+            User user = users.get(i);
+            results.add(new UserImportResultDTO(rows.get(i).line, user.getLogin(), UserImportResultDTO.Status.CREATED,
+                null));
+            mailService.sendCreationEmail(user);
+        }
+        importedUsers.mark(users.size());
+        return results;
+    }
+
+    private User toUser(Row row, String encodedPassword, String auditor, ZonedDateTime now) {
+        ManagedUserVM userVM = row.userVM;
+        User user = new User();
+        user.setLogin(userVM.getLogin());
+        user.setPassword(encodedPassword);
+        user.setFirstName(userVM.getFirstName());
+        user.setLastName(userVM.getLastName());
+        user.setEmail(row.email);
+        user.setImageUrl(userVM.getImageUrl());
+        user.setLangKey(userVM.getLangKey() == null ? "en" : userVM.getLangKey());
+        if (userVM.getAuthorities() != null) {
+            user.setAuthorities(userVM.getAuthorities().stream()
+                .map(grantedAuthorityRegistry::getAuthority)
+                .collect(Collectors.toSet()));
+        }
+        user.setResetKey(RandomUtil.generateResetKey());
+        user.setResetDate(now);
+        user.setActivated(true);
+        user.setCreatedBy(auditor);
+        user.setCreatedDate(now);
+        user.setLastModifiedBy(auditor);
+        user.setLastModifiedDate(now);
+        return user;
+    }
+
+    private static UserImportResultDTO rejected(int line, String login, String message) {
+        return new UserImportResultDTO(line, login, UserImportResultDTO.Status.REJECTED, message);
+    }
+
+    private static final class Row {
+
+        private final int line;
+
+        private final ManagedUserVM userVM;
+
+        /**
+         * The lowercase e-mail of the user.
+         */
+        private final String email;
+
+        Row(int line, ManagedUserVM userVM, String email) {
+            this.line = line;
+            this.userVM = userVM;
+            this.email = email;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package space.shougat.blog.service;
+
+import space.shougat.blog.repository.UserBatchRepository;
+import space.shougat.blog.repository.UserRepository;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Service deleting the users who did not activate their account in time.
+ * <p>
+ * The users are deleted by chunks of consecutive ids, each in its own short transaction: a chunk is locked, its
+ * authorities and users are deleted with one statement each, and the removal of the users from the search index is
+ * scheduled with one batch. The purge holds a lease so that only one node runs it at a time.
+ * </p>
+ */
+@Service
+public class UserPurgeService {
+
+    static final String JOB_NAME = "remove-not-activated-users";
+
+    static final int CHUNK_SIZE = 500;
+
+    /**
+     * Duration of the job lease, renewed before each chunk.
+     */
+    private static final Duration LEASE_DURATION = Duration.ofMinutes(5);
+
+    private final Logger log = LoggerFactory.getLogger(UserPurgeService.class);
+
+    private final UserRepository userRepository;
+
+    private final UserBatchRepository userBatchRepository;
+
+    private final UserSearchIndexer userSearchIndexer;
+
+    private final UserCache userCache;
+
+    private final JobLockService jobLockService;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Meter deletedUsers;
+
+    private final Counter chunks;
+
+    private final AtomicLong currentRunDeletedUsers = new AtomicLong();
+
+    public UserPurgeService(UserRepository userRepository, UserBatchRepository userBatchRepository,
+            UserSearchIndexer userSearchIndexer, UserCache userCache, JobLockService jobLockService,
+            PlatformTransactionManager transactionManager, MetricRegistry metricRegistry) {
+        this.userRepository = userRepository;
+        this.userBatchRepository = userBatchRepository;
+        this.userSearchIndexer = userSearchIndexer;
+        this.userCache = userCache;
+        this.jobLockService = jobLockService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.deletedUsers = metricRegistry.meter(MetricRegistry.name(UserPurgeService.class, "deleted-users"));
+        this.chunks = metricRegistry.counter(MetricRegistry.name(UserPurgeService.class, "chunks"));
+        String currentRunName = MetricRegistry.name(UserPurgeService.class, "current-run", "deleted-users");
+        metricRegistry.remove(currentRunName);
+        metricRegistry.register(currentRunName, (Gauge<Long>) currentRunDeletedUsers::get);
+    }
+
+    /**
+     * Delete the users not activated and created before a date, unless another node is already deleting them.
+     *
+     * @return the number of users deleted, or -1 if another node holds the lease
+     */
+    public long removeNotActivatedUsers(ZonedDateTime createdBefore) {
+        if (!jobLockService.tryLock(JOB_NAME, LEASE_DURATION)) {
+            log.debug("Not activated users are being removed by another node");
+            return -1;
+        }
+        currentRunDeletedUsers.set(0);
+        try {
+            long lastId = 0;
+            while (true) {
+                long afterId = lastId;
+                Chunk chunk = transactionTemplate.execute(status -> deleteChunk(createdBefore, afterId));
+                if (chunk == null) {
+                    break;
+                }
+                lastId = chunk.maxId;
+                chunks.inc();
+                deletedUsers.mark(chunk.logins.size());
+                currentRunDeletedUsers.addAndGet(chunk.logins.size());
+                chunk.logins.forEach(userCache::removeUserFromCache);
+                log.debug("Deleted {} not activated users, up to id {}", chunk.logins.size(), lastId);
+                if (chunk.logins.size() < CHUNK_SIZE || !jobLockService.tryLock(JOB_NAME, LEASE_DURATION)) {
+                    break;
+                }
+            }
+            return currentRunDeletedUsers.get();
+        } finally {
+            jobLockService.unlock(JOB_NAME);
+        }
+    }
+
+    /**
+     * @return the deleted chunk, or null if there is no user left to delete
+     */
+    private Chunk deleteChunk(ZonedDateTime createdBefore, long afterId) {
+        List<Object[]> users = userRepository.findIdsAndLoginsByActivatedIsFalseAndCreatedDateBeforeAndIdGreaterThan(
+            createdBefore, afterId, new PageRequest(0, CHUNK_SIZE));
+        if (users.isEmpty()) {
+            return null;
+        }
+        Chunk chunk = new Chunk((Long) users.get(0)[0], (Long) users.get(users.size() - 1)[0]);
+        // the users are locked: the chunk range holds no other user to delete
+        userBatchRepository.deleteAuthoritiesOfNotActivatedUsers(chunk.minId, chunk.maxId, createdBefore);
+        userRepository.deleteAllByIdBetweenAndActivatedIsFalseAndCreatedDateBefore(chunk.minId, chunk.maxId,
+            createdBefore);
+        List<Long> ids = new ArrayList<>(users.size());
+        for (Object[] user : users) {
+            ids.add((Long) user[0]);
+            chunk.logins.add((String) user[1]);
+        }
+        userSearchIndexer.scheduleIndexing(ids);
+        return chunk;
+    }
+
+    private static final class Chunk {
+
+        private final long minId;
+
+        private final long maxId;
+
+        private final List<String> logins = new ArrayList<>();
+
+        Chunk(long minId, long maxId) {
+            this.minId = minId;
+            this.maxId = maxId;
+        }
+    }
+}
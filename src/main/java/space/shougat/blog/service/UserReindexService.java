@@ -0,0 +1,280 @@
+package space.shougat.blog.service;
+
+import space.shougat.blog.config.ApplicationProperties;
+import space.shougat.blog.domain.User;
+import space.shougat.blog.repository.UserRepository;
+import space.shougat.blog.service.dto.ReindexStatusDTO;
+import space.shougat.blog.service.search.UserSearchEngine;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Service rebuilding the search index of the users without downtime.
+ * <p>
+ * The users are indexed in a new index while the searches keep using the current one, which is replaced once the new
+ * index is filled. The users are read by id ranges on several threads, and indexed with one request per batch.
+ * </p>
+ * <p>
+ * The reindex holds a lease, which pauses the {@link UserSearchIndexer} on all the nodes: the users modified during
+ * the reindex stay in the outbox, and are indexed in the new index once it replaces the current one.
+ * </p>
+ */
+@Service
+public class UserReindexService {
+
+    static final String JOB_NAME = "reindex-users";
+
+    /**
+     * Duration of the job lease, renewed while the users are indexed.
+     */
+    private static final Duration LEASE_DURATION = Duration.ofMinutes(5);
+
+    private static final long LEASE_RENEWAL_MS = Duration.ofMinutes(1).toMillis();
+
+    /**
+     * Id ranges per thread, so that the threads stay busy when the ids are not evenly distributed.
+     */
+    private static final int PARTITIONS_PER_THREAD = 4;
+
+    private final Logger log = LoggerFactory.getLogger(UserReindexService.class);
+
+    private final UserRepository userRepository;
+
+    private final UserSearchEngine userSearchEngine;
+
+    private final JobLockService jobLockService;
+
+    private final TaskExecutor taskExecutor;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ApplicationProperties.Search.Reindex reindexProperties;
+
+    private final Meter reindexedUsers;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private volatile Run lastRun;
+
+    public UserReindexService(UserRepository userRepository, UserSearchEngine userSearchEngine,
+            JobLockService jobLockService,
+            @Qualifier("taskExecutor") TaskExecutor taskExecutor, PlatformTransactionManager transactionManager,
+            ApplicationProperties applicationProperties, MetricRegistry metricRegistry) {
+        this.userRepository = userRepository;
+        this.userSearchEngine = userSearchEngine;
+        this.jobLockService = jobLockService;
+        this.taskExecutor = taskExecutor;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.reindexProperties = applicationProperties.getSearch().getReindex();
+        this.reindexedUsers = metricRegistry.meter(MetricRegistry.name(UserReindexService.class, "reindexed-users"));
+    }
+
+    /**
+     * Start a full reindex of the users in the background.
+     *
+     * @return false if a reindex is already running, on this node or on another one
+     */
+    public boolean startReindex() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        if (!jobLockService.tryLock(JOB_NAME, LEASE_DURATION)) {
+            running.set(false);
+            return false;
+        }
+        Run run = new Run();
+        lastRun = run;
+        try {
+            taskExecutor.execute(() -> {
+                try {
+                    reindex(run);
+                } finally {
+                    release();
+                }
+            });
+        } catch (RuntimeException e) {
+            release();
+            throw e;
+        }
+        return true;
+    }
+
+    private void release() {
+        jobLockService.unlock(JOB_NAME);
+        running.set(false);
+    }
+
+    /**
+     * @return the progress of the last reindex started by this node
+     */
+    public ReindexStatusDTO getStatus() {
+        Run run = lastRun;
+        return run == null ? ReindexStatusDTO.idle() : run.toStatus();
+    }
+
+    private void reindex(Run run) {
+        UserSearchEngine.NewIndex newIndex = null;
+        ThreadPoolTaskExecutor executor = null;
+        try {
+            newIndex = userSearchEngine.createIndex();
+            run.index = newIndex.getName();
+            log.info("Reindexing the users in {}", run.index);
+
+            // the users are read in read-write transactions, from the primary database: the changes already indexed
+            // by the outbox must not be missing from a read replica
+            Object[] idRange = transactionTemplate.execute(status -> userRepository.findIdRange()).get(0);
+            if (idRange[0] != null) {
+                run.totalUsers = transactionTemplate.execute(status -> userRepository.count());
+                int threads = reindexProperties.getThreads();
+                executor = new ThreadPoolTaskExecutor();
+                executor.setCorePoolSize(threads);
+                executor.setMaxPoolSize(threads);
+                executor.setThreadNamePrefix("user-reindex-");
+                executor.initialize();
+                List<Future<?>> partitions = new ArrayList<>();
+                UserSearchEngine.NewIndex target = newIndex;
+                for (long[] partition : split((Long) idRange[0], (Long) idRange[1], threads * PARTITIONS_PER_THREAD)) {
+                    partitions.add(executor.submit(() -> indexPartition(run, target, partition[0], partition[1])));
+                }
+                run.partitions = partitions.size();
+                awaitPartitions(partitions);
+            }
+
+            newIndex.publish();
+            run.finish(ReindexStatusDTO.State.COMPLETED, null);
+            log.info("Reindexed {} users in {}", run.indexedUsers.get(), run.index);
+        } catch (Exception e) {
+            log.error("Could not reindex the users in {}", run.index, e);
+            if (newIndex != null) {
+                try {
+                    newIndex.delete();
+                } catch (RuntimeException deleteException) {
+                    log.warn("Could not delete the index {}: {}", run.index, deleteException.getMessage());
+                }
+            }
+            run.finish(ReindexStatusDTO.State.FAILED, e.getMessage());
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Split the ids in ranges of the same width.
+     *
+     * @return the first and last id of each range
+     */
+    static List<long[]> split(long minId, long maxId, int count) {
+        long width = Math.max(1, (maxId - minId + count) / count);
+        List<long[]> ranges = new ArrayList<>();
+        for (long first = minId; first <= maxId; first += width) {
+            ranges.add(new long[]{first, Math.min(maxId, first + width - 1)});
+        }
+        return ranges;
+    }
+
+    /**
+     * Wait for the partitions to be indexed, renewing the lease meanwhile.
+     */
+    private void awaitPartitions(List<Future<?>> partitions) throws InterruptedException, ExecutionException {
+        try {
+            for (Future<?> partition : partitions) {
+                while (true) {
+                    try {
+                        partition.get(LEASE_RENEWAL_MS, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (TimeoutException e) {
+                        if (!jobLockService.tryLock(JOB_NAME, LEASE_DURATION)) {
+                            throw new IllegalStateException("The lease of the reindex was taken by another node");
+                        }
+                    }
+                }
+            }
+        } finally {
+            partitions.forEach(partition -> partition.cancel(true));
+        }
+    }
+
+    private void indexPartition(Run run, UserSearchEngine.NewIndex newIndex, long firstId, long lastId) {
+        int batchSize = reindexProperties.getBatchSize();
+        long afterId = firstId - 1;
+        while (!Thread.currentThread().isInterrupted()) {
+            long after = afterId;
+            List<User> users = transactionTemplate.execute(status ->
+                userRepository.findAllByIdGreaterThanAndIdLessThanEqual(after, lastId, new PageRequest(0, batchSize)));
+            if (users.isEmpty()) {
+                break;
+            }
+            newIndex.index(users);
+            run.indexedUsers.addAndGet(users.size());
+            reindexedUsers.mark(users.size());
+            if (users.size() < batchSize) {
+                break;
+            }
+            afterId = users.get(users.size() - 1).getId();
+        }
+        run.completedPartitions.incrementAndGet();
+    }
+
+    private static final class Run {
+
+        private final ZonedDateTime startDate = ZonedDateTime.now();
+
+        private final long startTime = System.nanoTime();
+
+        private final AtomicLong indexedUsers = new AtomicLong();
+
+        private final AtomicInteger completedPartitions = new AtomicInteger();
+
+        private volatile String index;
+
+        private volatile ReindexStatusDTO.State state = ReindexStatusDTO.State.RUNNING;
+
+        private volatile long totalUsers;
+
+        private volatile int partitions;
+
+        private volatile ZonedDateTime endDate;
+
+        private volatile long endTime;
+
+        private volatile String error;
+
+        void finish(ReindexStatusDTO.State state, String error) {
+            this.endTime = System.nanoTime();
+            this.endDate = ZonedDateTime.now();
+            this.error = error;
+            this.state = state;
+        }
+
+        ReindexStatusDTO toStatus() {
+            long indexed = indexedUsers.get();
+            long elapsedNanos = (state == ReindexStatusDTO.State.RUNNING ? System.nanoTime() : endTime) - startTime;
+            double usersPerSecond = elapsedNanos > 0 ? indexed * 1e9 / elapsedNanos : 0;
+            return new ReindexStatusDTO(state, index, startDate, endDate, totalUsers, indexed, partitions,
+                completedPartitions.get(), usersPerSecond, error);
+        }
+    }
+}
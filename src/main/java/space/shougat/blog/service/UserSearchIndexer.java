@@ -0,0 +1,231 @@
+package space.shougat.blog.service;
+
+import space.shougat.blog.config.SchemaUtil;
+import space.shougat.blog.domain.User;
+import space.shougat.blog.repository.UserRepository;
+import space.shougat.blog.repository.UserSearchOutboxRepository;
+import space.shougat.blog.service.search.UserSearchEngine;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Service indexing the users in the {@link UserSearchEngine}, through an outbox table.
+ * <p>
+ * The services modifying users add them to the outbox in their own transaction, so the search index adds no latency
+ * to them, and a rolled back transaction indexes nothing. The outbox is drained every second: the users of a batch of
+ * entries are indexed, or removed from the index, with one request, each user once whatever the number of its
+ * entries. The indexer backs off when the index fails, and drops the entries of a user rejected too many times.
+ * It holds a lease so that only one node indexes the users at a time, and pauses while the
+ * {@link UserReindexService} holds its own.
+ * </p>
+ */
+@Service
+public class UserSearchIndexer {
+
+    static final String JOB_NAME = "index-users";
+
+    static final int BATCH_SIZE = 500;
+
+    /**
+     * Number of times a user can be rejected by the index before its entries are dropped.
+     */
+    static final int MAX_ATTEMPTS = 10;
+
+    /**
+     * Duration of the job lease, renewed before each bulk request.
+     */
+    private static final Duration LEASE_DURATION = Duration.ofMinutes(1);
+
+    private static final long MIN_BACKOFF_MS = 1000;
+
+    private static final long MAX_BACKOFF_MS = 5 * 60 * 1000;
+
+    private final Logger log = LoggerFactory.getLogger(UserSearchIndexer.class);
+
+    private final UserSearchOutboxRepository userSearchOutboxRepository;
+
+    private final UserRepository userRepository;
+
+    private final UserSearchEngine userSearchEngine;
+
+    private final JobLockService jobLockService;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Meter indexedUsers;
+
+    private final Meter deletedUsers;
+
+    private final Counter failedRequests;
+
+    private final Counter droppedUsers;
+
+    private final Timer bulkRequests;
+
+    /**
+     * Date of the oldest entry of the outbox when it was last read, null if it was empty.
+     */
+    private volatile Instant oldestEntryDate;
+
+    private long backoffMs;
+
+    private long retryAt;
+
+    public UserSearchIndexer(UserSearchOutboxRepository userSearchOutboxRepository, UserRepository userRepository,
+            UserSearchEngine userSearchEngine, JobLockService jobLockService,
+            PlatformTransactionManager transactionManager, MetricRegistry metricRegistry) {
+        this.userSearchOutboxRepository = userSearchOutboxRepository;
+        this.userRepository = userRepository;
+        this.userSearchEngine = userSearchEngine;
+        this.jobLockService = jobLockService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.indexedUsers = metricRegistry.meter(MetricRegistry.name(UserSearchIndexer.class, "indexed-users"));
+        this.deletedUsers = metricRegistry.meter(MetricRegistry.name(UserSearchIndexer.class, "deleted-users"));
+        this.failedRequests = metricRegistry.counter(MetricRegistry.name(UserSearchIndexer.class, "failed-requests"));
+        this.droppedUsers = metricRegistry.counter(MetricRegistry.name(UserSearchIndexer.class, "dropped-users"));
+        this.bulkRequests = metricRegistry.timer(MetricRegistry.name(UserSearchIndexer.class, "bulk-requests"));
+        String lagName = MetricRegistry.name(UserSearchIndexer.class, "lag-ms");
+        metricRegistry.remove(lagName);
+        metricRegistry.register(lagName, (Gauge<Long>) () -> {
+            Instant oldest = oldestEntryDate;
+            return oldest == null ? 0 : Math.max(0, System.currentTimeMillis() - oldest.toEpochMilli());
+        });
+    }
+
+    /**
+     * Index a user, or remove it from the index if it is deleted, once the current transaction is committed.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void scheduleIndexing(Long userId) {
+        userSearchOutboxRepository.insertAll(Collections.singleton(userId));
+    }
+
+    /**
+     * Index users, or remove them from the index if they are deleted, once the current transaction is committed.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void scheduleIndexing(Collection<Long> userIds) {
+        userSearchOutboxRepository.insertAll(userIds);
+    }
+
+    /**
+     * Drain the outbox, unless Elasticsearch failed recently, another node is draining it, or the users are being
+     * reindexed.
+     */
+    @Scheduled(fixedDelay = 1000)
+    public synchronized void indexPendingUsers() {
+        if (System.currentTimeMillis() < retryAt) {
+            return;
+        }
+        List<UserSearchOutboxRepository.Entry> entries;
+        try {
+            entries = readOutbox();
+        } catch (RuntimeException e) {
+            SchemaUtil.logScheduledTaskFailure(log, "read the search outbox", e);
+            return;
+        }
+        while (!entries.isEmpty() && !jobLockService.isLocked(UserReindexService.JOB_NAME)
+                && jobLockService.tryLock(JOB_NAME, LEASE_DURATION)) {
+            try {
+                boolean processed = index(entries);
+                backoffMs = 0;
+                if (!processed) {
+                    return;
+                }
+            } catch (RuntimeException e) {
+                failedRequests.inc();
+                backoffMs = Math.min(Math.max(backoffMs * 2, MIN_BACKOFF_MS), MAX_BACKOFF_MS);
+                retryAt = System.currentTimeMillis() + backoffMs;
+                log.warn("Could not index the users, retrying in {} ms: {}", backoffMs, e.getMessage());
+                return;
+            }
+            if (entries.size() < BATCH_SIZE) {
+                oldestEntryDate = null;
+                return;
+            }
+            entries = readOutbox();
+        }
+    }
+
+    private List<UserSearchOutboxRepository.Entry> readOutbox() {
+        List<UserSearchOutboxRepository.Entry> entries = userSearchOutboxRepository.findOldest(BATCH_SIZE);
+        oldestEntryDate = entries.isEmpty() ? null : entries.get(0).getCreatedDate();
+        return entries;
+    }
+
+    /**
+     * Index the users of some entries with one request, and delete the entries of the users accepted by the index.
+     *
+     * @return false if the entries are kept for a reindex started meanwhile
+     * @throws RuntimeException if the request failed
+     */
+    private boolean index(List<UserSearchOutboxRepository.Entry> entries) {
+        Set<Long> userIds = entries.stream()
+            .map(UserSearchOutboxRepository.Entry::getUserId)
+            .collect(Collectors.toCollection(LinkedHashSet::new));
+        // the users are read in a read-write transaction, from the primary database: a read replica may not have
+        // replicated the changes of the entries yet
+        Map<Long, User> users = transactionTemplate.execute(status -> userRepository.findAll(userIds)).stream()
+            .collect(Collectors.toMap(User::getId, Function.identity()));
+
+        List<Long> deletedUserIds = userIds.stream()
+            .filter(userId -> !users.containsKey(userId))
+            .collect(Collectors.toList());
+        Set<Long> rejectedUserIds;
+        try (Timer.Context ignored = bulkRequests.time()) {
+            rejectedUserIds = userSearchEngine.index(users.values(), deletedUserIds);
+        }
+
+        List<Long> processedEntryIds = new ArrayList<>();
+        List<Long> rejectedEntryIds = new ArrayList<>();
+        Set<Long> droppedUserIds = new HashSet<>();
+        for (UserSearchOutboxRepository.Entry entry : entries) {
+            if (!rejectedUserIds.contains(entry.getUserId())) {
+                processedEntryIds.add(entry.getId());
+            } else if (entry.getAttempts() + 1 >= MAX_ATTEMPTS) {
+                processedEntryIds.add(entry.getId());
+                droppedUserIds.add(entry.getUserId());
+            } else {
+                rejectedEntryIds.add(entry.getId());
+            }
+        }
+        if (jobLockService.isLocked(UserReindexService.JOB_NAME)) {
+            // the reindex may have read the users before this request: they are indexed again once it is completed
+            log.debug("Keeping the search outbox entries until the reindex is completed");
+            return false;
+        }
+        transactionTemplate.execute(status -> {
+            userSearchOutboxRepository.deleteAll(processedEntryIds);
+            userSearchOutboxRepository.incrementAttempts(rejectedEntryIds);
+            return null;
+        });
+        droppedUserIds.forEach(userId ->
+            log.error("User {} was rejected {} times, its changes are not indexed", userId, MAX_ATTEMPTS));
+        droppedUsers.inc(droppedUserIds.size());
+        userIds.removeAll(rejectedUserIds);
+        long deleted = deletedUserIds.stream().filter(userId -> !rejectedUserIds.contains(userId)).count();
+        indexedUsers.mark(userIds.size() - deleted);
+        deletedUsers.mark(deleted);
+        log.debug("Indexed {} users and removed {} from the index, {} rejected", userIds.size() - deleted, deleted,
+            rejectedUserIds.size());
+        return true;
+    }
+}
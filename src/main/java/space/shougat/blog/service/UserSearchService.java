@@ -0,0 +1,51 @@
+package space.shougat.blog.service;
+
+import space.shougat.blog.service.dto.UserSearchResultDTO;
+import space.shougat.blog.service.search.UserSearchEngine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+/**
+ * Service for searching the users.
+ * <p>
+ * The searches are paged, and only read the fields of the {@link UserSearchResultDTO} from the index, so a broad
+ * query costs the same memory as a narrow one.
+ * </p>
+ */
+@Service
+public class UserSearchService {
+
+    /**
+     * The deepest result that can be read, the default "index.max_result_window" of Elasticsearch.
+     */
+    public static final int MAX_RESULT_WINDOW = 10000;
+
+    private final Logger log = LoggerFactory.getLogger(UserSearchService.class);
+
+    private final UserSearchEngine userSearchEngine;
+
+    public UserSearchService(UserSearchEngine userSearchEngine) {
+        this.userSearchEngine = userSearchEngine;
+    }
+
+    /**
+     * Search the users matching a query string.
+     *
+     * @param query the query, in the query string syntax of Elasticsearch
+     * @param pageable the page, and its sort on fields of the index, by relevance if unsorted
+     * @return the page of users, with the fragments of their fields matching the query
+     * @throws IllegalArgumentException if the page is beyond {@link #MAX_RESULT_WINDOW}, or the query or the sort is
+     * invalid
+     */
+    public Page<UserSearchResultDTO> search(String query, Pageable pageable) {
+        log.debug("Request to search Users for query {}", query);
+        if ((long) pageable.getOffset() + pageable.getPageSize() > MAX_RESULT_WINDOW) {
+            throw new IllegalArgumentException("Only the first " + MAX_RESULT_WINDOW + " results can be read");
+        }
+        return userSearchEngine.search(query, pageable);
+    }
+}
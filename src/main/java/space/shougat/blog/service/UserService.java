@@ -1,26 +1,49 @@
 package space.shougat.blog.service;
 
+import space.shougat.blog.config.datasource.ReplicaRoutingDataSource;
 import space.shougat.blog.domain.Authority;
 import space.shougat.blog.domain.User;
-import space.shougat.blog.repository.AuthorityRepository;
+import space.shougat.blog.repository.UserBatchRepository;
 import space.shougat.blog.repository.UserRepository;
-import space.shougat.blog.repository.search.UserSearchRepository;
 import space.shougat.blog.security.AuthoritiesConstants;
+import space.shougat.blog.security.GrantedAuthorityRegistry;
 import space.shougat.blog.security.SecurityUtils;
+import space.shougat.blog.security.jwt.TokenDenylist;
+import space.shougat.blog.service.util.KeysetCursor;
 import space.shougat.blog.service.util.RandomUtil;
+import space.shougat.blog.service.dto.AccountDTO;
 import space.shougat.blog.service.dto.UserDTO;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.userdetails.UserCache;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.persistence.EntityManager;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Service class for managing users.
@@ -29,6 +52,8 @@ import java.util.*;
 @Transactional
 public class UserService {
 
+    public static final String ACCOUNT_CACHE = "space.shougat.blog.service.UserService.accounts";
+
     private final Logger log = LoggerFactory.getLogger(UserService.class);
 
     private final UserRepository userRepository;
@@ -37,16 +62,54 @@ public class UserService {
 
     private final SocialService socialService;
 
-    private final UserSearchRepository userSearchRepository;
+    private final UserSearchIndexer userSearchIndexer;
+
+    private final GrantedAuthorityRegistry grantedAuthorityRegistry;
+
+    private final TokenDenylist tokenDenylist;
+
+    private final UserCache userCache;
+
+    private final UserBatchRepository userBatchRepository;
+
+    private final UserAvailabilityService userAvailabilityService;
+
+    private final UserPurgeService userPurgeService;
+
+    private final EntityManager entityManager;
+
+    private final Meter exportedUsers;
 
-    private final AuthorityRepository authorityRepository;
+    private final Cache accountCache;
 
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, SocialService socialService, UserSearchRepository userSearchRepository, AuthorityRepository authorityRepository) {
+    private final Counter accountCacheHits;
+
+    private final Counter accountCacheMisses;
+
+    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, SocialService socialService, UserSearchIndexer userSearchIndexer, GrantedAuthorityRegistry grantedAuthorityRegistry, TokenDenylist tokenDenylist, UserCache userCache, UserBatchRepository userBatchRepository, UserAvailabilityService userAvailabilityService, UserPurgeService userPurgeService, EntityManager entityManager, MetricRegistry metricRegistry, CacheManager cacheManager) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
         this.socialService = socialService;
-        this.userSearchRepository = userSearchRepository;
-        this.authorityRepository = authorityRepository;
+        this.userSearchIndexer = userSearchIndexer;
+        this.grantedAuthorityRegistry = grantedAuthorityRegistry;
+        this.tokenDenylist = tokenDenylist;
+        this.userCache = userCache;
+        this.userBatchRepository = userBatchRepository;
+        this.userAvailabilityService = userAvailabilityService;
+        this.userPurgeService = userPurgeService;
+        this.entityManager = entityManager;
+        this.exportedUsers = metricRegistry.meter(MetricRegistry.name(UserService.class, "export", "rows"));
+        this.accountCache = cacheManager.getCache(ACCOUNT_CACHE);
+        this.accountCacheHits = metricRegistry.counter(MetricRegistry.name(UserService.class, "account-cache", "hits"));
+        this.accountCacheMisses = metricRegistry.counter(MetricRegistry.name(UserService.class, "account-cache", "misses"));
+        String hitRatioName = MetricRegistry.name(UserService.class, "account-cache", "hit-ratio");
+        metricRegistry.remove(hitRatioName);
+        metricRegistry.register(hitRatioName, new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(accountCacheHits.getCount(), accountCacheHits.getCount() + accountCacheMisses.getCount());
+            }
+        });
     }
 
     public Optional<User> activateRegistration(String key) {
@@ -56,7 +119,8 @@ public class UserService {
                 // activate given user for the registration key.
                 user.setActivated(true);
                 user.setActivationKey(null);
-                userSearchRepository.save(user);
+                userSearchIndexer.scheduleIndexing(user.getId());
+                evictCachedUser(user.getLogin());
                 log.debug("Activated user: {}", user);
                 return user;
             });
@@ -74,6 +138,8 @@ public class UserService {
                 user.setPassword(passwordEncoder.encode(newPassword));
                 user.setResetKey(null);
                 user.setResetDate(null);
+                tokenDenylist.revokeTokens(user.getLogin());
+                evictCachedUser(user.getLogin());
                 return user;
            });
     }
@@ -92,7 +158,7 @@ public class UserService {
         String imageUrl, String langKey) {
 
         User newUser = new User();
-        Authority authority = authorityRepository.findOne(AuthoritiesConstants.USER);
+        Authority authority = grantedAuthorityRegistry.getAuthority(AuthoritiesConstants.USER);
         Set<Authority> authorities = new HashSet<>();
         String encryptedPassword = passwordEncoder.encode(password);
         newUser.setLogin(login);
@@ -110,7 +176,8 @@ public class UserService {
         authorities.add(authority);
         newUser.setAuthorities(authorities);
         userRepository.save(newUser);
-        userSearchRepository.save(newUser);
+        userSearchIndexer.scheduleIndexing(newUser.getId());
+        userAvailabilityService.addUsed(newUser.getLogin(), newUser.getEmail());
         log.debug("Created Information for User: {}", newUser);
         return newUser;
     }
@@ -130,7 +197,7 @@ public class UserService {
         if (userDTO.getAuthorities() != null) {
             Set<Authority> authorities = new HashSet<>();
             userDTO.getAuthorities().forEach(
-                authority -> authorities.add(authorityRepository.findOne(authority))
+                authority -> authorities.add(grantedAuthorityRegistry.getAuthority(authority))
             );
             user.setAuthorities(authorities);
         }
@@ -140,32 +207,66 @@ public class UserService {
         user.setResetDate(ZonedDateTime.now());
         user.setActivated(true);
         userRepository.save(user);
-        userSearchRepository.save(user);
+        userSearchIndexer.scheduleIndexing(user.getId());
+        userAvailabilityService.addUsed(user.getLogin(), user.getEmail());
         log.debug("Created Information for User: {}", user);
         return user;
     }
 
+    /**
+     * Create users whose passwords are already hashed, with JDBC batches, and schedule their indexing.
+     * <p>
+     * The users must have new logins and e-mails; they are not added to the persistence context.
+     * </p>
+     */
+    public void createUsers(List<User> users) {
+        userBatchRepository.insertAll(users);
+        userSearchIndexer.scheduleIndexing(users.stream().map(User::getId).collect(Collectors.toList()));
+        users.forEach(user -> userAvailabilityService.addUsed(user.getLogin(), user.getEmail()));
+        log.debug("Created Information for {} Users", users.size());
+    }
+
     /**
      * Update basic information (first name, last name, email, language) for the current user.
+     *
+     * @param expectedVersion the version the user must have, or null to update any version
+     * @throws OptimisticLockingFailureException if the user has another version
      */
-    public void updateUser(String firstName, String lastName, String email, String langKey) {
+    public void updateUser(String firstName, String lastName, String email, String langKey, Long expectedVersion) {
         userRepository.findOneByLogin(SecurityUtils.getCurrentUserLogin()).ifPresent(user -> {
+            checkVersion(user, expectedVersion);
             user.setFirstName(firstName);
             user.setLastName(lastName);
             user.setEmail(email);
             user.setLangKey(langKey);
-            userSearchRepository.save(user);
+            userSearchIndexer.scheduleIndexing(user.getId());
+            userAvailabilityService.addUsed(user.getLogin(), user.getEmail());
+            evictCachedUser(user.getLogin());
             log.debug("Changed Information for User: {}", user);
         });
     }
 
     /**
      * Update all information for a specific user, and return the modified user.
+     * <p>
+     * The tokens of the user are revoked when the login or the authorities they carry change, or when the user is
+     * deactivated.
+     * </p>
+     *
+     * @param expectedVersion the version the user must have, or null to update any version
+     * @throws OptimisticLockingFailureException if the user has another version
      */
-    public Optional<UserDTO> updateUser(UserDTO userDTO) {
+    public Optional<UserDTO> updateUser(UserDTO userDTO, Long expectedVersion) {
         return Optional.of(userRepository
             .findOne(userDTO.getId()))
             .map(user -> {
+                checkVersion(user, expectedVersion);
+                evictCachedUser(user.getLogin());
+                String previousLogin = user.getLogin();
+                Set<String> previousAuthorities = user.getAuthorities().stream()
+                    .map(Authority::getName)
+                    .collect(Collectors.toSet());
+                boolean wasActivated = user.getActivated();
                 user.setLogin(userDTO.getLogin());
                 user.setFirstName(userDTO.getFirstName());
                 user.setLastName(userDTO.getLastName());
@@ -176,19 +277,38 @@ public class UserService {
                 Set<Authority> managedAuthorities = user.getAuthorities();
                 managedAuthorities.clear();
                 userDTO.getAuthorities().stream()
-                    .map(authorityRepository::findOne)
+                    .map(grantedAuthorityRegistry::getAuthority)
                     .forEach(managedAuthorities::add);
+                if (!previousLogin.equals(user.getLogin()) || !previousAuthorities.equals(userDTO.getAuthorities())
+                        || (wasActivated && !user.getActivated())) {
+                    tokenDenylist.revokeTokens(previousLogin);
+                }
+                evictCachedUser(user.getLogin());
+                userSearchIndexer.scheduleIndexing(user.getId());
+                userAvailabilityService.addUsed(user.getLogin(), user.getEmail());
                 log.debug("Changed Information for User: {}", user);
                 return user;
             })
             .map(UserDTO::new);
     }
 
+    /**
+     * The version is checked against the one loaded in the transaction: an update committed concurrently by another
+     * transaction is detected by Hibernate when the user is flushed.
+     */
+    private static void checkVersion(User user, Long expectedVersion) {
+        if (expectedVersion != null && !expectedVersion.equals(user.getVersion())) {
+            throw new ObjectOptimisticLockingFailureException(User.class, user.getId());
+        }
+    }
+
     public void deleteUser(String login) {
         userRepository.findOneByLogin(login).ifPresent(user -> {
             socialService.deleteUserSocialConnection(user.getLogin());
             userRepository.delete(user);
-            userSearchRepository.delete(user);
+            userSearchIndexer.scheduleIndexing(user.getId());
+            tokenDenylist.revokeTokens(user.getLogin());
+            evictCachedUser(user.getLogin());
             log.debug("Deleted User: {}", user);
         });
     }
@@ -197,13 +317,87 @@ public class UserService {
         userRepository.findOneByLogin(SecurityUtils.getCurrentUserLogin()).ifPresent(user -> {
             String encryptedPassword = passwordEncoder.encode(password);
             user.setPassword(encryptedPassword);
+            tokenDenylist.revokeTokens(user.getLogin());
+            evictCachedUser(user.getLogin());
             log.debug("Changed password for User: {}", user);
         });
     }
 
-    @Transactional(readOnly = true)    
+    /**
+     * Get a page of users, projected to DTOs: the page and the authorities of its users are fetched with one query
+     * each, without loading entities in the persistence context.
+     */
+    @Transactional(readOnly = true)
     public Page<UserDTO> getAllManagedUsers(Pageable pageable) {
-        return userRepository.findAll(pageable).map(UserDTO::new);
+        Page<UserDTO> page = userRepository.findAllAsDTO(pageable);
+        addAuthorities(page.getContent());
+        return page;
+    }
+
+    /**
+     * Get a page of users after a cursor, seeking on the id or on the login, which are both indexed and unique.
+     *
+     * @param cursor the sort and the last value of the previous page
+     * @param size the page size
+     * @throws IllegalArgumentException if the cursor is not sorted on the id or the login
+     */
+    @Transactional(readOnly = true)
+    public Slice<UserDTO> getAllManagedUsers(KeysetCursor cursor, int size) {
+        boolean byId = "id".equals(cursor.getProperty());
+        if (!byId && !"login".equals(cursor.getProperty())) {
+            throw new IllegalArgumentException("Users can only be sorted on id or login with a cursor");
+        }
+        Pageable pageable = new PageRequest(0, size, new Sort(cursor.getDirection(), cursor.getProperty()));
+        String lastValue = cursor.getLastValue();
+        boolean ascending = cursor.getDirection() == Sort.Direction.ASC;
+        Slice<UserDTO> users;
+        if (lastValue == null) {
+            users = userRepository.findSliceAsDTO(pageable);
+        } else if (byId) {
+            Long id = Long.valueOf(lastValue);
+            users = ascending ? userRepository.findSliceAsDTOByIdGreaterThan(id, pageable)
+                : userRepository.findSliceAsDTOByIdLessThan(id, pageable);
+        } else {
+            users = ascending ? userRepository.findSliceAsDTOByLoginGreaterThan(lastValue, pageable)
+                : userRepository.findSliceAsDTOByLoginLessThan(lastValue, pageable);
+        }
+        addAuthorities(users.getContent());
+        return users;
+    }
+
+    private void addAuthorities(List<UserDTO> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        Map<Long, UserDTO> usersById = new HashMap<>();
+        users.forEach(user -> usersById.put(user.getId(), user));
+        for (Object[] authority : userRepository.findAuthorityNamesByUserIdIn(usersById.keySet())) {
+            usersById.get(authority[0]).getAuthorities().add((String) authority[1]);
+        }
+    }
+
+    /**
+     * Pass all the users, ordered by id, to the consumer as they are read from the database.
+     * <p>
+     * The users are read with a forward-only cursor and detached once converted, so the memory used does not depend
+     * on the number of users; the export rate is measured by the "export.rows" meter.
+     * </p>
+     */
+    @Transactional(readOnly = true)
+    public void exportUsers(Consumer<UserDTO> consumer) {
+        try (Stream<User> users = userRepository.streamAllWithAuthorities()) {
+            users.forEach(user -> {
+                UserDTO userDTO = new UserDTO(user);
+                entityManager.detach(user);
+                consumer.accept(userDTO);
+                exportedUsers.mark();
+            });
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public long countManagedUsers() {
+        return userRepository.count();
     }
 
     @Transactional(readOnly = true)
@@ -221,6 +415,34 @@ public class UserService {
         return userRepository.findOneWithAuthoritiesByLogin(SecurityUtils.getCurrentUserLogin()).orElse(null);
     }
 
+    /**
+     * Get the account of the current user, from the account cache: the account is loaded with its authorities on a
+     * miss, and evicted when the user is modified.
+     * <p>
+     * The account is loaded from the primary database, as a replica could still have the version preceding a
+     * modification, and its ETag would be cached until the account expires.
+     * </p>
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public Optional<AccountDTO> getAccount() {
+        String login = SecurityUtils.getCurrentUserLogin();
+        if (login == null) {
+            return Optional.empty();
+        }
+        AccountDTO account = accountCache.get(login, AccountDTO.class);
+        if (account != null) {
+            accountCacheHits.inc();
+            return Optional.of(account);
+        }
+        accountCacheMisses.inc();
+        return ReplicaRoutingDataSource.readFromPrimary(() -> userRepository.findOneWithAuthoritiesByLogin(login))
+            .map(user -> {
+                AccountDTO loaded = new AccountDTO(user);
+                accountCache.put(login, loaded);
+                return loaded;
+            });
+    }
+
 
     /**
      * Not activated users should be automatically deleted after 3 days.
@@ -229,13 +451,33 @@ public class UserService {
      * </p>
      */
     @Scheduled(cron = "0 0 1 * * ?")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void removeNotActivatedUsers() {
-        ZonedDateTime now = ZonedDateTime.now();
-        List<User> users = userRepository.findAllByActivatedIsFalseAndCreatedDateBefore(now.minusDays(3));
-        for (User user : users) {
-            log.debug("Deleting not activated user {}", user.getLogin());
-            userRepository.delete(user);
-            userSearchRepository.delete(user);
+        long deleted = userPurgeService.removeNotActivatedUsers(ZonedDateTime.now().minusDays(3));
+        if (deleted >= 0) {
+            log.info("Deleted {} not activated users", deleted);
         }
     }
+
+    /**
+     * Evict a user from the cache of the DomainUserDetailsService and from the account cache, now and once the
+     * transaction is completed, so that no concurrent request caches the user as it was before the transaction, and
+     * no request of the transaction leaves it cached as it was before a rollback.
+     */
+    private void evictCachedUser(String login) {
+        evictCachedUserNow(login);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    evictCachedUserNow(login);
+                }
+            });
+        }
+    }
+
+    private void evictCachedUserNow(String login) {
+        userCache.removeUserFromCache(login);
+        accountCache.evict(login);
+    }
 }
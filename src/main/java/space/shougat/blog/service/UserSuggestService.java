@@ -0,0 +1,91 @@
+package space.shougat.blog.service;
+
+import space.shougat.blog.service.dto.UserSuggestionDTO;
+import space.shougat.blog.service.search.UserSearchEngine;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service suggesting users for the prefix of a login, of a first or last name, or of a full name.
+ * <p>
+ * The suggestions come from the {@link UserSearchEngine}, a completion field held in memory by Elasticsearch, and
+ * the suggestions of the hot prefixes are kept in a small local cache. Their changes are visible once the cache entry
+ * expires.
+ * </p>
+ */
+@Service
+public class UserSuggestService {
+
+    public static final String SUGGESTIONS_CACHE = "space.shougat.blog.service.UserSuggestService.suggestions";
+
+    /**
+     * The latency of the suggestions not served by the cache, above which they are counted as over budget.
+     */
+    public static final Duration LATENCY_BUDGET = Duration.ofMillis(10);
+
+    public static final int MAX_SUGGESTIONS = 20;
+
+    private static final int MAX_PREFIX_LENGTH = 100;
+
+    private final Logger log = LoggerFactory.getLogger(UserSuggestService.class);
+
+    private final UserSearchEngine userSearchEngine;
+
+    private final Cache suggestionsCache;
+
+    private final Timer suggestRequests;
+
+    private final Counter overBudgetRequests;
+
+    public UserSuggestService(UserSearchEngine userSearchEngine, CacheManager cacheManager,
+            MetricRegistry metricRegistry) {
+        this.userSearchEngine = userSearchEngine;
+        this.suggestionsCache = cacheManager.getCache(SUGGESTIONS_CACHE);
+        this.suggestRequests = metricRegistry.timer(MetricRegistry.name(UserSuggestService.class, "suggest-requests"));
+        this.overBudgetRequests = metricRegistry.counter(
+            MetricRegistry.name(UserSuggestService.class, "suggest-requests", "over-budget"));
+    }
+
+    /**
+     * Suggest the users whose login or names start with a prefix.
+     *
+     * @param prefix the prefix, case insensitive
+     * @param size the maximum number of suggestions, at most {@link #MAX_SUGGESTIONS}
+     * @return the suggested users, the best ones first
+     */
+    public List<UserSuggestionDTO> suggest(String prefix, int size) {
+        String normalizedPrefix = prefix.trim().toLowerCase(Locale.ENGLISH);
+        if (normalizedPrefix.isEmpty() || normalizedPrefix.length() > MAX_PREFIX_LENGTH || size < 1) {
+            return Collections.emptyList();
+        }
+        int boundedSize = Math.min(size, MAX_SUGGESTIONS);
+        String key = boundedSize + ":" + normalizedPrefix;
+        @SuppressWarnings("unchecked")
+        List<UserSuggestionDTO> suggestions = suggestionsCache.get(key, List.class);
+        if (suggestions == null) {
+            long start = System.nanoTime();
+            suggestions = userSearchEngine.suggest(normalizedPrefix, boundedSize);
+            long elapsed = System.nanoTime() - start;
+            suggestRequests.update(elapsed, TimeUnit.NANOSECONDS);
+            if (elapsed > LATENCY_BUDGET.toNanos()) {
+                overBudgetRequests.inc();
+                log.debug("Suggestions for {} took {} ms", normalizedPrefix, TimeUnit.NANOSECONDS.toMillis(elapsed));
+            }
+            suggestionsCache.put(key, suggestions);
+        }
+        return suggestions;
+    }
+}
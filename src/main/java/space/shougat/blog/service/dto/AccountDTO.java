@@ -0,0 +1,140 @@
+package space.shougat.blog.service.dto;
+
+import space.shougat.blog.domain.Authority;
+import space.shougat.blog.domain.User;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * An immutable DTO representing the account of the current user, with his authorities: the same JSON as a
+ * {@link UserDTO}, which can be shared by the requests of the user.
+ */
+public final class AccountDTO {
+
+    private final Long id;
+
+    private final Long version;
+
+    private final String login;
+
+    private final String firstName;
+
+    private final String lastName;
+
+    private final String email;
+
+    private final String imageUrl;
+
+    private final boolean activated;
+
+    private final String langKey;
+
+    private final String createdBy;
+
+    private final ZonedDateTime createdDate;
+
+    private final String lastModifiedBy;
+
+    private final ZonedDateTime lastModifiedDate;
+
+    private final Set<String> authorities;
+
+    public AccountDTO(User user) {
+        this.id = user.getId();
+        this.version = user.getVersion();
+        this.login = user.getLogin();
+        this.firstName = user.getFirstName();
+        this.lastName = user.getLastName();
+        this.email = user.getEmail();
+        this.imageUrl = user.getImageUrl();
+        this.activated = user.getActivated();
+        this.langKey = user.getLangKey();
+        this.createdBy = user.getCreatedBy();
+        this.createdDate = user.getCreatedDate();
+        this.lastModifiedBy = user.getLastModifiedBy();
+        this.lastModifiedDate = user.getLastModifiedDate();
+        this.authorities = Collections.unmodifiableSet(user.getAuthorities().stream()
+            .map(Authority::getName)
+            .collect(Collectors.toSet()));
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * The version of the user, for the ETag of the account.
+     */
+    @JsonIgnore
+    public Long getVersion() {
+        return version;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getImageUrl() {
+        return imageUrl;
+    }
+
+    public boolean isActivated() {
+        return activated;
+    }
+
+    public String getLangKey() {
+        return langKey;
+    }
+
+    public String getCreatedBy() {
+        return createdBy;
+    }
+
+    public ZonedDateTime getCreatedDate() {
+        return createdDate;
+    }
+
+    public String getLastModifiedBy() {
+        return lastModifiedBy;
+    }
+
+    public ZonedDateTime getLastModifiedDate() {
+        return lastModifiedDate;
+    }
+
+    public Set<String> getAuthorities() {
+        return authorities;
+    }
+
+    @Override
+    public String toString() {
+        return "AccountDTO{" +
+            "login='" + login + '\'' +
+            ", version=" + version +
+            ", firstName='" + firstName + '\'' +
+            ", lastName='" + lastName + '\'' +
+            ", email='" + email + '\'' +
+            ", imageUrl='" + imageUrl + '\'' +
+            ", activated=" + activated +
+            ", langKey='" + langKey + '\'' +
+            ", authorities=" + authorities +
+            "}";
+    }
+}
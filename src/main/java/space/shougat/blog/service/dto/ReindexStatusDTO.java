@@ -0,0 +1,118 @@
+package space.shougat.blog.service.dto;
+
+import java.time.ZonedDateTime;
+
+/**
+ * A DTO representing the progress of the last full reindex run by this node.
+ */
+public class ReindexStatusDTO {
+
+    public enum State {
+        IDLE, RUNNING, COMPLETED, FAILED
+    }
+
+    private final State state;
+
+    private final String index;
+
+    private final ZonedDateTime startDate;
+
+    private final ZonedDateTime endDate;
+
+    private final long totalUsers;
+
+    private final long indexedUsers;
+
+    private final int partitions;
+
+    private final int completedPartitions;
+
+    private final double usersPerSecond;
+
+    private final String error;
+
+    public ReindexStatusDTO(State state, String index, ZonedDateTime startDate, ZonedDateTime endDate,
+        long totalUsers, long indexedUsers, int partitions, int completedPartitions, double usersPerSecond,
+        String error) {
+
+        this.state = state;
+        this.index = index;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.totalUsers = totalUsers;
+        this.indexedUsers = indexedUsers;
+        this.partitions = partitions;
+        this.completedPartitions = completedPartitions;
+        this.usersPerSecond = usersPerSecond;
+        this.error = error;
+    }
+
+    public static ReindexStatusDTO idle() {
+        return new ReindexStatusDTO(State.IDLE, null, null, null, 0, 0, 0, 0, 0, null);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * The index built by the reindex, which replaces the current one once it is completed.
+     */
+    public String getIndex() {
+        return index;
+    }
+
+    public ZonedDateTime getStartDate() {
+        return startDate;
+    }
+
+    public ZonedDateTime getEndDate() {
+        return endDate;
+    }
+
+    /**
+     * The number of users when the reindex started.
+     */
+    public long getTotalUsers() {
+        return totalUsers;
+    }
+
+    public long getIndexedUsers() {
+        return indexedUsers;
+    }
+
+    /**
+     * The number of id ranges read by the reindex.
+     */
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public int getCompletedPartitions() {
+        return completedPartitions;
+    }
+
+    /**
+     * The mean throughput since the start of the reindex.
+     */
+    public double getUsersPerSecond() {
+        return usersPerSecond;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "ReindexStatusDTO{" +
+            "state=" + state +
+            ", index='" + index + '\'' +
+            ", indexedUsers=" + indexedUsers +
+            ", totalUsers=" + totalUsers +
+            ", completedPartitions=" + completedPartitions +
+            ", partitions=" + partitions +
+            ", error='" + error + '\'' +
+            "}";
+    }
+}
@@ -9,6 +9,7 @@ import org.hibernate.validator.constraints.Email;
 
 import javax.validation.constraints.*;
 import java.time.ZonedDateTime;
+import java.util.HashSet;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -63,6 +64,16 @@ public class UserDTO {
                 .collect(Collectors.toSet()));
     }
 
+    /**
+     * Constructor of the JPQL projections, which set the authorities afterwards.
+     */
+    public UserDTO(Long id, String login, String firstName, String lastName,
+        String email, boolean activated, String imageUrl, String langKey,
+        String createdBy, ZonedDateTime createdDate, String lastModifiedBy, ZonedDateTime lastModifiedDate) {
+        this(id, login, firstName, lastName, email, activated, imageUrl, langKey,
+            createdBy, createdDate, lastModifiedBy, lastModifiedDate, new HashSet<>());
+    }
+
     public UserDTO(Long id, String login, String firstName, String lastName,
         String email, boolean activated, String imageUrl, String langKey,
         String createdBy, ZonedDateTime createdDate, String lastModifiedBy, ZonedDateTime lastModifiedDate,
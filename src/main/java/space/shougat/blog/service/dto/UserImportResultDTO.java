@@ -0,0 +1,59 @@
+package space.shougat.blog.service.dto;
+
+/**
+ * A DTO representing the result of the import of one user.
+ */
+public class UserImportResultDTO {
+
+    public enum Status {
+        CREATED, REJECTED, FAILED, INTERRUPTED
+    }
+
+    private int line;
+
+    private String login;
+
+    private Status status;
+
+    private String message;
+
+    public UserImportResultDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public UserImportResultDTO(int line, String login, Status status, String message) {
+        this.line = line;
+        this.login = login;
+        this.status = status;
+        this.message = message;
+    }
+
+    /**
+     * @return the line of the user in the import, starting at 1
+     */
+    public int getLine() {
+        return line;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "UserImportResultDTO{" +
+            "line=" + line +
+            ", login='" + login + '\'' +
+            ", status=" + status +
+            ", message='" + message + '\'' +
+            "}";
+    }
+}
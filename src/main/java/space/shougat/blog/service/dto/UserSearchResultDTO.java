@@ -0,0 +1,119 @@
+package space.shougat.blog.service.dto;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A DTO representing a user found by a search, with the fragments of its fields matching the query.
+ */
+public class UserSearchResultDTO {
+
+    /**
+     * The fields read from the index, the other fields of the indexed users are not fetched.
+     */
+    public static final String[] FIELDS = {"id", "login", "firstName", "lastName", "email", "imageUrl", "activated",
+        "langKey"};
+
+    private Long id;
+
+    private String login;
+
+    private String firstName;
+
+    private String lastName;
+
+    private String email;
+
+    private String imageUrl;
+
+    private boolean activated;
+
+    private String langKey;
+
+    private Map<String, List<String>> highlights = Collections.emptyMap();
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+
+    public void setLogin(String login) {
+        this.login = login;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public void setFirstName(String firstName) {
+        this.firstName = firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public void setLastName(String lastName) {
+        this.lastName = lastName;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    public String getImageUrl() {
+        return imageUrl;
+    }
+
+    public void setImageUrl(String imageUrl) {
+        this.imageUrl = imageUrl;
+    }
+
+    public boolean isActivated() {
+        return activated;
+    }
+
+    public void setActivated(boolean activated) {
+        this.activated = activated;
+    }
+
+    public String getLangKey() {
+        return langKey;
+    }
+
+    public void setLangKey(String langKey) {
+        this.langKey = langKey;
+    }
+
+    /**
+     * The fragments of the fields matching the query, by field name, with the matching terms in &lt;em&gt; tags.
+     */
+    public Map<String, List<String>> getHighlights() {
+        return highlights;
+    }
+
+    public void setHighlights(Map<String, List<String>> highlights) {
+        this.highlights = highlights;
+    }
+
+    @Override
+    public String toString() {
+        return "UserSearchResultDTO{" +
+            "id=" + id +
+            ", login='" + login + '\'' +
+            ", highlights=" + highlights +
+            "}";
+    }
+}
@@ -0,0 +1,57 @@
+package space.shougat.blog.service.dto;
+
+import java.io.Serializable;
+
+/**
+ * A DTO representing a user suggested for a prefix of its login or names.
+ */
+public final class UserSuggestionDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Long id;
+
+    private final String login;
+
+    private final String firstName;
+
+    private final String lastName;
+
+    private final String imageUrl;
+
+    public UserSuggestionDTO(Long id, String login, String firstName, String lastName, String imageUrl) {
+        this.id = id;
+        this.login = login;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.imageUrl = imageUrl;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public String getImageUrl() {
+        return imageUrl;
+    }
+
+    @Override
+    public String toString() {
+        return "UserSuggestionDTO{" +
+            "id=" + id +
+            ", login='" + login + '\'' +
+            "}";
+    }
+}
@@ -0,0 +1,438 @@
+package space.shougat.blog.service.search;
+
+import space.shougat.blog.config.Constants;
+import space.shougat.blog.config.elasticsearch.SmileEntityMapper;
+import space.shougat.blog.domain.User;
+import space.shougat.blog.service.dto.UserSearchResultDTO;
+import space.shougat.blog.service.dto.UserSuggestionDTO;
+
+import org.elasticsearch.action.admin.indices.alias.Alias;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequestBuilder;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.search.SearchPhaseExecutionException;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.action.suggest.SuggestResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.IndicesAdminClient;
+import org.elasticsearch.cluster.metadata.AliasMetaData;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.common.collect.ImmutableOpenMap;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.highlight.HighlightBuilder;
+import org.elasticsearch.search.highlight.HighlightField;
+import org.elasticsearch.search.suggest.Suggest;
+import org.elasticsearch.search.suggest.SuggestBuilders;
+import org.elasticsearch.search.suggest.completion.CompletionSuggestion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.SearchResultMapper;
+import org.springframework.data.elasticsearch.core.completion.Completion;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+import static org.elasticsearch.index.query.QueryBuilders.queryStringQuery;
+
+/**
+ * Search index of the users in Elasticsearch.
+ * <p>
+ * The User documents are searched through an alias. A reindex fills a new index, named after the alias and its start
+ * time, with the refresh and the replicas disabled, then moves the alias to it with one atomic request. An index
+ * created before the alias, which has the name of the alias, is replaced by the first reindex: the searches fail
+ * between the deletion of this index and the creation of the alias.
+ * </p>
+ * <p>
+ * The settings and the mapping of the index are defined by {@value #INDEX_DEFINITION}, whose mapping has a version.
+ * The index is created at startup if it does not exist, otherwise its mapping is checked against the definition: a
+ * mapping cannot be changed in place, so an outdated index is only replaced by a reindex.
+ * </p>
+ * <p>
+ * The documents are the users, with the completion suggesting them.
+ * </p>
+ */
+@Component
+@Profile("!" + Constants.SPRING_PROFILE_LUCENE)
+public class ElasticsearchUserSearchEngine implements UserSearchEngine, SmartInitializingSingleton {
+
+    static final String INDEX_DEFINITION = "config/elasticsearch/user-index.json";
+
+    static final String[] HIGHLIGHTED_FIELDS = {"login", "firstName", "lastName", "email"};
+
+    static final String SUGGEST_FIELD = "suggest";
+
+    /**
+     * Attributes of the fields compared with the definition, the other ones have defaults added by Elasticsearch.
+     */
+    private static final String[] CHECKED_ATTRIBUTES = {"type", "index", "analyzer"};
+
+    private final Logger log = LoggerFactory.getLogger(ElasticsearchUserSearchEngine.class);
+
+    private final ElasticsearchTemplate elasticsearchTemplate;
+
+    private final SmileEntityMapper entityMapper;
+
+    private final Settings indexSettings;
+
+    private final Map<String, Object> indexMapping;
+
+    public ElasticsearchUserSearchEngine(ElasticsearchTemplate elasticsearchTemplate,
+            SmileEntityMapper entityMapper) throws IOException {
+        this.elasticsearchTemplate = elasticsearchTemplate;
+        this.entityMapper = entityMapper;
+        Map<String, Object> definition;
+        try (InputStream inputStream = new ClassPathResource(INDEX_DEFINITION).getInputStream();
+                XContentParser parser = JsonXContent.jsonXContent.createParser(inputStream)) {
+            definition = parser.mapOrdered();
+        }
+        this.indexSettings = Settings.settingsBuilder()
+            .loadFromSource(XContentFactory.jsonBuilder().map(getMap(definition, "settings")).string())
+            .build();
+        this.indexMapping = getMap(getMap(definition, "mappings"), getPersistentEntity().getIndexType());
+    }
+
+    /**
+     * Create the index if it does not exist, or log the differences between its mapping and the definition.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        ElasticsearchPersistentEntity<?> persistentEntity = getPersistentEntity();
+        String alias = persistentEntity.getIndexName();
+        try {
+            IndicesAdminClient indices = elasticsearchTemplate.getClient().admin().indices();
+            if (!indices.prepareExists(alias).get().isExists()) {
+                String index = newIndexName(persistentEntity);
+                indices.prepareCreate(index)
+                    .setSettings(indexSettings)
+                    .addMapping(persistentEntity.getIndexType(), indexMapping)
+                    .addAlias(new Alias(alias))
+                    .get();
+                log.info("Created the index {} of the users", index);
+                return;
+            }
+            ImmutableOpenMap<String, ImmutableOpenMap<String, MappingMetaData>> mappings =
+                indices.prepareGetMappings(alias).setTypes(persistentEntity.getIndexType()).get().getMappings();
+            for (Iterator<String> it = mappings.keysIt(); it.hasNext(); ) {
+                String index = it.next();
+                MappingMetaData mapping = mappings.get(index).get(persistentEntity.getIndexType());
+                List<String> differences = compareMapping(indexMapping,
+                    mapping == null ? Collections.emptyMap() : mapping.sourceAsMap());
+                if (!differences.isEmpty()) {
+                    log.error("The mapping of the index {} of the users is outdated, reindex them with " +
+                        "POST /management/reindex/users: {}", index, differences);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not check the index of the users: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Compare the mapping of an index with the mapping of the definition: their versions, and the type, the indexing
+     * and the analyzer of the fields of the definition.
+     *
+     * @return the differences, empty if the mapping is up to date
+     */
+    static List<String> compareMapping(Map<String, Object> expected, Map<String, Object> actual) {
+        List<String> differences = new ArrayList<>();
+        Object expectedVersion = getMap(expected, "_meta").get("version");
+        Object actualVersion = getMap(actual, "_meta").get("version");
+        if (!String.valueOf(expectedVersion).equals(String.valueOf(actualVersion))) {
+            differences.add("version " + actualVersion + " instead of " + expectedVersion);
+        }
+        Map<String, Object> actualProperties = getMap(actual, "properties");
+        getMap(expected, "properties").forEach((field, expectedProperty) -> {
+            Map<String, Object> actualProperty = getMap(actualProperties, field);
+            if (actualProperty.isEmpty()) {
+                differences.add(field + " is not mapped");
+                return;
+            }
+            for (String attribute : CHECKED_ATTRIBUTES) {
+                Object expectedValue = ((Map<?, ?>) expectedProperty).get(attribute);
+                if (expectedValue != null && !expectedValue.equals(actualProperty.get(attribute))) {
+                    differences.add(field + " has " + attribute + " " + actualProperty.get(attribute) +
+                        " instead of " + expectedValue);
+                }
+            }
+        });
+        return differences;
+    }
+
+    @Override
+    public Set<Long> index(Collection<User> users, Collection<Long> deletedUserIds) {
+        ElasticsearchPersistentEntity<?> persistentEntity = getPersistentEntity();
+        Client client = elasticsearchTemplate.getClient();
+        BulkRequestBuilder bulkRequest = client.prepareBulk();
+        for (User user : users) {
+            bulkRequest.add(client.prepareIndex(persistentEntity.getIndexName(), persistentEntity.getIndexType(),
+                user.getId().toString()).setSource(toSource(user)));
+        }
+        for (Long userId : deletedUserIds) {
+            bulkRequest.add(client.prepareDelete(persistentEntity.getIndexName(), persistentEntity.getIndexType(),
+                userId.toString()));
+        }
+        BulkResponse bulkResponse = bulkRequest.get();
+
+        Set<Long> rejectedUserIds = new HashSet<>();
+        for (BulkItemResponse item : bulkResponse.getItems()) {
+            if (item.isFailed()) {
+                log.warn("Could not index user {}: {}", item.getId(), item.getFailureMessage());
+                rejectedUserIds.add(Long.valueOf(item.getId()));
+            }
+        }
+        return rejectedUserIds;
+    }
+
+    @Override
+    public Page<UserSearchResultDTO> search(String query, Pageable pageable) {
+        ElasticsearchPersistentEntity<?> persistentEntity = getPersistentEntity();
+        NativeSearchQueryBuilder searchQuery = new NativeSearchQueryBuilder()
+            .withIndices(persistentEntity.getIndexName())
+            .withTypes(persistentEntity.getIndexType())
+            .withQuery(queryStringQuery(query))
+            .withSourceFilter(new FetchSourceFilter(UserSearchResultDTO.FIELDS, null))
+            .withPageable(pageable);
+        // the query string searches all the fields by default, so the highlighted fields must not require a match
+        searchQuery.withHighlightFields(Arrays.stream(HIGHLIGHTED_FIELDS)
+            .map(field -> new HighlightBuilder.Field(field).requireFieldMatch(false))
+            .toArray(HighlightBuilder.Field[]::new));
+        try {
+            return elasticsearchTemplate.queryForPage(searchQuery.build(), UserSearchResultDTO.class,
+                new UserSearchResultMapper());
+        } catch (SearchPhaseExecutionException e) {
+            // the query string and the sort are parsed by the shards, which fail with a bad request status
+            if (e.status() == RestStatus.BAD_REQUEST) {
+                throw new IllegalArgumentException("Invalid query or sort: " + Arrays.stream(e.shardFailures())
+                    .map(ShardSearchFailure::reason)
+                    .findFirst()
+                    .orElse(e.getMessage()), e);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public List<UserSuggestionDTO> suggest(String prefix, int size) {
+        SuggestResponse response = elasticsearchTemplate.suggest(SuggestBuilders.completionSuggestion(SUGGEST_FIELD)
+            .field(SUGGEST_FIELD).text(prefix).size(size), getPersistentEntity().getIndexName());
+        Suggest.Suggestion<? extends Suggest.Suggestion.Entry<? extends Suggest.Suggestion.Entry.Option>> suggestion =
+            response.getSuggest().getSuggestion(SUGGEST_FIELD);
+        List<UserSuggestionDTO> suggestions = new ArrayList<>();
+        if (suggestion == null) {
+            return suggestions;
+        }
+        for (Suggest.Suggestion.Entry<? extends Suggest.Suggestion.Entry.Option> entry : suggestion.getEntries()) {
+            for (Suggest.Suggestion.Entry.Option option : entry.getOptions()) {
+                Map<String, Object> payload = ((CompletionSuggestion.Entry.Option) option).getPayloadAsMap();
+                Number id = (Number) payload.get("id");
+                suggestions.add(new UserSuggestionDTO(id == null ? null : id.longValue(), option.getText().string(),
+                    (String) payload.get("firstName"), (String) payload.get("lastName"),
+                    (String) payload.get("imageUrl")));
+            }
+        }
+        return suggestions;
+    }
+
+    @Override
+    public NewIndex createIndex() {
+        ElasticsearchPersistentEntity<?> persistentEntity = getPersistentEntity();
+        String index = newIndexName(persistentEntity);
+        elasticsearchTemplate.getClient().admin().indices().prepareCreate(index)
+            .setSettings(Settings.settingsBuilder()
+                .put(indexSettings)
+                .put("index.number_of_replicas", 0)
+                .put("index.refresh_interval", "-1"))
+            .addMapping(persistentEntity.getIndexType(), indexMapping)
+            .get();
+        return new ElasticsearchNewIndex(index, persistentEntity);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> getMap(Map<String, Object> map, String key) {
+        Object value = map.get(key);
+        return value instanceof Map ? (Map<String, Object>) value : Collections.emptyMap();
+    }
+
+    private static String newIndexName(ElasticsearchPersistentEntity<?> persistentEntity) {
+        return persistentEntity.getIndexName() + "-" + System.currentTimeMillis();
+    }
+
+    private ElasticsearchPersistentEntity<?> getPersistentEntity() {
+        return elasticsearchTemplate.getPersistentEntityFor(User.class);
+    }
+
+    private byte[] toSource(User user) {
+        try {
+            return entityMapper.mapToBytes(new UserDocument(user));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private class ElasticsearchNewIndex implements NewIndex {
+
+        private final String index;
+
+        private final ElasticsearchPersistentEntity<?> persistentEntity;
+
+        ElasticsearchNewIndex(String index, ElasticsearchPersistentEntity<?> persistentEntity) {
+            this.index = index;
+            this.persistentEntity = persistentEntity;
+        }
+
+        @Override
+        public String getName() {
+            return index;
+        }
+
+        @Override
+        public void index(List<User> users) {
+            Client client = elasticsearchTemplate.getClient();
+            BulkRequestBuilder bulkRequest = client.prepareBulk();
+            for (User user : users) {
+                bulkRequest.add(client.prepareIndex(index, persistentEntity.getIndexType(),
+                    user.getId().toString()).setSource(toSource(user)));
+            }
+            BulkResponse bulkResponse = bulkRequest.get();
+            if (bulkResponse.hasFailures()) {
+                throw new IllegalStateException("Could not index the users: " + bulkResponse.buildFailureMessage());
+            }
+        }
+
+        /**
+         * Restore the replicas and the refresh of the index, then move the alias to it with one request, and delete
+         * the previous indices.
+         */
+        @Override
+        public void publish() {
+            IndicesAdminClient indices = elasticsearchTemplate.getClient().admin().indices();
+            indices.prepareUpdateSettings(index).setSettings(Settings.settingsBuilder()
+                .put("index.number_of_replicas", persistentEntity.getReplicas())
+                .put("index.refresh_interval", persistentEntity.getRefreshInterval()))
+                .get();
+            indices.prepareRefresh(index).get();
+
+            String alias = persistentEntity.getIndexName();
+            IndicesAliasesRequestBuilder request = indices.prepareAliases().addAlias(index, alias);
+            boolean aliased = false;
+            ImmutableOpenMap<String, List<AliasMetaData>> aliases =
+                indices.prepareGetAliases(alias).get().getAliases();
+            for (Iterator<String> it = aliases.keysIt(); it.hasNext(); ) {
+                String previousIndex = it.next();
+                if (!aliases.get(previousIndex).isEmpty()) {
+                    request.removeAlias(previousIndex, alias);
+                    aliased = true;
+                }
+            }
+            if (!aliased && indices.prepareExists(alias).get().isExists()) {
+                log.warn("Replacing the index {} by an alias, the searches fail until it is created", alias);
+                indices.prepareDelete(alias).get();
+            }
+            request.get();
+
+            // the previous indices, and the ones left by failed reindexes
+            String[] staleIndices = Arrays.stream(indices.prepareGetIndex().setIndices(alias + "-*").get().getIndices())
+                .filter(staleIndex -> !staleIndex.equals(index))
+                .toArray(String[]::new);
+            if (staleIndices.length > 0) {
+                indices.prepareDelete(staleIndices).get();
+            }
+        }
+
+        @Override
+        public void delete() {
+            IndicesAdminClient indices = elasticsearchTemplate.getClient().admin().indices();
+            if (indices.prepareExists(index).get().isExists()) {
+                indices.prepareDelete(index).get();
+            }
+        }
+    }
+
+    private class UserSearchResultMapper implements SearchResultMapper {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> Page<T> mapResults(SearchResponse response, Class<T> clazz, Pageable pageable) {
+            List<T> results = new ArrayList<>(response.getHits().getHits().length);
+            for (SearchHit hit : response.getHits()) {
+                results.add((T) toResult(hit));
+            }
+            return new PageImpl<>(results, pageable, response.getHits().getTotalHits());
+        }
+
+        private UserSearchResultDTO toResult(SearchHit hit) {
+            UserSearchResultDTO result;
+            try {
+                result = entityMapper.mapToObject(hit.getSourceRef(), UserSearchResultDTO.class);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (!hit.getHighlightFields().isEmpty()) {
+                Map<String, List<String>> highlights = new LinkedHashMap<>();
+                for (HighlightField field : hit.getHighlightFields().values()) {
+                    List<String> fragments = new ArrayList<>(field.getFragments().length);
+                    for (Text fragment : field.getFragments()) {
+                        fragments.add(fragment.string());
+                    }
+                    highlights.put(field.getName(), fragments);
+                }
+                result.setHighlights(highlights);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Document of a user in the index: the user, and the completion suggesting it, whose payload is the summary of
+     * the user.
+     */
+    static final class UserDocument {
+
+        private final User user;
+
+        UserDocument(User user) {
+            this.user = user;
+        }
+
+        @JsonUnwrapped
+        public User getUser() {
+            return user;
+        }
+
+        public Completion getSuggest() {
+            Set<String> inputs = UserSearchEngine.getSuggestInputs(user);
+            Completion completion = new Completion(inputs.toArray(new String[inputs.size()]));
+            completion.setOutput(user.getLogin());
+            Map<String, Object> payload = new HashMap<>();
+            payload.put("id", user.getId());
+            payload.put("firstName", user.getFirstName());
+            payload.put("lastName", user.getLastName());
+            payload.put("imageUrl", user.getImageUrl());
+            completion.setPayload(payload);
+            return completion;
+        }
+    }
+}
@@ -0,0 +1,515 @@
+package space.shougat.blog.service.search;
+
+import space.shougat.blog.config.ApplicationProperties;
+import space.shougat.blog.config.Constants;
+import space.shougat.blog.domain.User;
+import space.shougat.blog.service.dto.UserSearchResultDTO;
+import space.shougat.blog.service.dto.UserSuggestionDTO;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.KeywordTokenizer;
+import org.apache.lucene.analysis.core.LowerCaseFilter;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.util.CharArraySet;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.highlight.Highlighter;
+import org.apache.lucene.search.highlight.InvalidTokenOffsetsException;
+import org.apache.lucene.search.highlight.QueryScorer;
+import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Search index of the users in an embedded Lucene index, for single-node deployments.
+ * <p>
+ * The index is a memory-mapped directory, searched with near-real-time readers of its writer: the changes are visible
+ * as soon as they are indexed, without a commit. The changes are committed once per request of the indexer, and a
+ * reindex commits once, when the new index is filled.
+ * </p>
+ * <p>
+ * The fields are indexed like the ones of the Elasticsearch index: the login and the email are lower-cased keywords,
+ * the other fields are analyzed with the standard analyzer without stop words, and the image URL is only stored.
+ * The queries are parsed like the query string queries of Elasticsearch, searching all the fields by default
+ * through an "_all" field. The suggestions match the prefixes of the completion inputs of the users, in lower case.
+ * </p>
+ * <p>
+ * The commits record the version of the fields of the index: an index built with other fields is only replaced by a
+ * reindex.
+ * </p>
+ */
+@Component
+@Profile(Constants.SPRING_PROFILE_LUCENE)
+public class LuceneUserSearchEngine implements UserSearchEngine {
+
+    static final String ALL_FIELD = "_all";
+
+    static final String SUGGEST_FIELD = "suggest";
+
+    static final String[] HIGHLIGHTED_FIELDS = {"login", "firstName", "lastName", "email"};
+
+    /**
+     * Version of the fields of the index, incremented when they change.
+     */
+    static final String INDEX_VERSION = "1";
+
+    private static final String VERSION_KEY = "version";
+
+    private static final FieldType KEYWORD_TYPE = new FieldType(TextField.TYPE_STORED);
+
+    static {
+        KEYWORD_TYPE.setOmitNorms(true);
+        KEYWORD_TYPE.freeze();
+    }
+
+    private static final String INDEX_PREFIX = "user-";
+
+    private static final double REINDEX_RAM_BUFFER_MB = 64;
+
+    private final Logger log = LoggerFactory.getLogger(LuceneUserSearchEngine.class);
+
+    private final Path directory;
+
+    private final Analyzer analyzer;
+
+    /**
+     * Held to use the current index, and to replace it.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private LuceneIndex current;
+
+    public LuceneUserSearchEngine(ApplicationProperties applicationProperties) {
+        this.directory = Paths.get(applicationProperties.getSearch().getLucene().getDirectory());
+        Map<String, Analyzer> keywordAnalyzers = new HashMap<>();
+        keywordAnalyzers.put("login", new LowercaseKeywordAnalyzer());
+        keywordAnalyzers.put("email", new LowercaseKeywordAnalyzer());
+        this.analyzer = new PerFieldAnalyzerWrapper(new StandardAnalyzer(CharArraySet.EMPTY_SET), keywordAnalyzers);
+        try {
+            this.current = openCurrentIndex();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the search index in " + directory, e);
+        }
+        log.info("Searching the users in {}", current.path);
+    }
+
+    /**
+     * Open the newest committed index of the directory, and delete the ones left by failed reindexes.
+     */
+    private LuceneIndex openCurrentIndex() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> indices;
+        try (Stream<Path> paths = Files.list(directory)) {
+            indices = paths
+                .filter(path -> path.getFileName().toString().matches(INDEX_PREFIX + "\\d+"))
+                .sorted(Comparator.comparing(LuceneUserSearchEngine::getTimestamp).reversed())
+                .collect(Collectors.toList());
+        }
+        LuceneIndex index = null;
+        for (Path path : indices) {
+            if (index == null) {
+                Directory candidate = new MMapDirectory(path);
+                if (DirectoryReader.indexExists(candidate)) {
+                    String version = SegmentInfos.readLatestCommit(candidate).getUserData().get(VERSION_KEY);
+                    if (!INDEX_VERSION.equals(version)) {
+                        log.error("The search index {} has version {} of the fields instead of {}, reindex the " +
+                            "users with POST /management/reindex/users", path, version, INDEX_VERSION);
+                    }
+                    index = new LuceneIndex(path, candidate, new IndexWriterConfig(analyzer)
+                        .setOpenMode(IndexWriterConfig.OpenMode.APPEND));
+                    continue;
+                }
+                candidate.close();
+            }
+            log.warn("Deleting the search index {}, left by a failed reindex", path);
+            IOUtils.rm(path);
+        }
+        if (index == null) {
+            Path path = newIndexPath();
+            index = new LuceneIndex(path, new MMapDirectory(path), new IndexWriterConfig(analyzer)
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE));
+            index.writer.commit();
+        }
+        index.open();
+        return index;
+    }
+
+    /**
+     * @return a path for a new index, named after the current time
+     */
+    private Path newIndexPath() {
+        long timestamp = System.currentTimeMillis();
+        while (Files.exists(directory.resolve(INDEX_PREFIX + timestamp))) {
+            timestamp++;
+        }
+        return directory.resolve(INDEX_PREFIX + timestamp);
+    }
+
+    private static long getTimestamp(Path path) {
+        return Long.parseLong(path.getFileName().toString().substring(INDEX_PREFIX.length()));
+    }
+
+    @Override
+    public Set<Long> index(Collection<User> users, Collection<Long> deletedUserIds) {
+        lock.readLock().lock();
+        try {
+            for (User user : users) {
+                current.writer.updateDocument(new Term("id", user.getId().toString()), toDocument(user));
+            }
+            for (Long userId : deletedUserIds) {
+                current.writer.deleteDocuments(new Term("id", userId.toString()));
+            }
+            current.writer.commit();
+            current.searcherManager.maybeRefreshBlocking();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return Collections.emptySet();
+    }
+
+    @Override
+    public Page<UserSearchResultDTO> search(String query, Pageable pageable) {
+        Query luceneQuery = parse(query);
+        Sort sort = toSort(pageable.getSort());
+        int end = pageable.getOffset() + pageable.getPageSize();
+        Highlighter highlighter = new Highlighter(new SimpleHTMLFormatter("<em>", "</em>"),
+            new QueryScorer(luceneQuery));
+        lock.readLock().lock();
+        try {
+            IndexSearcher searcher = current.searcherManager.acquire();
+            try {
+                TopDocs topDocs = sort == null ? searcher.search(luceneQuery, end)
+                    : searcher.search(luceneQuery, end, sort);
+                List<UserSearchResultDTO> results = new ArrayList<>();
+                for (int i = pageable.getOffset(); i < topDocs.scoreDocs.length; i++) {
+                    results.add(toResult(searcher.doc(topDocs.scoreDocs[i].doc), highlighter));
+                }
+                return new PageImpl<>(results, pageable, topDocs.totalHits);
+            } finally {
+                current.searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<UserSuggestionDTO> suggest(String prefix, int size) {
+        lock.readLock().lock();
+        try {
+            IndexSearcher searcher = current.searcherManager.acquire();
+            try {
+                TopDocs topDocs = searcher.search(new PrefixQuery(new Term(SUGGEST_FIELD, prefix)), size,
+                    new Sort(new SortField("login", SortField.Type.STRING)));
+                List<UserSuggestionDTO> suggestions = new ArrayList<>();
+                for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                    Document document = searcher.doc(scoreDoc.doc);
+                    suggestions.add(new UserSuggestionDTO(Long.valueOf(document.get("id")), document.get("login"),
+                        document.get("firstName"), document.get("lastName"), document.get("imageUrl")));
+                }
+                return suggestions;
+            } finally {
+                current.searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public NewIndex createIndex() {
+        Path path = newIndexPath();
+        try {
+            return new LuceneNewIndex(new LuceneIndex(path, new MMapDirectory(path), new IndexWriterConfig(analyzer)
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE)
+                .setRAMBufferSizeMB(REINDEX_RAM_BUFFER_MB)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            current.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Query parse(String query) {
+        // not thread-safe, so parsers are not shared
+        QueryParser queryParser = new UserQueryParser(analyzer);
+        queryParser.setAllowLeadingWildcard(true);
+        queryParser.setFuzzyMinSim(UserQueryParser.AUTO_FUZZINESS);
+        try {
+            return queryParser.parse(query);
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Invalid query: " + e.getMessage(), e);
+        }
+    }
+
+    private static Sort toSort(org.springframework.data.domain.Sort sort) {
+        if (sort == null) {
+            return null;
+        }
+        List<SortField> sortFields = new ArrayList<>();
+        for (org.springframework.data.domain.Sort.Order order : sort) {
+            if ("id".equals(order.getProperty())) {
+                sortFields.add(new SortField("id", SortField.Type.LONG, !order.isAscending()));
+            } else if ("login".equals(order.getProperty())) {
+                sortFields.add(new SortField("login", SortField.Type.STRING, !order.isAscending()));
+            } else {
+                throw new IllegalArgumentException("The users cannot be sorted by " + order.getProperty());
+            }
+        }
+        return new Sort(sortFields.toArray(new SortField[sortFields.size()]));
+    }
+
+    private Document toDocument(User user) {
+        Document document = new Document();
+        document.add(new StringField("id", user.getId().toString(), Field.Store.YES));
+        document.add(new NumericDocValuesField("id", user.getId()));
+        document.add(new TextField(ALL_FIELD, user.getId().toString(), Field.Store.NO));
+        addText(document, new Field("login", user.getLogin(), KEYWORD_TYPE));
+        document.add(new SortedDocValuesField("login", new BytesRef(user.getLogin())));
+        if (user.getEmail() != null) {
+            addText(document, new Field("email", user.getEmail(), KEYWORD_TYPE));
+        }
+        if (user.getFirstName() != null) {
+            addText(document, new TextField("firstName", user.getFirstName(), Field.Store.YES));
+        }
+        if (user.getLastName() != null) {
+            addText(document, new TextField("lastName", user.getLastName(), Field.Store.YES));
+        }
+        addText(document, new StringField("activated", String.valueOf(user.getActivated()), Field.Store.YES));
+        if (user.getLangKey() != null) {
+            addText(document, new StringField("langKey", user.getLangKey(), Field.Store.YES));
+        }
+        if (user.getImageUrl() != null) {
+            document.add(new StoredField("imageUrl", user.getImageUrl()));
+        }
+        for (String input : UserSearchEngine.getSuggestInputs(user)) {
+            document.add(new StringField(SUGGEST_FIELD, input.toLowerCase(Locale.ENGLISH), Field.Store.NO));
+        }
+        return document;
+    }
+
+    /**
+     * Add a field to a document, and its value to the "_all" field.
+     */
+    private static void addText(Document document, Field field) {
+        document.add(field);
+        document.add(new TextField(ALL_FIELD, field.stringValue(), Field.Store.NO));
+    }
+
+    private UserSearchResultDTO toResult(Document document, Highlighter highlighter) throws IOException {
+        UserSearchResultDTO result = new UserSearchResultDTO();
+        result.setId(Long.valueOf(document.get("id")));
+        result.setLogin(document.get("login"));
+        result.setFirstName(document.get("firstName"));
+        result.setLastName(document.get("lastName"));
+        result.setEmail(document.get("email"));
+        result.setImageUrl(document.get("imageUrl"));
+        result.setActivated(Boolean.parseBoolean(document.get("activated")));
+        result.setLangKey(document.get("langKey"));
+        Map<String, List<String>> highlights = new LinkedHashMap<>();
+        for (String field : HIGHLIGHTED_FIELDS) {
+            String value = document.get(field);
+            if (value == null) {
+                continue;
+            }
+            try {
+                String[] fragments = highlighter.getBestFragments(analyzer, field, value, 5);
+                if (fragments.length > 0) {
+                    highlights.put(field, Arrays.asList(fragments));
+                }
+            } catch (InvalidTokenOffsetsException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        if (!highlights.isEmpty()) {
+            result.setHighlights(highlights);
+        }
+        return result;
+    }
+
+    private void publish(LuceneIndex index) throws IOException {
+        index.writer.commit();
+        index.open();
+        LuceneIndex previous;
+        lock.writeLock().lock();
+        try {
+            previous = current;
+            current = index;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        previous.close();
+        IOUtils.rm(previous.path);
+    }
+
+    private final class LuceneNewIndex implements NewIndex {
+
+        private final LuceneIndex index;
+
+        LuceneNewIndex(LuceneIndex index) {
+            this.index = index;
+        }
+
+        @Override
+        public String getName() {
+            return index.path.getFileName().toString();
+        }
+
+        @Override
+        public void index(List<User> users) {
+            try {
+                for (User user : users) {
+                    index.writer.addDocument(toDocument(user));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void publish() {
+            try {
+                LuceneUserSearchEngine.this.publish(index);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void delete() {
+            try {
+                index.writer.rollback();
+                index.directory.close();
+                IOUtils.rm(index.path);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Parser of the query string syntax, with the automatic fuzziness of Elasticsearch for the fuzzy terms without an
+     * edit distance.
+     */
+    private static final class UserQueryParser extends QueryParser {
+
+        /**
+         * Similarity of the fuzzy terms without an edit distance, never written in a query.
+         */
+        static final float AUTO_FUZZINESS = Float.MIN_VALUE;
+
+        UserQueryParser(Analyzer analyzer) {
+            super(ALL_FIELD, analyzer);
+        }
+
+        @Override
+        protected Query getFuzzyQuery(String field, String termStr, float minSimilarity) throws ParseException {
+            if (minSimilarity != AUTO_FUZZINESS) {
+                return super.getFuzzyQuery(field, termStr, minSimilarity);
+            }
+            int length = termStr.codePointCount(0, termStr.length());
+            return super.getFuzzyQuery(field, termStr, length <= 2 ? 0 : length <= 5 ? 1 : 2);
+        }
+    }
+
+    /**
+     * Analyzer indexing the whole value of a field in lower case.
+     */
+    private static final class LowercaseKeywordAnalyzer extends Analyzer {
+
+        @Override
+        protected TokenStreamComponents createComponents(String fieldName) {
+            Tokenizer tokenizer = new KeywordTokenizer();
+            return new TokenStreamComponents(tokenizer, new LowerCaseFilter(tokenizer));
+        }
+    }
+
+    /**
+     * An index directory, with its writer and the near-real-time readers of the writer.
+     */
+    private static final class LuceneIndex {
+
+        private final Path path;
+
+        private final Directory directory;
+
+        private final IndexWriter writer;
+
+        private SearcherManager searcherManager;
+
+        LuceneIndex(Path path, Directory directory, IndexWriterConfig config) throws IOException {
+            this.path = path;
+            this.directory = directory;
+            this.writer = new IndexWriter(directory, config);
+            if (config.getOpenMode() == IndexWriterConfig.OpenMode.CREATE) {
+                writer.setCommitData(Collections.singletonMap(VERSION_KEY, INDEX_VERSION));
+            }
+        }
+
+        void open() throws IOException {
+            searcherManager = new SearcherManager(writer, true, null);
+        }
+
+        void close() throws IOException {
+            IOUtils.close(searcherManager, writer, directory);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package space.shougat.blog.service.search;
+
+import space.shougat.blog.domain.User;
+import space.shougat.blog.service.dto.UserSearchResultDTO;
+import space.shougat.blog.service.dto.UserSuggestionDTO;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Search index of the users.
+ * <p>
+ * The index is held by Elasticsearch by default, or by an embedded Lucene index with the "lucene" profile. Both
+ * parse the queries with the query string syntax of Elasticsearch, searching all the fields by default.
+ * </p>
+ */
+public interface UserSearchEngine {
+
+    /**
+     * Index users, and remove deleted users from the index, with one request.
+     *
+     * @param users the users to index
+     * @param deletedUserIds the ids of the users to remove
+     * @return the ids of the users rejected by the index
+     * @throws RuntimeException if the index could not be reached
+     */
+    Set<Long> index(Collection<User> users, Collection<Long> deletedUserIds);
+
+    /**
+     * Search the users matching a query string.
+     *
+     * @param query the query
+     * @param pageable the page, and its sort, by relevance if unsorted
+     * @return the page of users, with the fragments of their login, names and e-mail matching the query
+     * @throws IllegalArgumentException if the query or the sort is invalid
+     */
+    Page<UserSearchResultDTO> search(String query, Pageable pageable);
+
+    /**
+     * Suggest the users whose login, first name, last name or full name starts with a prefix.
+     *
+     * @param prefix the prefix, in lower case
+     * @param size the maximum number of suggestions
+     * @return the suggested users, the best ones first
+     */
+    List<UserSuggestionDTO> suggest(String prefix, int size);
+
+    /**
+     * Create an empty index, filled by a reindex while the searches use the current index.
+     */
+    NewIndex createIndex();
+
+    /**
+     * An index being filled by a reindex.
+     */
+    interface NewIndex {
+
+        String getName();
+
+        /**
+         * Index users, this method can be called by several threads.
+         *
+         * @throws RuntimeException if a user is rejected, or the index could not be reached
+         */
+        void index(List<User> users);
+
+        /**
+         * Make this index the current one, and delete the previous index.
+         */
+        void publish();
+
+        /**
+         * Delete this index, after a failure.
+         */
+        void delete();
+    }
+
+    /**
+     * The inputs suggesting a user: its login, its first and last names, and its full name.
+     */
+    static Set<String> getSuggestInputs(User user) {
+        Set<String> inputs = new LinkedHashSet<>();
+        inputs.add(user.getLogin());
+        if (user.getFirstName() != null) {
+            inputs.add(user.getFirstName());
+        }
+        if (user.getLastName() != null) {
+            inputs.add(user.getLastName());
+        }
+        if (user.getFirstName() != null && user.getLastName() != null) {
+            inputs.add(user.getFirstName() + " " + user.getLastName());
+        }
+        return inputs;
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Search index of the users, in Elasticsearch or in an embedded Lucene index.
+ */
+package space.shougat.blog.service.search;
@@ -0,0 +1,69 @@
+package space.shougat.blog.service.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.springframework.data.domain.Sort;
+
+/**
+ * Position in a list sorted on a unique key, used for keyset pagination: the next page starts after the last value
+ * of the key returned, instead of skipping rows with an offset.
+ * <p>
+ * Cursors are exchanged with the clients as opaque, URL-safe strings.
+ * </p>
+ */
+public final class KeysetCursor {
+
+    private final String property;
+
+    private final Sort.Direction direction;
+
+    private final String lastValue;
+
+    public KeysetCursor(String property, Sort.Direction direction, String lastValue) {
+        this.property = property;
+        this.direction = direction;
+        this.lastValue = lastValue;
+    }
+
+    /**
+     * Decode a cursor created by {@link #encode()}.
+     *
+     * @throws IllegalArgumentException if the cursor is invalid
+     */
+    public static KeysetCursor decode(String cursor) {
+        String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        String[] parts = decoded.split(",", 3);
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        return new KeysetCursor(parts[0], Sort.Direction.fromString(parts[1]), parts[2]);
+    }
+
+    public String encode() {
+        String cursor = property + "," + direction.name() + "," + (lastValue == null ? "" : lastValue);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the cursor of the page starting after this value
+     */
+    public KeysetCursor after(Object value) {
+        return new KeysetCursor(property, direction, String.valueOf(value));
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    public Sort.Direction getDirection() {
+        return direction;
+    }
+
+    /**
+     * @return the last value of the previous page, or null for the first page
+     */
+    public String getLastValue() {
+        return lastValue == null || lastValue.isEmpty() ? null : lastValue;
+    }
+}
@@ -6,15 +6,19 @@ import space.shougat.blog.domain.User;
 import space.shougat.blog.repository.UserRepository;
 import space.shougat.blog.security.SecurityUtils;
 import space.shougat.blog.service.MailService;
+import space.shougat.blog.service.UserAvailabilityService;
 import space.shougat.blog.service.UserService;
+import space.shougat.blog.service.dto.AccountDTO;
 import space.shougat.blog.service.dto.UserDTO;
 import space.shougat.blog.web.rest.vm.KeyAndPasswordVM;
 import space.shougat.blog.web.rest.vm.ManagedUserVM;
+import space.shougat.blog.web.rest.util.ETagUtil;
 import space.shougat.blog.web.rest.util.HeaderUtil;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -40,12 +44,15 @@ public class AccountResource {
 
     private final MailService mailService;
 
+    private final UserAvailabilityService userAvailabilityService;
+
     public AccountResource(UserRepository userRepository, UserService userService,
-            MailService mailService) {
+            MailService mailService, UserAvailabilityService userAvailabilityService) {
 
         this.userRepository = userRepository;
         this.userService = userService;
         this.mailService = mailService;
+        this.userAvailabilityService = userAvailabilityService;
     }
 
     /**
@@ -62,20 +69,51 @@ public class AccountResource {
         HttpHeaders textPlainHeaders = new HttpHeaders();
         textPlainHeaders.setContentType(MediaType.TEXT_PLAIN);
 
-        return userRepository.findOneByLogin(managedUserVM.getLogin().toLowerCase())
-            .map(user -> new ResponseEntity<>("login already in use", textPlainHeaders, HttpStatus.BAD_REQUEST))
-            .orElseGet(() -> userRepository.findOneByEmail(managedUserVM.getEmail())
-                .map(user -> new ResponseEntity<>("e-mail address already in use", textPlainHeaders, HttpStatus.BAD_REQUEST))
-                .orElseGet(() -> {
-                    User user = userService
-                        .createUser(managedUserVM.getLogin(), managedUserVM.getPassword(),
-                            managedUserVM.getFirstName(), managedUserVM.getLastName(),
-                            managedUserVM.getEmail().toLowerCase(), managedUserVM.getImageUrl(), managedUserVM.getLangKey());
-
-                    mailService.sendActivationEmail(user);
-                    return new ResponseEntity<>(HttpStatus.CREATED);
-                })
-        );
+        EnumSet<UserAvailabilityService.Conflict> conflicts =
+            userAvailabilityService.findConflicts(managedUserVM.getLogin().toLowerCase(),
+                managedUserVM.getEmail().toLowerCase(), null);
+        if (conflicts.contains(UserAvailabilityService.Conflict.LOGIN)) {
+            return new ResponseEntity<>("login already in use", textPlainHeaders, HttpStatus.BAD_REQUEST);
+        }
+        if (conflicts.contains(UserAvailabilityService.Conflict.EMAIL)) {
+            return new ResponseEntity<>("e-mail address already in use", textPlainHeaders, HttpStatus.BAD_REQUEST);
+        }
+        User user = userService
+            .createUser(managedUserVM.getLogin(), managedUserVM.getPassword(),
+                managedUserVM.getFirstName(), managedUserVM.getLastName(),
+                managedUserVM.getEmail().toLowerCase(), managedUserVM.getImageUrl(), managedUserVM.getLangKey());
+
+        mailService.sendActivationEmail(user);
+        return new ResponseEntity<>(HttpStatus.CREATED);
+    }
+
+    /**
+     * GET  /account/availability : check whether a login or an e-mail address can be used to register.
+     * <p>
+     * The answers are meant for the registration form: a login or e-mail used on another node in the last seconds
+     * can be reported as available, the registration itself is checked against the database.
+     * </p>
+     *
+     * @param login the login to check
+     * @param email the e-mail address to check
+     * @return the ResponseEntity with status 200 (OK) and the availability of each value in body, or status 400
+     * (Bad Request) if no value is given
+     */
+    @GetMapping("/account/availability")
+    @Timed
+    public ResponseEntity<Map<String, Boolean>> checkAvailability(@RequestParam(required = false) String login,
+            @RequestParam(required = false) String email) {
+        if (login == null && email == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        Map<String, Boolean> availability = new LinkedHashMap<>();
+        if (login != null) {
+            availability.put("login", userAvailabilityService.isLoginAvailable(login.toLowerCase()));
+        }
+        if (email != null) {
+            availability.put("email", userAvailabilityService.isEmailAvailable(email.toLowerCase()));
+        }
+        return ResponseEntity.ok(availability);
     }
 
     /**
@@ -107,14 +145,25 @@ public class AccountResource {
 
     /**
      * GET  /account : get the current user.
+     * <p>
+     * The account is served from the account cache, and so is the ETag checked against the If-None-Match header.
+     * </p>
      *
-     * @return the ResponseEntity with status 200 (OK) and the current user in body, or status 500 (Internal Server Error) if the user couldn't be returned
+     * @param ifNoneMatch the ETags of the versions of the current user known by the client
+     * @return the ResponseEntity with status 200 (OK) and the current user in body, status 304 (Not Modified) if the user matches the If-None-Match header, or status 500 (Internal Server Error) if the user couldn't be returned
      */
     @GetMapping("/account")
     @Timed
-    public ResponseEntity<UserDTO> getAccount() {
-        return Optional.ofNullable(userService.getUserWithAuthorities())
-            .map(user -> new ResponseEntity<>(new UserDTO(user), HttpStatus.OK))
+    public ResponseEntity<AccountDTO> getAccount(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return userService.getAccount()
+            .map(account -> {
+                String eTag = ETagUtil.createETag(account.getId(), account.getVersion());
+                if (ETagUtil.isNotModified(ifNoneMatch, eTag)) {
+                    return ETagUtil.<AccountDTO>notModified(eTag);
+                }
+                return ETagUtil.ok(eTag).body(account);
+            })
             .orElse(new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR));
     }
 
@@ -122,20 +171,28 @@ public class AccountResource {
      * POST  /account : update the current user information.
      *
      * @param userDTO the current user information
-     * @return the ResponseEntity with status 200 (OK), or status 400 (Bad Request) or 500 (Internal Server Error) if the user couldn't be updated
+     * @param ifMatch the ETag of the current user, if the user must not have been modified since it was read
+     * @return the ResponseEntity with status 200 (OK), or status 400 (Bad Request), 412 (Precondition Failed) if the user does not match the If-Match header, or 500 (Internal Server Error) if the user couldn't be updated
      */
     @PostMapping("/account")
     @Timed
-    public ResponseEntity<String> saveAccount(@Valid @RequestBody UserDTO userDTO) {
-        Optional<User> existingUser = userRepository.findOneByEmail(userDTO.getEmail());
-        if (existingUser.isPresent() && (!existingUser.get().getLogin().equalsIgnoreCase(userDTO.getLogin()))) {
+    public ResponseEntity<String> saveAccount(@Valid @RequestBody UserDTO userDTO,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        if (userAvailabilityService.isEmailUsedByAnotherUser(userDTO.getEmail(), userDTO.getLogin())) {
             return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("user-management", "emailexists", "Email already in use")).body(null);
         }
         return userRepository
             .findOneByLogin(SecurityUtils.getCurrentUserLogin())
             .map(u -> {
-                userService.updateUser(userDTO.getFirstName(), userDTO.getLastName(), userDTO.getEmail(),
-                    userDTO.getLangKey());
+                try {
+                    userService.updateUser(userDTO.getFirstName(), userDTO.getLastName(), userDTO.getEmail(),
+                        userDTO.getLangKey(), ETagUtil.getRequiredVersion(ifMatch, u.getId()));
+                } catch (OptimisticLockingFailureException e) {
+                    if (ifMatch == null) {
+                        throw e;
+                    }
+                    return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).headers(HeaderUtil.createFailureAlert("user-management", "preconditionfailed", "Account modified since it was read")).<String>body(null);
+                }
                 return new ResponseEntity<String>(HttpStatus.OK);
             })
             .orElseGet(() -> new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR));
@@ -1,22 +1,26 @@
 package space.shougat.blog.web.rest;
 
+import space.shougat.blog.security.PasswordHashingExecutor;
+import space.shougat.blog.security.PasswordHashingRejectedException;
 import space.shougat.blog.security.jwt.JWTConfigurer;
 import space.shougat.blog.security.jwt.TokenProvider;
+import space.shougat.blog.web.rest.errors.ErrorConstants;
+import space.shougat.blog.web.rest.errors.ErrorVM;
 import space.shougat.blog.web.rest.vm.LoginVM;
 
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
 
 import com.codahale.metrics.annotation.Timed;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
-import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 
 @RestController
@@ -27,27 +31,45 @@ public class UserJWTController {
 
     private final AuthenticationManager authenticationManager;
 
-    public UserJWTController(TokenProvider tokenProvider, AuthenticationManager authenticationManager) {
+    private final PasswordHashingExecutor passwordHashingExecutor;
+
+    public UserJWTController(TokenProvider tokenProvider, AuthenticationManager authenticationManager,
+            PasswordHashingExecutor passwordHashingExecutor) {
         this.tokenProvider = tokenProvider;
         this.authenticationManager = authenticationManager;
+        this.passwordHashingExecutor = passwordHashingExecutor;
     }
 
+    /**
+     * Authenticate on the pool of requests of the password hashing executor, so the request does not hold a web
+     * server thread while the user is loaded and the password is verified on the hashing pool.
+     * <p>
+     * The rejections of the hashing pool are answered here: thrown from the future, they would reach the
+     * ExceptionTranslator wrapped in a CompletionException.
+     * </p>
+     */
     @PostMapping("/authenticate")
     @Timed
-    public ResponseEntity<?> authorize(@Valid @RequestBody LoginVM loginVM, HttpServletResponse response) {
+    public CompletableFuture<ResponseEntity<?>> authorize(@Valid @RequestBody LoginVM loginVM) {
 
         UsernamePasswordAuthenticationToken authenticationToken =
             new UsernamePasswordAuthenticationToken(loginVM.getUsername(), loginVM.getPassword());
 
-        try {
-            Authentication authentication = this.authenticationManager.authenticate(authenticationToken);
-            SecurityContextHolder.getContext().setAuthentication(authentication);
-            boolean rememberMe = (loginVM.isRememberMe() == null) ? false : loginVM.isRememberMe();
-            String jwt = tokenProvider.createToken(authentication, rememberMe);
-            response.addHeader(JWTConfigurer.AUTHORIZATION_HEADER, "Bearer " + jwt);
-            return ResponseEntity.ok(new JWTToken(jwt));
-        } catch (AuthenticationException exception) {
-            return new ResponseEntity<>(Collections.singletonMap("AuthenticationException",exception.getLocalizedMessage()), HttpStatus.UNAUTHORIZED);
-        }
+        return passwordHashingExecutor.submitRequest(() -> {
+            try {
+                Authentication authentication = this.authenticationManager.authenticate(authenticationToken);
+                boolean rememberMe = (loginVM.isRememberMe() == null) ? false : loginVM.isRememberMe();
+                String jwt = tokenProvider.createToken(authentication, rememberMe);
+                return ResponseEntity.ok()
+                    .header(JWTConfigurer.AUTHORIZATION_HEADER, "Bearer " + jwt)
+                    .body(new JWTToken(jwt));
+            } catch (AuthenticationException exception) {
+                return new ResponseEntity<>(Collections.singletonMap("AuthenticationException",exception.getLocalizedMessage()), HttpStatus.UNAUTHORIZED);
+            } catch (PasswordHashingRejectedException exception) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(new ErrorVM(ErrorConstants.ERR_TOO_MANY_REQUESTS, exception.getMessage()));
+            }
+        });
     }
 }
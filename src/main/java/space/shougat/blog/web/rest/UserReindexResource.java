@@ -0,0 +1,58 @@
+package space.shougat.blog.web.rest;
+
+import space.shougat.blog.service.UserReindexService;
+import space.shougat.blog.service.dto.ReindexStatusDTO;
+import space.shougat.blog.web.rest.util.HeaderUtil;
+
+import com.codahale.metrics.annotation.Timed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Controller for rebuilding the search index of the users, and following its progress.
+ */
+@RestController
+@RequestMapping("/management")
+public class UserReindexResource {
+
+    private final Logger log = LoggerFactory.getLogger(UserReindexResource.class);
+
+    private final UserReindexService userReindexService;
+
+    public UserReindexResource(UserReindexService userReindexService) {
+        this.userReindexService = userReindexService;
+    }
+
+    /**
+     * POST  /reindex/users : start a full reindex of the users, the searches use the current index until it is
+     * completed.
+     *
+     * @return the ResponseEntity with status 202 (Accepted) and the progress of the reindex in body, or status 409
+     * (Conflict) if a reindex is already running
+     */
+    @PostMapping("/reindex/users")
+    @Timed
+    public ResponseEntity<ReindexStatusDTO> startReindex() {
+        log.debug("REST request to reindex the users");
+        if (!userReindexService.startReindex()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .headers(HeaderUtil.createFailureAlert("reindex", "reindexrunning", "A reindex is already running"))
+                .body(null);
+        }
+        return ResponseEntity.accepted().body(userReindexService.getStatus());
+    }
+
+    /**
+     * GET  /reindex/users : get the progress and the throughput of the last reindex started by this node.
+     *
+     * @return the ResponseEntity with status 200 (OK) and the progress of the reindex in body
+     */
+    @GetMapping("/reindex/users")
+    @Timed
+    public ReindexStatusDTO getReindexStatus() {
+        return userReindexService.getStatus();
+    }
+}
@@ -4,34 +4,48 @@ import space.shougat.blog.config.Constants;
 import com.codahale.metrics.annotation.Timed;
 import space.shougat.blog.domain.User;
 import space.shougat.blog.repository.UserRepository;
-import space.shougat.blog.repository.search.UserSearchRepository;
 import space.shougat.blog.security.AuthoritiesConstants;
 import space.shougat.blog.service.MailService;
+import space.shougat.blog.service.UserAvailabilityService;
+import space.shougat.blog.service.UserImportService;
+import space.shougat.blog.service.UserSearchService;
 import space.shougat.blog.service.UserService;
+import space.shougat.blog.service.UserSuggestService;
 import space.shougat.blog.service.dto.UserDTO;
+import space.shougat.blog.service.dto.UserImportResultDTO;
+import space.shougat.blog.service.dto.UserSearchResultDTO;
+import space.shougat.blog.service.dto.UserSuggestionDTO;
+import space.shougat.blog.service.util.KeysetCursor;
 import space.shougat.blog.web.rest.vm.ManagedUserVM;
+import space.shougat.blog.web.rest.util.ETagUtil;
 import space.shougat.blog.web.rest.util.HeaderUtil;
 import space.shougat.blog.web.rest.util.PaginationUtil;
+import space.shougat.blog.web.rest.util.UserExportWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.jhipster.web.util.ResponseUtil;
 import io.swagger.annotations.ApiParam;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
-
-import static org.elasticsearch.index.query.QueryBuilders.*;
 
 /**
  * REST controller for managing users.
@@ -71,15 +85,28 @@ public class UserResource {
 
     private final UserService userService;
 
-    private final UserSearchRepository userSearchRepository;
+    private final UserSearchService userSearchService;
+
+    private final UserSuggestService userSuggestService;
+
+    private final UserImportService userImportService;
+
+    private final UserAvailabilityService userAvailabilityService;
+
+    private final ObjectMapper objectMapper;
 
     public UserResource(UserRepository userRepository, MailService mailService,
-            UserService userService, UserSearchRepository userSearchRepository) {
+            UserService userService, UserSearchService userSearchService, UserSuggestService userSuggestService,
+            UserImportService userImportService, UserAvailabilityService userAvailabilityService, ObjectMapper objectMapper) {
 
         this.userRepository = userRepository;
         this.mailService = mailService;
         this.userService = userService;
-        this.userSearchRepository = userSearchRepository;
+        this.userSearchService = userSearchService;
+        this.userSuggestService = userSuggestService;
+        this.userImportService = userImportService;
+        this.userAvailabilityService = userAvailabilityService;
+        this.objectMapper = objectMapper;
     }
 
     /**
@@ -101,11 +128,13 @@ public class UserResource {
         log.debug("REST request to save User : {}", managedUserVM);
 
         //Lowercase the user login before comparing with database
-        if (userRepository.findOneByLogin(managedUserVM.getLogin().toLowerCase()).isPresent()) {
+        EnumSet<UserAvailabilityService.Conflict> conflicts =
+            userAvailabilityService.findConflicts(managedUserVM.getLogin().toLowerCase(), managedUserVM.getEmail(), null);
+        if (conflicts.contains(UserAvailabilityService.Conflict.LOGIN)) {
             return ResponseEntity.badRequest()
                 .headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "userexists", "Login already in use"))
                 .body(null);
-        } else if (userRepository.findOneByEmail(managedUserVM.getEmail()).isPresent()) {
+        } else if (conflicts.contains(UserAvailabilityService.Conflict.EMAIL)) {
             return ResponseEntity.badRequest()
                 .headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "emailexists", "Email already in use"))
                 .body(null);
@@ -118,28 +147,77 @@ public class UserResource {
         }
     }
 
+    /**
+     * POST  /users/_bulk : Creates users in bulk.
+     * <p>
+     * The body holds one user per line, as JSON with the fields of the user management UI; the users are created
+     * by batches and receive the creation e-mail, like the users created one by one.
+     * </p>
+     *
+     * @param request the request whose body holds the users
+     * @return the ResponseEntity with status 200 (OK) and with body the result of each line,
+     * or with status 429 (Too Many Requests) and with body the result of each line if the import was interrupted
+     * because of too many password hashing requests
+     * @throws IOException if the request body couldn't be read
+     */
+    @PostMapping("/users/_bulk")
+    @Timed
+    @Secured(AuthoritiesConstants.ADMIN)
+    public ResponseEntity<List<UserImportResultDTO>> importUsers(HttpServletRequest request) throws IOException {
+        log.debug("REST request to import Users");
+        try (BufferedReader reader = request.getReader()) {
+            List<UserImportResultDTO> results = userImportService.importUsers(reader);
+            long created = results.stream()
+                .filter(result -> result.getStatus() == UserImportResultDTO.Status.CREATED)
+                .count();
+            if (results.stream().anyMatch(result -> result.getStatus() == UserImportResultDTO.Status.INTERRUPTED)) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .headers(HeaderUtil.createAlert(created + " users are created", String.valueOf(created)))
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(results);
+            }
+            return ResponseEntity.ok()
+                .headers(HeaderUtil.createAlert(created + " users are created", String.valueOf(created)))
+                .body(results);
+        }
+    }
+
     /**
      * PUT  /users : Updates an existing User.
      *
      * @param managedUserVM the user to update
+     * @param ifMatch the ETag of the user to update, if the user must not have been modified since it was read
      * @return the ResponseEntity with status 200 (OK) and with body the updated user,
      * or with status 400 (Bad Request) if the login or email is already in use,
+     * or with status 412 (Precondition Failed) if the user does not match the If-Match header,
      * or with status 500 (Internal Server Error) if the user couldn't be updated
      */
     @PutMapping("/users")
     @Timed
     @Secured(AuthoritiesConstants.ADMIN)
-    public ResponseEntity<UserDTO> updateUser(@RequestBody ManagedUserVM managedUserVM) {
+    public ResponseEntity<UserDTO> updateUser(@RequestBody ManagedUserVM managedUserVM,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         log.debug("REST request to update User : {}", managedUserVM);
-        Optional<User> existingUser = userRepository.findOneByEmail(managedUserVM.getEmail());
-        if (existingUser.isPresent() && (!existingUser.get().getId().equals(managedUserVM.getId()))) {
+        EnumSet<UserAvailabilityService.Conflict> conflicts = userAvailabilityService.findConflicts(
+            managedUserVM.getLogin().toLowerCase(), managedUserVM.getEmail(), managedUserVM.getId());
+        if (conflicts.contains(UserAvailabilityService.Conflict.EMAIL)) {
             return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "emailexists", "E-mail already in use")).body(null);
         }
-        existingUser = userRepository.findOneByLogin(managedUserVM.getLogin().toLowerCase());
-        if (existingUser.isPresent() && (!existingUser.get().getId().equals(managedUserVM.getId()))) {
+        if (conflicts.contains(UserAvailabilityService.Conflict.LOGIN)) {
             return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "userexists", "Login already in use")).body(null);
         }
-        Optional<UserDTO> updatedUser = userService.updateUser(managedUserVM);
+        Optional<UserDTO> updatedUser;
+        try {
+            updatedUser = userService.updateUser(managedUserVM,
+                ETagUtil.getRequiredVersion(ifMatch, managedUserVM.getId()));
+        } catch (OptimisticLockingFailureException e) {
+            if (ifMatch == null) {
+                throw e;
+            }
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED)
+                .headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "preconditionfailed", "User modified since it was read"))
+                .body(null);
+        }
 
         return ResponseUtil.wrapOrNotFound(updatedUser,
             HeaderUtil.createAlert("A user is updated with identifier " + managedUserVM.getLogin(), managedUserVM.getLogin()));
@@ -161,19 +239,119 @@ public class UserResource {
         return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
     }
 
+    /**
+     * GET  /users?cursor= : get all users, with keyset pagination.
+     * <p>
+     * Pages are fetched by seeking after the last id or login of the previous page, so all pages are as fast as the
+     * first one. The cursor of the next page is in the Link header; an empty cursor starts on the first page, sorted
+     * with the "sort" parameter on "id" (the default) or "login".
+     * </p>
+     *
+     * @param cursor the cursor from the Link header of the previous page, or empty for the first page
+     * @param pageable the page size, and the sort of the first page
+     * @param count true to get the total number of users in the X-Total-Count header, which costs a count query
+     * @return the ResponseEntity with status 200 (OK) and with body the users, or with status 400 (Bad Request) if the
+     * cursor or the sort is invalid
+     */
+    @GetMapping(value = "/users", params = "cursor")
+    @Timed
+    public ResponseEntity<List<UserDTO>> getAllUsersByCursor(@RequestParam String cursor, @ApiParam Pageable pageable,
+        @RequestParam(defaultValue = "false") boolean count) {
+        KeysetCursor keysetCursor;
+        Slice<UserDTO> slice;
+        try {
+            if (cursor.isEmpty()) {
+                Sort.Order order = pageable.getSort() == null ? null : pageable.getSort().iterator().next();
+                keysetCursor = order == null ? new KeysetCursor("id", Sort.Direction.ASC, null)
+                    : new KeysetCursor(order.getProperty(), order.getDirection(), null);
+            } else {
+                keysetCursor = KeysetCursor.decode(cursor);
+            }
+            slice = userService.getAllManagedUsers(keysetCursor, pageable.getPageSize());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                .headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "invalidcursor", e.getMessage())).body(null);
+        }
+        List<UserDTO> users = slice.getContent();
+        String nextCursor = null;
+        if (!users.isEmpty()) {
+            UserDTO last = users.get(users.size() - 1);
+            nextCursor = keysetCursor.after("id".equals(keysetCursor.getProperty()) ? last.getId() : last.getLogin())
+                .encode();
+        }
+        String firstCursor = new KeysetCursor(keysetCursor.getProperty(), keysetCursor.getDirection(), null).encode();
+        HttpHeaders headers = PaginationUtil.generateKeysetPaginationHttpHeaders(slice, nextCursor, firstCursor,
+            count ? userService.countManagedUsers() : null, "/api/users");
+        return new ResponseEntity<>(users, headers, HttpStatus.OK);
+    }
+
+    /**
+     * GET  /users/_export : export all users, ordered by id.
+     * <p>
+     * The users are written to the response as they are read from the database, so exports of any size use the
+     * same memory.
+     * </p>
+     *
+     * @param format "ndjson" (the default) for one JSON user per line, or "csv"
+     * @param response the response the users are written to, with status 200 (OK), or with status 400 (Bad Request)
+     * if the format is not supported
+     * @throws IOException if the response couldn't be written
+     */
+    @GetMapping("/users/_export")
+    @Timed
+    @Secured(AuthoritiesConstants.ADMIN)
+    public void exportUsers(@RequestParam(defaultValue = "ndjson") String format, HttpServletResponse response)
+        throws IOException {
+        log.debug("REST request to export Users as {}", format);
+        UserExportWriter writer;
+        try {
+            writer = UserExportWriter.create(format, response.getOutputStream(), objectMapper);
+        } catch (IllegalArgumentException e) {
+            HeaderUtil.createFailureAlert(ENTITY_NAME, "invalidformat", e.getMessage())
+                .forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+            response.setStatus(HttpStatus.BAD_REQUEST.value());
+            return;
+        }
+        response.setContentType(UserExportWriter.getContentType(format));
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+            "attachment; filename=users." + format.toLowerCase(Locale.ENGLISH));
+        try (UserExportWriter userExportWriter = writer) {
+            userService.exportUsers(user -> {
+                try {
+                    userExportWriter.write(user);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
     /**
      * GET  /users/:login : get the "login" user.
      *
      * @param login the login of the user to find
-     * @return the ResponseEntity with status 200 (OK) and with body the "login" user, or with status 404 (Not Found)
+     * @param ifNoneMatch the ETags of the versions of the user known by the client
+     * @return the ResponseEntity with status 200 (OK) and with body the "login" user, with status 304 (Not Modified)
+     * if the user matches the If-None-Match header, or with status 404 (Not Found)
      */
     @GetMapping("/users/{login:" + Constants.LOGIN_REGEX + "}")
     @Timed
-    public ResponseEntity<UserDTO> getUser(@PathVariable String login) {
+    public ResponseEntity<UserDTO> getUser(@PathVariable String login,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         log.debug("REST request to get User : {}", login);
-        return ResponseUtil.wrapOrNotFound(
-            userService.getUserWithAuthoritiesByLogin(login)
-                .map(UserDTO::new));
+        if (ifNoneMatch != null) {
+            for (Object[] identity : userRepository.findIdAndVersionByLogin(login)) {
+                String eTag = ETagUtil.createETag((Long) identity[0], (Long) identity[1]);
+                if (ETagUtil.isNotModified(ifNoneMatch, eTag)) {
+                    return ETagUtil.notModified(eTag);
+                }
+            }
+        }
+        return userService.getUserWithAuthoritiesByLogin(login)
+            .map(user -> ETagUtil.ok(ETagUtil.createETag(user.getId(), user.getVersion())).body(new UserDTO(user)))
+            .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
     }
 
     /**
@@ -192,17 +370,44 @@ public class UserResource {
     }
 
     /**
-     * SEARCH  /_search/users/:query : search for the User corresponding
+     * SEARCH  /_search/users?query=:query : search for the users corresponding
      * to the query.
      *
      * @param query the query to search
-     * @return the result of the search
+     * @param pageable the pagination information, the users are sorted by relevance by default
+     * @return the ResponseEntity with status 200 (OK) and with body the page of users, with the fragments of their
+     * fields matching the query, or with status 400 (Bad Request) if the page is beyond the first
+     * {@value UserSearchService#MAX_RESULT_WINDOW} results, or the query or the sort is invalid
+     * @throws URISyntaxException if the pagination headers couldn't be generated
+     */
+    @GetMapping("/_search/users")
+    @Timed
+    public ResponseEntity<List<UserSearchResultDTO>> search(@RequestParam String query, @ApiParam Pageable pageable)
+        throws URISyntaxException {
+        log.debug("REST request to search for a page of Users for query {}", query);
+        Page<UserSearchResultDTO> page;
+        try {
+            page = userSearchService.search(query, pageable);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                .headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "invalidsearch", e.getMessage())).body(null);
+        }
+        HttpHeaders headers = PaginationUtil.generateSearchPaginationHttpHeaders(query, page, "/api/_search/users");
+        return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
+    }
+
+    /**
+     * SUGGEST  /_suggest/users?prefix=:prefix : suggest the users whose login, first name, last name or full name
+     * starts with the prefix.
+     *
+     * @param prefix the prefix, case insensitive
+     * @param size the maximum number of suggestions, at most {@value UserSuggestService#MAX_SUGGESTIONS}
+     * @return the suggested users, the best ones first
      */
-    @GetMapping("/_search/users/{query}")
+    @GetMapping("/_suggest/users")
     @Timed
-    public List<User> search(@PathVariable String query) {
-        return StreamSupport
-            .stream(userSearchRepository.search(queryStringQuery(query)).spliterator(), false)
-            .collect(Collectors.toList());
+    public List<UserSuggestionDTO> suggest(@RequestParam String prefix, @RequestParam(defaultValue = "10") int size) {
+        log.debug("REST request to suggest Users for prefix {}", prefix);
+        return userSuggestService.suggest(prefix, size);
     }
 }
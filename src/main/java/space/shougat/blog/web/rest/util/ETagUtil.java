@@ -0,0 +1,91 @@
+package space.shougat.blog.web.rest.util;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+
+/**
+ * Utility class for the strong ETags of versioned entities, "id-version", and the conditional requests using them.
+ */
+public final class ETagUtil {
+
+    /**
+     * Version required by an If-Match header which matches no version of the entity: no version is negative.
+     */
+    public static final long NO_VERSION = -1;
+
+    /**
+     * The responses may be stored by the browser, which must revalidate them with If-None-Match.
+     */
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
+    private ETagUtil() {
+    }
+
+    public static String createETag(Long id, Long version) {
+        return "\"" + id + "-" + version + "\"";
+    }
+
+    /**
+     * Check an If-None-Match header, with the weak comparison of RFC 7232.
+     *
+     * @param ifNoneMatch the header, or null
+     * @return true if the header matches the current ETag of the resource
+     */
+    public static boolean isNotModified(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : StringUtils.commaDelimitedListToStringArray(ifNoneMatch)) {
+            tag = tag.trim();
+            if (tag.equals("*") || (tag.startsWith("W/") ? tag.substring(2) : tag).equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the version of an entity required by an If-Match header, with the strong comparison of RFC 7232.
+     *
+     * @param ifMatch the header, or null
+     * @param id the id of the entity
+     * @return the version, null if the header is missing or matches any version, or {@link #NO_VERSION} if it
+     * matches no version of the entity
+     */
+    public static Long getRequiredVersion(String ifMatch, Long id) {
+        if (ifMatch == null) {
+            return null;
+        }
+        String prefix = "\"" + id + "-";
+        for (String tag : StringUtils.commaDelimitedListToStringArray(ifMatch)) {
+            tag = tag.trim();
+            if (tag.equals("*")) {
+                return null;
+            }
+            if (tag.startsWith(prefix) && tag.endsWith("\"") && tag.length() > prefix.length() + 1) {
+                try {
+                    return Long.valueOf(tag.substring(prefix.length(), tag.length() - 1));
+                } catch (NumberFormatException e) {
+                    // not an ETag of this entity
+                }
+            }
+        }
+        return NO_VERSION;
+    }
+
+    /**
+     * @return a 200 (OK) response builder with this ETag
+     */
+    public static ResponseEntity.BodyBuilder ok(String eTag) {
+        return ResponseEntity.ok().cacheControl(REVALIDATE).eTag(eTag);
+    }
+
+    /**
+     * @return a 304 (Not Modified) response with this ETag
+     */
+    public static <X> ResponseEntity<X> notModified(String eTag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(REVALIDATE).eTag(eTag).build();
+    }
+}
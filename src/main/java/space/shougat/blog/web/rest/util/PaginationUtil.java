@@ -1,6 +1,7 @@
 package space.shougat.blog.web.rest.util;
 
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpHeaders;
 import org.springframework.web.util.UriComponentsBuilder;
 
@@ -42,6 +43,35 @@ public final class PaginationUtil {
         return headers;
     }
 
+    /**
+     * Generate the headers of a page fetched with keyset pagination: the Link header has the "next" and "first"
+     * pages, and X-Total-Count is only set when the total was requested.
+     *
+     * @param slice the page
+     * @param nextCursor the cursor of the next page
+     * @param firstCursor the cursor of the first page
+     * @param totalCount the total count, or null to omit it
+     */
+    public static HttpHeaders generateKeysetPaginationHttpHeaders(Slice slice, String nextCursor, String firstCursor,
+        Long totalCount, String baseUrl) {
+
+        HttpHeaders headers = new HttpHeaders();
+        if (totalCount != null) {
+            headers.add("X-Total-Count", Long.toString(totalCount));
+        }
+        String link = "";
+        if (slice.hasNext()) {
+            link = "<" + generateCursorUri(baseUrl, nextCursor, slice.getSize()) + ">; rel=\"next\",";
+        }
+        link += "<" + generateCursorUri(baseUrl, firstCursor, slice.getSize()) + ">; rel=\"first\"";
+        headers.add(HttpHeaders.LINK, link);
+        return headers;
+    }
+
+    private static String generateCursorUri(String baseUrl, String cursor, int size) {
+        return UriComponentsBuilder.fromUriString(baseUrl).queryParam("cursor", cursor).queryParam("size", size).toUriString();
+    }
+
     private static String generateUri(String baseUrl, int page, int size) throws URISyntaxException {
         return UriComponentsBuilder.fromUriString(baseUrl).queryParam("page", page).queryParam("size", size).toUriString();
     }
@@ -53,20 +83,25 @@ public final class PaginationUtil {
         headers.add("X-Total-Count", "" + page.getTotalElements());
         String link = "";
         if ((page.getNumber() + 1) < page.getTotalPages()) {
-            link = "<" + generateUri(baseUrl, page.getNumber() + 1, page.getSize()) + "&query=" + query + ">; rel=\"next\",";
+            link = "<" + generateSearchUri(baseUrl, query, page.getNumber() + 1, page.getSize()) + ">; rel=\"next\",";
         }
         // prev link
         if ((page.getNumber()) > 0) {
-            link += "<" + generateUri(baseUrl, page.getNumber() - 1, page.getSize()) + "&query=" + query + ">; rel=\"prev\",";
+            link += "<" + generateSearchUri(baseUrl, query, page.getNumber() - 1, page.getSize()) + ">; rel=\"prev\",";
         }
         // last and first link
         int lastPage = 0;
         if (page.getTotalPages() > 0) {
             lastPage = page.getTotalPages() - 1;
         }
-        link += "<" + generateUri(baseUrl, lastPage, page.getSize()) + "&query=" + query + ">; rel=\"last\",";
-        link += "<" + generateUri(baseUrl, 0, page.getSize()) + "&query=" + query + ">; rel=\"first\"";
+        link += "<" + generateSearchUri(baseUrl, query, lastPage, page.getSize()) + ">; rel=\"last\",";
+        link += "<" + generateSearchUri(baseUrl, query, 0, page.getSize()) + ">; rel=\"first\"";
         headers.add(HttpHeaders.LINK, link);
         return headers;
     }
+
+    private static String generateSearchUri(String baseUrl, String query, int page, int size) {
+        return UriComponentsBuilder.fromUriString(baseUrl).queryParam("page", page).queryParam("size", size)
+            .queryParam("query", query).build().encode().toUriString();
+    }
 }
@@ -0,0 +1,142 @@
+package space.shougat.blog.web.rest.util;
+
+import space.shougat.blog.service.dto.UserDTO;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Writer of user exports, one user per line, which only buffers the line being written.
+ */
+public abstract class UserExportWriter implements Closeable {
+
+    /**
+     * @param format "ndjson" or "csv"
+     * @throws IllegalArgumentException if the format is not supported
+     */
+    public static UserExportWriter create(String format, OutputStream out, ObjectMapper objectMapper)
+        throws IOException {
+        switch (format.toLowerCase(Locale.ENGLISH)) {
+            case "ndjson":
+                return new NdjsonWriter(out, objectMapper);
+            case "csv":
+                return new CsvWriter(out);
+            default:
+                throw new IllegalArgumentException("Unsupported export format: " + format);
+        }
+    }
+
+    /**
+     * @return the content type of the format, as returned by {@link #create(String, OutputStream, ObjectMapper)}
+     */
+    public static String getContentType(String format) {
+        return "csv".equalsIgnoreCase(format) ? "text/csv;charset=UTF-8" : "application/x-ndjson;charset=UTF-8";
+    }
+
+    public abstract void write(UserDTO user) throws IOException;
+
+    /**
+     * Newline-delimited JSON, one UserDTO serialized by Jackson per line.
+     */
+    private static final class NdjsonWriter extends UserExportWriter {
+
+        private final JsonGenerator generator;
+
+        private final ObjectWriter writer;
+
+        NdjsonWriter(OutputStream out, ObjectMapper objectMapper) throws IOException {
+            this.generator = objectMapper.getFactory().createGenerator(out)
+                .setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+            // the response is flushed by the container when its buffer is full, not after each user
+            this.writer = objectMapper.writerFor(UserDTO.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .without(SerializationFeature.INDENT_OUTPUT);
+        }
+
+        @Override
+        public void write(UserDTO user) throws IOException {
+            writer.writeValue(generator, user);
+        }
+
+        @Override
+        public void close() throws IOException {
+            generator.writeRaw('\n');
+            generator.close();
+        }
+    }
+
+    /**
+     * Comma-separated values as specified by RFC 4180, with a header line; the authorities are separated by spaces.
+     * <p>
+     * The values a spreadsheet would read as a formula, such as the names the users chose, are quoted and prefixed
+     * with an apostrophe.
+     * </p>
+     */
+    private static final class CsvWriter extends UserExportWriter {
+
+        private static final String FORMULA_PREFIXES = "=+-@\t\r";
+
+        private final Writer writer;
+
+        CsvWriter(OutputStream out) throws IOException {
+            this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            writer.write("id,login,firstName,lastName,email,activated,imageUrl,langKey,createdBy,createdDate," +
+                "lastModifiedBy,lastModifiedDate,authorities\r\n");
+        }
+
+        @Override
+        public void write(UserDTO user) throws IOException {
+            writer.write(String.valueOf(user.getId()));
+            writeField(user.getLogin());
+            writeField(user.getFirstName());
+            writeField(user.getLastName());
+            writeField(user.getEmail());
+            writeField(String.valueOf(user.isActivated()));
+            writeField(user.getImageUrl());
+            writeField(user.getLangKey());
+            writeField(user.getCreatedBy());
+            writeField(format(user.getCreatedDate()));
+            writeField(user.getLastModifiedBy());
+            writeField(format(user.getLastModifiedDate()));
+            writeField(user.getAuthorities() == null ? null : String.join(" ", user.getAuthorities()));
+            writer.write("\r\n");
+        }
+
+        private void writeField(String value) throws IOException {
+            writer.write(',');
+            if (value == null) {
+                return;
+            }
+            boolean formula = !value.isEmpty() && FORMULA_PREFIXES.indexOf(value.charAt(0)) >= 0;
+            if (!formula && value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\r') < 0
+                && value.indexOf('\n') < 0) {
+                writer.write(value);
+            } else {
+                writer.write('"');
+                if (formula) {
+                    writer.write('\'');
+                }
+                writer.write(value.replace("\"", "\"\""));
+                writer.write('"');
+            }
+        }
+
+        private static String format(ZonedDateTime date) {
+            return date == null ? null : DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(date);
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package space.shougat.blog.config.datasource;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the ReplicaRoutingDataSource, with one H2 database for the primary and one for each replica.
+ *
+ * @see ReplicaRoutingDataSource
+ */
+public class ReplicaRoutingDataSourceUnitTest {
+
+    private static final long MAX_REPLICATION_LAG_MS = 5000;
+
+    private DataSource primary;
+
+    private DataSource replica1;
+
+    private DataSource replica2;
+
+    private MetricRegistry metricRegistry;
+
+    private ReplicaRoutingDataSource routingDataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate readWriteTransaction;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    @Before
+    public void setup() {
+        primary = createDatabase("routing-primary");
+        replica1 = createDatabase("routing-replica-1");
+        replica2 = createDatabase("routing-replica-2");
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        replicas.put("routing-replica-1", replica1);
+        replicas.put("routing-replica-2", replica2);
+        metricRegistry = new MetricRegistry();
+        routingDataSource = new ReplicaRoutingDataSource(primary, replicas, MAX_REPLICATION_LAG_MS, metricRegistry);
+        routingDataSource.afterPropertiesSet();
+
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readWriteTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    @After
+    public void tearDown() {
+        for (DataSource dataSource : new DataSource[]{primary, replica1, replica2}) {
+            new JdbcTemplate(dataSource).execute("drop all objects");
+        }
+    }
+
+    @Test
+    public void testReadWriteTransactionsUseThePrimary() {
+        replicate(replica1, 0);
+        replicate(replica2, 0);
+        routingDataSource.checkReplicationLag();
+
+        assertThat(readWriteDatabase()).isEqualTo("routing-primary");
+        assertThat(currentDatabase()).isEqualTo("routing-primary");
+    }
+
+    @Test
+    public void testReadOnlyTransactionsUseTheReplicasInTurn() {
+        replicate(replica1, 0);
+        replicate(replica2, 0);
+        routingDataSource.checkReplicationLag();
+
+        String first = readOnlyDatabase();
+        String second = readOnlyDatabase();
+        String third = readOnlyDatabase();
+
+        assertThat(first).isIn("routing-replica-1", "routing-replica-2");
+        assertThat(second).isNotEqualTo(first).isIn("routing-replica-1", "routing-replica-2");
+        assertThat(third).isEqualTo(first);
+    }
+
+    @Test
+    public void testLaggingReplicasAreSkipped() {
+        replicate(replica1, 0);
+        replicate(replica2, MAX_REPLICATION_LAG_MS + 60000);
+        routingDataSource.checkReplicationLag();
+
+        assertThat(readOnlyDatabase()).isEqualTo("routing-replica-1");
+        assertThat(readOnlyDatabase()).isEqualTo("routing-replica-1");
+
+        replicate(replica1, MAX_REPLICATION_LAG_MS + 60000);
+        routingDataSource.checkReplicationLag();
+
+        assertThat(readOnlyDatabase()).isEqualTo("routing-primary");
+        assertThat(metricRegistry.counter(MetricRegistry.name(ReplicaRoutingDataSource.class, "primary-fallbacks"))
+            .getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testReadsFromThePrimaryUseThePrimary() {
+        replicate(replica1, 0);
+        replicate(replica2, 0);
+        routingDataSource.checkReplicationLag();
+
+        assertThat(ReplicaRoutingDataSource.readFromPrimary(this::readOnlyDatabase)).isEqualTo("routing-primary");
+        assertThat(ReplicaRoutingDataSource.readFromPrimary(() -> ReplicaRoutingDataSource.readFromPrimary(
+            this::readOnlyDatabase) + " " + readOnlyDatabase())).isEqualTo("routing-primary routing-primary");
+        assertThat(readOnlyDatabase()).isIn("routing-replica-1", "routing-replica-2");
+    }
+
+    @Test
+    public void testUncheckedReplicasAreNotUsed() {
+        assertThat(readOnlyDatabase()).isEqualTo("routing-primary");
+    }
+
+    @Test
+    public void testHeartbeatIsWrittenToThePrimary() {
+        long before = System.currentTimeMillis() - 1000;
+
+        routingDataSource.checkReplicationLag();
+
+        Timestamp heartbeat = new JdbcTemplate(primary).queryForObject(
+            "select beat_time from jhi_replication_heartbeat where id = 1", Timestamp.class);
+        assertThat(heartbeat.getTime()).isGreaterThanOrEqualTo(before);
+    }
+
+    private String readOnlyDatabase() {
+        return readOnlyTransaction.execute(status -> currentDatabase());
+    }
+
+    private String readWriteDatabase() {
+        return readWriteTransaction.execute(status -> currentDatabase());
+    }
+
+    private String currentDatabase() {
+        return jdbcTemplate.queryForObject("select name from node", String.class);
+    }
+
+    /**
+     * Copy the heartbeat of the primary to a replica, as the replication would.
+     */
+    private static void replicate(DataSource replica, long lagMs) {
+        new JdbcTemplate(replica).update("update jhi_replication_heartbeat set beat_time = ? where id = 1",
+            new Timestamp(System.currentTimeMillis() - lagMs));
+    }
+
+    private static DataSource createDatabase(String name) {
+        DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table jhi_replication_heartbeat (id integer primary key, beat_time timestamp)");
+        jdbcTemplate.update("insert into jhi_replication_heartbeat (id) values (1)");
+        jdbcTemplate.execute("create table node (name varchar(50))");
+        jdbcTemplate.update("insert into node (name) values (?)", name);
+        return dataSource;
+    }
+}
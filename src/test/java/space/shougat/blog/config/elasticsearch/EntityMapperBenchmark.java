@@ -0,0 +1,84 @@
+package space.shougat.blog.config.elasticsearch;
+
+import space.shougat.blog.config.ElasticsearchConfiguration;
+import space.shougat.blog.domain.User;
+import space.shougat.blog.service.dto.UserSearchResultDTO;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the time and the allocations per User document of the SmileEntityMapper with the JSON strings of the
+ * mapper it replaced, when a document is indexed and when a search hit is read.
+ *
+ * @see SmileEntityMapper
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityMapperBenchmark {
+
+    private SmileEntityMapper entityMapper;
+
+    private User user;
+
+    private BytesReference jsonSource;
+
+    private BytesReference smileSource;
+
+    @Setup
+    public void setup() throws IOException {
+        entityMapper = new ElasticsearchConfiguration().entityMapper(new Jackson2ObjectMapperBuilder());
+        user = new User();
+        user.setId(1042L);
+        user.setLogin("johndoe");
+        user.setFirstName("John");
+        user.setLastName("Doe");
+        user.setEmail("johndoe@localhost");
+        user.setImageUrl("http://placehold.it/50x50");
+        user.setActivated(true);
+        user.setLangKey("en");
+        jsonSource = new BytesArray(entityMapper.mapToString(user));
+        smileSource = new BytesArray(entityMapper.mapToBytes(user));
+    }
+
+    /**
+     * The string is encoded in UTF-8 by the index request.
+     */
+    @Benchmark
+    public byte[] writeJsonString() throws IOException {
+        return entityMapper.mapToString(user).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] writeSmileBytes() throws IOException {
+        return entityMapper.mapToBytes(user);
+    }
+
+    /**
+     * The source is decoded from UTF-8 by the search hit.
+     */
+    @Benchmark
+    public UserSearchResultDTO readJsonString() throws IOException {
+        return entityMapper.mapToObject(jsonSource.toUtf8(), UserSearchResultDTO.class);
+    }
+
+    @Benchmark
+    public UserSearchResultDTO readJsonBytes() throws IOException {
+        return entityMapper.mapToObject(jsonSource, UserSearchResultDTO.class);
+    }
+
+    @Benchmark
+    public UserSearchResultDTO readSmileBytes() throws IOException {
+        return entityMapper.mapToObject(smileSource, UserSearchResultDTO.class);
+    }
+}
@@ -4,13 +4,17 @@ import static java.lang.System.currentTimeMillis;
 
 import javax.annotation.PostConstruct;
 
+import space.shougat.blog.config.Constants;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
 import org.springframework.stereotype.Component;
 
 @Component
+@Profile("!" + Constants.SPRING_PROFILE_LUCENE)
 public class IndexReinitializer {
 
     private Logger logger = LoggerFactory.getLogger(getClass());
@@ -0,0 +1,89 @@
+package space.shougat.blog.config.elasticsearch;
+
+import space.shougat.blog.config.ElasticsearchConfiguration;
+import space.shougat.blog.domain.User;
+import space.shougat.blog.service.dto.UserSearchResultDTO;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test class for the SmileEntityMapper.
+ *
+ * @see SmileEntityMapper
+ */
+public class SmileEntityMapperUnitTest {
+
+    private SmileEntityMapper entityMapper;
+
+    private User user;
+
+    @Before
+    public void setup() {
+        entityMapper = new ElasticsearchConfiguration().entityMapper(new Jackson2ObjectMapperBuilder());
+        user = new User();
+        user.setId(42L);
+        user.setLogin("johndoe");
+        user.setFirstName("John");
+        user.setLastName("Doe");
+        user.setEmail("johndoe@localhost");
+        user.setActivated(true);
+        user.setLangKey("en");
+    }
+
+    @Test
+    public void assertThatDocumentsAreWrittenInSmile() throws Exception {
+        BytesReference source = new BytesArray(entityMapper.mapToBytes(user));
+
+        assertThat(XContentFactory.xContentType(source)).isEqualTo(XContentType.SMILE);
+        Map<String, Object> document = XContentHelper.convertToMap(source, false).v2();
+        assertThat(document).containsEntry("login", "johndoe").doesNotContainKeys("password", "resetKey");
+        assertThat(XContentHelper.convertToJson(source, false))
+            .isEqualTo(XContentHelper.convertToJson(new BytesArray(entityMapper.mapToString(user)), false));
+    }
+
+    @Test
+    public void assertThatDocumentsAreReadInSmileAndJson() throws Exception {
+        UserSearchResultDTO fromSmile = entityMapper.mapToObject(new BytesArray(entityMapper.mapToBytes(user)),
+            UserSearchResultDTO.class);
+        UserSearchResultDTO fromJson = entityMapper.mapToObject(new BytesArray(entityMapper.mapToString(user)),
+            UserSearchResultDTO.class);
+
+        for (UserSearchResultDTO result : new UserSearchResultDTO[]{fromSmile, fromJson}) {
+            assertThat(result.getId()).isEqualTo(42L);
+            assertThat(result.getLogin()).isEqualTo("johndoe");
+            assertThat(result.getFirstName()).isEqualTo("John");
+            assertThat(result.isActivated()).isTrue();
+        }
+    }
+
+    @Test
+    public void assertThatPagedSourcesAreRead() throws Exception {
+        BytesStreamOutput output = new BytesStreamOutput();
+        output.writeBytes(entityMapper.mapToBytes(user));
+
+        User read = entityMapper.mapToObject(output.bytes(), User.class);
+
+        assertThat(read.getLogin()).isEqualTo("johndoe");
+        assertThat(read.getEmail()).isEqualTo("johndoe@localhost");
+    }
+
+    @Test
+    public void assertThatTheSmileMapperMustUseSmile() {
+        assertThatThrownBy(() -> new SmileEntityMapper(new ObjectMapper(), new ObjectMapper()))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,40 @@
+package space.shougat.blog.security;
+
+import org.junit.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the CalibratedPasswordEncoder.
+ *
+ * @see CalibratedPasswordEncoder
+ */
+public class CalibratedPasswordEncoderUnitTest {
+
+    @Test
+    public void testCalibrationStaysWithinBounds() {
+        assertThat(CalibratedPasswordEncoder.calibrate(0, 4, 6).getCost()).isEqualTo(4);
+        assertThat(CalibratedPasswordEncoder.calibrate(60000, 4, 6).getCost()).isEqualTo(6);
+    }
+
+    @Test
+    public void testHashesOfAnyCostAreVerified() {
+        CalibratedPasswordEncoder calibratedPasswordEncoder = new CalibratedPasswordEncoder(5);
+        String lowerCostHash = new BCryptPasswordEncoder(4).encode("password");
+
+        assertThat(calibratedPasswordEncoder.encode("password")).startsWith("$2a$05$");
+        assertThat(calibratedPasswordEncoder.matches("password", lowerCostHash)).isTrue();
+        assertThat(calibratedPasswordEncoder.matches("wrong", lowerCostHash)).isFalse();
+        assertThat(calibratedPasswordEncoder.matches("password", "not-a-hash")).isFalse();
+    }
+
+    @Test
+    public void testOnlyHashesWithALowerCostAreUpgraded() {
+        CalibratedPasswordEncoder calibratedPasswordEncoder = new CalibratedPasswordEncoder(5);
+
+        assertThat(calibratedPasswordEncoder.upgradeEncoding(new BCryptPasswordEncoder(4).encode("password"))).isTrue();
+        assertThat(calibratedPasswordEncoder.upgradeEncoding(calibratedPasswordEncoder.encode("password"))).isFalse();
+        assertThat(calibratedPasswordEncoder.upgradeEncoding(new BCryptPasswordEncoder(6).encode("password"))).isFalse();
+    }
+}
@@ -0,0 +1,84 @@
+package space.shougat.blog.security;
+
+import space.shougat.blog.BlogApp;
+import space.shougat.blog.domain.User;
+import space.shougat.blog.repository.UserRepository;
+import space.shougat.blog.service.UserService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the DomainUserDetailsService.
+ *
+ * @see DomainUserDetailsService
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = BlogApp.class)
+@Transactional
+public class DomainUserDetailsServiceIntTest {
+
+    @Autowired
+    private UserDetailsService userDetailsService;
+
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Before
+    public void setup() {
+        userCache.removeUserFromCache("admin");
+    }
+
+    @Test
+    public void testUserDetailsAreCached() {
+        UserDetails first = userDetailsService.loadUserByUsername("ADMIN");
+        UserDetails second = userDetailsService.loadUserByUsername("admin");
+
+        assertThat(userCache.getUserFromCache("admin")).isNotNull();
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.getPassword()).isEqualTo(first.getPassword());
+        assertThat(second.getAuthorities()).extracting("authority")
+            .containsExactlyInAnyOrder(AuthoritiesConstants.ADMIN, AuthoritiesConstants.USER);
+    }
+
+    @Test
+    public void testPasswordResetEvictsUserDetails() {
+        String oldPassword = userDetailsService.loadUserByUsername("admin").getPassword();
+        Optional<User> user = userService.requestPasswordReset("admin@localhost");
+
+        userService.completePasswordReset("new-password", user.get().getResetKey());
+
+        assertThat(userCache.getUserFromCache("admin")).isNull();
+        assertThat(userDetailsService.loadUserByUsername("admin").getPassword()).isNotEqualTo(oldPassword);
+    }
+
+    @Test
+    public void testUserDetailsModifiedByAnotherNodeAreReloaded() {
+        String oldPassword = userDetailsService.loadUserByUsername("admin").getPassword();
+        // a modification by another node does not evict the cache of this one
+        User user = userRepository.findOneByLogin("admin").get();
+        user.setPassword(oldPassword.replace('a', 'b'));
+        userRepository.saveAndFlush(user);
+
+        assertThat(userCache.getUserFromCache("admin").getPassword()).isEqualTo(oldPassword);
+        assertThat(userDetailsService.loadUserByUsername("admin").getPassword()).isEqualTo(user.getPassword());
+    }
+}
@@ -0,0 +1,75 @@
+package space.shougat.blog.security;
+
+import space.shougat.blog.domain.Authority;
+import space.shougat.blog.repository.AuthorityRepository;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the GrantedAuthorityRegistry.
+ *
+ * @see GrantedAuthorityRegistry
+ */
+public class GrantedAuthorityRegistryUnitTest {
+
+    private AuthorityRepository authorityRepository;
+
+    private GrantedAuthorityRegistry grantedAuthorityRegistry;
+
+    @Before
+    public void setup() {
+        authorityRepository = mock(AuthorityRepository.class);
+        when(authorityRepository.findAll()).thenReturn(Arrays.asList(
+            createAuthority(AuthoritiesConstants.ADMIN, 0), createAuthority(AuthoritiesConstants.USER, 1)));
+        grantedAuthorityRegistry = new GrantedAuthorityRegistry(authorityRepository);
+        grantedAuthorityRegistry.refresh();
+    }
+
+    @Test
+    public void testAuthoritiesAreLoadedOnce() {
+        Authority first = grantedAuthorityRegistry.getAuthority(AuthoritiesConstants.USER);
+        Authority second = grantedAuthorityRegistry.getAuthority(AuthoritiesConstants.USER);
+
+        assertThat(first.getName()).isEqualTo(AuthoritiesConstants.USER);
+        assertThat(second).isSameAs(first);
+        assertThat(grantedAuthorityRegistry.getAuthorityNames())
+            .containsOnly(AuthoritiesConstants.ADMIN, AuthoritiesConstants.USER);
+        verify(authorityRepository, times(1)).findAll();
+    }
+
+    @Test
+    public void testUnknownAuthorityReloadsTheAuthorities() {
+        when(authorityRepository.findAll()).thenReturn(Arrays.asList(createAuthority(AuthoritiesConstants.ADMIN, 0),
+            createAuthority(AuthoritiesConstants.USER, 1), createAuthority("ROLE_EDITOR", 2)));
+
+        Authority editor = grantedAuthorityRegistry.getAuthority("ROLE_EDITOR");
+
+        assertThat(editor.getName()).isEqualTo("ROLE_EDITOR");
+        assertThat(grantedAuthorityRegistry.getAuthority("ROLE_UNKNOWN")).isNull();
+        assertThat(grantedAuthorityRegistry.fromMask(0b100)).extracting("authority").containsExactly("ROLE_EDITOR");
+    }
+
+    @Test
+    public void testUnchangedRefreshKeepsTheDecodedAuthorities() {
+        List<GrantedAuthority> decoded = grantedAuthorityRegistry.fromMask(0b11);
+
+        grantedAuthorityRegistry.refresh();
+
+        assertThat(grantedAuthorityRegistry.fromMask(0b11)).isSameAs(decoded);
+    }
+
+    private static Authority createAuthority(String name, int bitIndex) {
+        Authority authority = new Authority();
+        authority.setName(name);
+        authority.setBitIndex(bitIndex);
+        return authority;
+    }
+}
@@ -0,0 +1,43 @@
+package space.shougat.blog.security;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports the BCrypt hashes per second for each cost, to choose the target hash time of the
+ * CalibratedPasswordEncoder.
+ *
+ * @see CalibratedPasswordEncoder
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class PasswordEncoderBenchmark {
+
+    @Param({"8", "10", "11", "12", "13"})
+    private int cost;
+
+    private CalibratedPasswordEncoder calibratedPasswordEncoder;
+
+    private String encodedPassword;
+
+    @Setup
+    public void setup() {
+        calibratedPasswordEncoder = new CalibratedPasswordEncoder(cost);
+        encodedPassword = calibratedPasswordEncoder.encode("password");
+    }
+
+    @Benchmark
+    public String encode() {
+        return calibratedPasswordEncoder.encode("password");
+    }
+
+    @Benchmark
+    public boolean matches() {
+        return calibratedPasswordEncoder.matches("password", encodedPassword);
+    }
+}
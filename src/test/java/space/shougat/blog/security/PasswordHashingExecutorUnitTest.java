@@ -0,0 +1,119 @@
+package space.shougat.blog.security;
+
+import space.shougat.blog.config.ApplicationProperties;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * Test class for the PasswordHashingExecutor.
+ *
+ * @see PasswordHashingExecutor
+ */
+public class PasswordHashingExecutorUnitTest {
+
+    private MetricRegistry metricRegistry;
+
+    private PasswordHashingExecutor passwordHashingExecutor;
+
+    @Before
+    public void setup() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getSecurity().getPasswordHashing().setPoolSize(1);
+        applicationProperties.getSecurity().getPasswordHashing().setMaxQueueSize(1);
+        metricRegistry = new MetricRegistry();
+        passwordHashingExecutor = new PasswordHashingExecutor(applicationProperties, metricRegistry);
+    }
+
+    @After
+    public void tearDown() {
+        passwordHashingExecutor.shutdown();
+    }
+
+    @Test
+    public void testTasksAreRejectedWhenTheQueueIsFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> running = passwordHashingExecutor.submit(() -> {
+            started.countDown();
+            try {
+                return release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        });
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<String> queued = passwordHashingExecutor.submit(() -> "queued");
+        assertThat(metricRegistry.getGauges().get(MetricRegistry.name(PasswordHashingExecutor.class, "queue-depth"))
+            .getValue()).isEqualTo(1);
+
+        try {
+            passwordHashingExecutor.submit(() -> "rejected");
+            fail("Expected a PasswordHashingRejectedException");
+        } catch (PasswordHashingRejectedException e) {
+            assertThat(metricRegistry.meter(MetricRegistry.name(PasswordHashingExecutor.class, "rejections"))
+                .getCount()).isEqualTo(1);
+        }
+
+        release.countDown();
+        assertThat(running.get(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(queued.get(10, TimeUnit.SECONDS)).isEqualTo("queued");
+        assertThat(metricRegistry.timer(MetricRegistry.name(PasswordHashingExecutor.class, "latency"))
+            .getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testTasksStartedFromThePoolRunDirectly() throws Exception {
+        CompletableFuture<String> outer = passwordHashingExecutor.submit(() ->
+            passwordHashingExecutor.execute(() -> Thread.currentThread().getName()));
+
+        assertThat(outer.get(10, TimeUnit.SECONDS)).startsWith("password-hashing-");
+    }
+
+    @Test
+    public void testRequestsRunOutsideThePoolAndHashOnIt() throws Exception {
+        CompletableFuture<String> request = passwordHashingExecutor.submitRequest(() ->
+            Thread.currentThread().getName() + " " +
+                passwordHashingExecutor.execute(() -> Thread.currentThread().getName()));
+
+        assertThat(request.get(10, TimeUnit.SECONDS))
+            .matches("password-hashing-request-\\d+ password-hashing-\\d+");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testExceptionsAreRethrownToTheCaller() {
+        passwordHashingExecutor.execute(() -> {
+            throw new IllegalArgumentException();
+        });
+    }
+
+    @Test
+    public void testBatchesDoNotFillTheQueue() {
+        List<Supplier<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int value = i;
+            tasks.add(() -> {
+                // the next task of the batch is not queued while this one runs
+                assertThat(metricRegistry.getGauges()
+                    .get(MetricRegistry.name(PasswordHashingExecutor.class, "queue-depth")).getValue()).isEqualTo(0);
+                return value;
+            });
+        }
+
+        assertThat(passwordHashingExecutor.executeAll(tasks)).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+        assertThat(metricRegistry.meter(MetricRegistry.name(PasswordHashingExecutor.class, "rejections"))
+            .getCount()).isZero();
+    }
+}
@@ -0,0 +1,72 @@
+package space.shougat.blog.security;
+
+import space.shougat.blog.domain.User;
+import space.shougat.blog.repository.UserRepository;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.cache.NullUserCache;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the RehashingAuthenticationProvider.
+ *
+ * @see RehashingAuthenticationProvider
+ */
+public class RehashingAuthenticationProviderUnitTest {
+
+    private CalibratedPasswordEncoder calibratedPasswordEncoder;
+
+    private UserRepository userRepository;
+
+    private User user;
+
+    private RehashingAuthenticationProvider authenticationProvider;
+
+    @Before
+    public void setup() throws Exception {
+        calibratedPasswordEncoder = new CalibratedPasswordEncoder(5);
+        userRepository = mock(UserRepository.class);
+        user = new User();
+        user.setLogin("user");
+        when(userRepository.findOneByLogin("user")).thenReturn(Optional.of(user));
+        UserDetailsService userDetailsService = login -> new org.springframework.security.core.userdetails.User(
+            login, user.getPassword(), Collections.emptyList());
+        authenticationProvider =
+            new RehashingAuthenticationProvider(calibratedPasswordEncoder, calibratedPasswordEncoder, userRepository,
+                new NullUserCache());
+        authenticationProvider.setUserDetailsService(userDetailsService);
+        authenticationProvider.afterPropertiesSet();
+    }
+
+    @Test
+    public void testOutdatedHashIsUpgradedOnLogin() {
+        user.setPassword(new BCryptPasswordEncoder(4).encode("password"));
+
+        authenticationProvider.authenticate(new UsernamePasswordAuthenticationToken("user", "password"));
+
+        verify(userRepository).save(user);
+        assertThat(user.getPassword()).startsWith("$2a$05$");
+        assertThat(calibratedPasswordEncoder.matches("password", user.getPassword())).isTrue();
+    }
+
+    @Test
+    public void testCurrentHashIsKept() {
+        String encodedPassword = calibratedPasswordEncoder.encode("password");
+        user.setPassword(encodedPassword);
+
+        authenticationProvider.authenticate(new UsernamePasswordAuthenticationToken("user", "password"));
+
+        verify(userRepository, never()).save(any(User.class));
+        assertThat(user.getPassword()).isEqualTo(encodedPassword);
+    }
+}
@@ -0,0 +1,81 @@
+package space.shougat.blog.security.jwt;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the JWTSigner with the jjwt builder and parser it replaced, for token creation and verification.
+ *
+ * @see JWTSigner
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JWTSignerBenchmark {
+
+    private static final String SECRET = "2ac6b436e96b71f6afb6968818590e1d65287421";
+
+    private JWTSigner jwtSigner;
+
+    private Map<String, Object> claims;
+
+    private String token;
+
+    @Setup
+    public void setup() {
+        jwtSigner = new JWTSigner(SECRET, Collections.emptyMap(), null);
+        claims = new LinkedHashMap<>();
+        claims.put(Claims.SUBJECT, "admin");
+        claims.put("auth", "ROLE_ADMIN,ROLE_USER");
+        claims.put(Claims.EXPIRATION, System.currentTimeMillis() / 1000 + 86400);
+        token = jwtSigner.sign(claims);
+    }
+
+    @Benchmark
+    public String createWithJjwt() {
+        return Jwts.builder()
+            .setSubject("admin")
+            .claim("auth", "ROLE_ADMIN,ROLE_USER")
+            .signWith(SignatureAlgorithm.HS512, SECRET)
+            .setExpiration(new Date(System.currentTimeMillis() + 86400000))
+            .compact();
+    }
+
+    @Benchmark
+    public String createWithJWTSigner() {
+        return jwtSigner.sign(claims);
+    }
+
+    @Benchmark
+    public Claims verifyWithJjwt() {
+        return Jwts.parser().setSigningKey(SECRET).parseClaimsJws(token).getBody();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Claims verifyWithJjwtConcurrently() {
+        return Jwts.parser().setSigningKey(SECRET).parseClaimsJws(token).getBody();
+    }
+
+    @Benchmark
+    public Claims verifyWithJWTSigner() {
+        return jwtSigner.verify(token);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Claims verifyWithJWTSignerConcurrently() {
+        return jwtSigner.verify(token);
+    }
+}
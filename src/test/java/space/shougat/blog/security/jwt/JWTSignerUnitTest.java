@@ -0,0 +1,111 @@
+package space.shougat.blog.security.jwt;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SignatureException;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the JWTSigner.
+ *
+ * @see JWTSigner
+ */
+public class JWTSignerUnitTest {
+
+    private static final String LEGACY_SECRET = "2ac6b436e96b71f6afb6968818590e1d65287421";
+
+    private static final String SECRET_1 = "c2VjcmV0LW51bWJlci1vbmU=";
+
+    private static final String SECRET_2 = "c2VjcmV0LW51bWJlci10d28=";
+
+    @Test
+    public void testTokensSignedByJjwtAreAccepted() {
+        String token = Jwts.builder()
+            .setSubject("admin")
+            .claim("auth", "ROLE_ADMIN")
+            .signWith(SignatureAlgorithm.HS512, LEGACY_SECRET)
+            .setExpiration(new Date(System.currentTimeMillis() + 60000))
+            .compact();
+
+        Claims claims = new JWTSigner(LEGACY_SECRET, Collections.emptyMap(), null).verify(token);
+
+        assertThat(claims.getSubject()).isEqualTo("admin");
+        assertThat(claims.get("auth")).isEqualTo("ROLE_ADMIN");
+    }
+
+    @Test
+    public void testTokensSignedByJWTSignerAreAcceptedByJjwt() {
+        String token = new JWTSigner(LEGACY_SECRET, Collections.emptyMap(), null).sign(claims(60));
+
+        Claims claims = Jwts.parser().setSigningKey(LEGACY_SECRET).parseClaimsJws(token).getBody();
+
+        assertThat(claims.getSubject()).isEqualTo("admin");
+    }
+
+    @Test
+    public void testTokensSignedWithPreviousKeyAreAcceptedAfterRotation() {
+        Map<String, String> keys = new HashMap<>();
+        keys.put("1", SECRET_1);
+        String legacyToken = new JWTSigner(LEGACY_SECRET, keys, null).sign(claims(60));
+        String oldToken = new JWTSigner(LEGACY_SECRET, keys, "1").sign(claims(60));
+        keys.put("2", SECRET_2);
+        JWTSigner rotated = new JWTSigner(LEGACY_SECRET, keys, "2");
+
+        String newToken = rotated.sign(claims(60));
+
+        assertThat(rotated.verify(legacyToken).getSubject()).isEqualTo("admin");
+        assertThat(rotated.verify(oldToken).getSubject()).isEqualTo("admin");
+        assertThat(rotated.verify(newToken).getSubject()).isEqualTo("admin");
+    }
+
+    @Test(expected = SignatureException.class)
+    public void testTokensSignedWithRemovedKeyAreRejected() {
+        String token = new JWTSigner(LEGACY_SECRET, Collections.singletonMap("1", SECRET_1), "1").sign(claims(60));
+
+        new JWTSigner(LEGACY_SECRET, Collections.singletonMap("2", SECRET_2), "2").verify(token);
+    }
+
+    @Test(expected = SignatureException.class)
+    public void testTamperedTokensAreRejected() {
+        JWTSigner jwtSigner = new JWTSigner(LEGACY_SECRET, Collections.emptyMap(), null);
+        String token = jwtSigner.sign(claims(60));
+        Map<String, Object> otherClaims = claims(60);
+        otherClaims.put(Claims.SUBJECT, "hacker");
+        String otherToken = jwtSigner.sign(otherClaims);
+        String[] parts = token.split("\\.");
+
+        jwtSigner.verify(parts[0] + "." + otherToken.split("\\.")[1] + "." + parts[2]);
+    }
+
+    @Test(expected = SignatureException.class)
+    public void testUnsignedTokensAreRejected() {
+        String token = Jwts.builder().setClaims(claims(60)).compact();
+
+        new JWTSigner(LEGACY_SECRET, Collections.emptyMap(), null).verify(token + "x");
+    }
+
+    @Test(expected = ExpiredJwtException.class)
+    public void testExpiredTokensAreRejected() {
+        JWTSigner jwtSigner = new JWTSigner(LEGACY_SECRET, Collections.emptyMap(), null);
+
+        jwtSigner.verify(jwtSigner.sign(claims(-60)));
+    }
+
+    private Map<String, Object> claims(long validityInSeconds) {
+        Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put(Claims.SUBJECT, "admin");
+        claims.put("auth", "ROLE_ADMIN");
+        claims.put(Claims.EXPIRATION, System.currentTimeMillis() / 1000 + validityInSeconds);
+        return claims;
+    }
+}
@@ -0,0 +1,133 @@
+package space.shougat.blog.security.jwt;
+
+import space.shougat.blog.BlogApp;
+import space.shougat.blog.domain.TokenRevocation;
+import space.shougat.blog.repository.TokenRevocationRepository;
+
+import com.codahale.metrics.MetricRegistry;
+import io.github.jhipster.config.JHipsterProperties;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.ZonedDateTime;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the TokenDenylist.
+ *
+ * @see TokenDenylist
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = BlogApp.class)
+public class TokenDenylistIntTest {
+
+    @Autowired
+    private TokenDenylist tokenDenylist;
+
+    @Autowired
+    private TokenRevocationRepository tokenRevocationRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JHipsterProperties jHipsterProperties;
+
+    @After
+    public void tearDown() {
+        tokenRevocationRepository.deleteAll();
+    }
+
+    @Test
+    public void testRevocationRejectsTokensIssuedBefore() {
+        Date issuedBefore = new Date(System.currentTimeMillis() - 1000);
+
+        tokenDenylist.revokeTokens("revoked-user");
+
+        assertThat(tokenDenylist.isRevoked("revoked-user", issuedBefore)).isTrue();
+        assertThat(tokenDenylist.isRevoked("revoked-user", null)).isTrue();
+        assertThat(tokenDenylist.isRevoked("revoked-user", new Date(System.currentTimeMillis() + 1000))).isFalse();
+        assertThat(tokenDenylist.isRevoked("other-user", issuedBefore)).isFalse();
+    }
+
+    @Test
+    public void testTokensIssuedInTheSecondOfTheRevocationAreAccepted() {
+        tokenDenylist.revokeTokens("relogged-user");
+        // the "iat" claim of a token issued right after the revocation, in whole seconds
+        Date issuedAt = new Date(System.currentTimeMillis() / 1000 * 1000);
+
+        assertThat(tokenDenylist.isRevoked("relogged-user", issuedAt)).isFalse();
+        assertThat(tokenDenylist.isRevoked("relogged-user", new Date(issuedAt.getTime() - 1000))).isTrue();
+    }
+
+    @Test
+    public void testRolledBackRevocationsAreNotApplied() {
+        Date issuedBefore = new Date(System.currentTimeMillis() - 1000);
+
+        new TransactionTemplate(transactionManager).execute(status -> {
+            tokenDenylist.revokeTokens("rolled-back-user");
+            status.setRollbackOnly();
+            return null;
+        });
+
+        assertThat(tokenDenylist.isRevoked("rolled-back-user", issuedBefore)).isFalse();
+    }
+
+    @Test
+    public void testRefreshLoadsRevocationsOfOtherNodes() {
+        tokenDenylist.refresh();
+        Date issuedBefore = new Date(System.currentTimeMillis() - 1000);
+        tokenRevocationRepository.saveAndFlush(createRevocation("remote-user", ZonedDateTime.now()));
+        assertThat(tokenDenylist.isRevoked("remote-user", issuedBefore)).isFalse();
+
+        tokenDenylist.refresh();
+
+        assertThat(tokenDenylist.isRevoked("remote-user", issuedBefore)).isTrue();
+    }
+
+    @Test
+    public void testRevocationsAreCheckedInTheTableUntilLoaded() {
+        TokenDenylist notLoadedDenylist = new TokenDenylist(tokenRevocationRepository, jHipsterProperties,
+            new MetricRegistry());
+        Date issuedBefore = new Date(System.currentTimeMillis() - 1000);
+        tokenRevocationRepository.saveAndFlush(createRevocation("unloaded-user", ZonedDateTime.now()));
+
+        assertThat(notLoadedDenylist.isLoaded()).isFalse();
+        assertThat(notLoadedDenylist.isRevoked("unloaded-user", issuedBefore)).isTrue();
+        assertThat(notLoadedDenylist.isRevoked("other-user", issuedBefore)).isFalse();
+
+        notLoadedDenylist.refresh();
+
+        assertThat(notLoadedDenylist.isLoaded()).isTrue();
+        assertThat(notLoadedDenylist.isRevoked("unloaded-user", issuedBefore)).isTrue();
+    }
+
+    @Test
+    public void testObsoleteRevocationsAreRemoved() {
+        tokenRevocationRepository.saveAndFlush(createRevocation("obsolete-user", ZonedDateTime.now().minusYears(1)));
+        tokenDenylist.revokeTokens("recent-user");
+
+        tokenDenylist.removeObsoleteRevocations();
+
+        assertThat(tokenRevocationRepository.findAll()).extracting("login")
+            .contains("recent-user")
+            .doesNotContain("obsolete-user");
+        assertThat(tokenDenylist.isRevoked("obsolete-user", null)).isFalse();
+        assertThat(tokenDenylist.isRevoked("recent-user", null)).isTrue();
+    }
+
+    private TokenRevocation createRevocation(String login, ZonedDateTime revokedAt) {
+        TokenRevocation tokenRevocation = new TokenRevocation();
+        tokenRevocation.setLogin(login);
+        tokenRevocation.setRevokedAt(revokedAt);
+        return tokenRevocation;
+    }
+}
@@ -0,0 +1,153 @@
+package space.shougat.blog.security.jwt;
+
+import space.shougat.blog.config.ApplicationProperties;
+import space.shougat.blog.domain.Authority;
+import space.shougat.blog.repository.AuthorityRepository;
+import space.shougat.blog.security.AuthoritiesConstants;
+import space.shougat.blog.security.GrantedAuthorityRegistry;
+
+import io.github.jhipster.config.JHipsterProperties;
+
+import com.codahale.metrics.MetricRegistry;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the TokenProvider.
+ *
+ * @see TokenProvider
+ */
+public class TokenProviderUnitTest {
+
+    private static final String SECRET = "e5c9ee274ae87bc031adda32e27fa98b9290da83";
+
+    private MetricRegistry metricRegistry;
+
+    private TokenDenylist tokenDenylist;
+
+    private TokenProvider tokenProvider;
+
+    @Before
+    public void setup() {
+        JHipsterProperties jHipsterProperties = new JHipsterProperties();
+        jHipsterProperties.getSecurity().getAuthentication().getJwt().setSecret(SECRET);
+        jHipsterProperties.getSecurity().getAuthentication().getJwt().setTokenValidityInSeconds(60);
+        AuthorityRepository authorityRepository = mock(AuthorityRepository.class);
+        when(authorityRepository.findAll()).thenReturn(Arrays.asList(
+            createAuthority(AuthoritiesConstants.ADMIN, 0), createAuthority(AuthoritiesConstants.USER, 1)));
+        metricRegistry = new MetricRegistry();
+        tokenDenylist = mock(TokenDenylist.class);
+        tokenProvider = new TokenProvider(jHipsterProperties, new ApplicationProperties(),
+            new GrantedAuthorityRegistry(authorityRepository), tokenDenylist, metricRegistry);
+        tokenProvider.init();
+    }
+
+    @Test
+    public void testVerifiedTokenIsServedFromCache() {
+        String jwt = tokenProvider.createToken(createAuthentication(), false);
+
+        Authentication first = tokenProvider.getAuthenticationIfValid(jwt);
+        Authentication second = tokenProvider.getAuthenticationIfValid(jwt);
+
+        assertThat(first).isNotNull();
+        assertThat(first.getName()).isEqualTo("anonymous");
+        assertThat(first.getAuthorities()).extracting("authority").containsExactly(AuthoritiesConstants.USER);
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.getPrincipal()).isNotSameAs(first.getPrincipal());
+        assertThat(second.getName()).isEqualTo("anonymous");
+        assertThat(second.getAuthorities()).extracting("authority").containsExactly(AuthoritiesConstants.USER);
+        assertThat(metricRegistry.counter(MetricRegistry.name(VerifiedTokenCache.class, "hits")).getCount()).isEqualTo(1);
+        assertThat(metricRegistry.counter(MetricRegistry.name(VerifiedTokenCache.class, "misses")).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRevokedTokenIsRejectedEvenWhenCached() {
+        String jwt = tokenProvider.createToken(createAuthentication(), false);
+        assertThat(tokenProvider.getAuthenticationIfValid(jwt)).isNotNull();
+
+        when(tokenDenylist.isRevoked(eq("anonymous"), any(Date.class))).thenReturn(true);
+
+        assertThat(tokenProvider.getAuthenticationIfValid(jwt)).isNull();
+        assertThat(tokenProvider.validateToken(jwt)).isFalse();
+    }
+
+    @Test
+    public void testAuthoritiesAreEncodedAsMaskAndShared() {
+        String jwt = tokenProvider.createToken(createAuthentication(), false);
+        String otherJwt = tokenProvider.createToken(createAuthentication(), true);
+
+        Object claim = Jwts.parser().setSigningKey(SECRET).parseClaimsJws(jwt).getBody().get("auth");
+
+        assertThat(claim).isEqualTo(2);
+        assertThat(tokenProvider.getAuthentication(jwt).getAuthorities().iterator().next())
+            .isSameAs(tokenProvider.getAuthentication(otherJwt).getAuthorities().iterator().next());
+    }
+
+    @Test
+    public void testAuthoritiesEncodedAsNamesAreAccepted() {
+        String jwt = Jwts.builder()
+            .setSubject("admin")
+            .claim("auth", AuthoritiesConstants.ADMIN + "," + AuthoritiesConstants.USER)
+            .signWith(SignatureAlgorithm.HS512, SECRET)
+            .setExpiration(new Date(System.currentTimeMillis() + 60000))
+            .compact();
+
+        Authentication authentication = tokenProvider.getAuthenticationIfValid(jwt);
+
+        assertThat(authentication.getAuthorities()).extracting("authority")
+            .containsExactlyInAnyOrder(AuthoritiesConstants.ADMIN, AuthoritiesConstants.USER);
+    }
+
+    @Test
+    public void testTokenWithInvalidSignatureIsRejected() {
+        String jwt = Jwts.builder()
+            .setSubject("anonymous")
+            .claim("auth", AuthoritiesConstants.USER)
+            .signWith(SignatureAlgorithm.HS512, "another-secret")
+            .setExpiration(new Date(System.currentTimeMillis() + 60000))
+            .compact();
+
+        assertThat(tokenProvider.getAuthenticationIfValid(jwt)).isNull();
+        assertThat(tokenProvider.getAuthenticationIfValid(jwt)).isNull();
+    }
+
+    @Test(expected = ExpiredJwtException.class)
+    public void testExpiredTokenIsNotCached() {
+        String jwt = Jwts.builder()
+            .setSubject("anonymous")
+            .claim("auth", AuthoritiesConstants.USER)
+            .signWith(SignatureAlgorithm.HS512, SECRET)
+            .setExpiration(new Date(System.currentTimeMillis() - 1000))
+            .compact();
+
+        tokenProvider.getAuthenticationIfValid(jwt);
+    }
+
+    private Authority createAuthority(String name, int bitIndex) {
+        Authority authority = new Authority();
+        authority.setName(name);
+        authority.setBitIndex(bitIndex);
+        return authority;
+    }
+
+    private Authentication createAuthentication() {
+        return new UsernamePasswordAuthenticationToken("anonymous", "anonymous",
+            Collections.singletonList(new SimpleGrantedAuthority(AuthoritiesConstants.USER)));
+    }
+}
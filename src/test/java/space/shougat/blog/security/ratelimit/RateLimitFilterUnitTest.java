@@ -0,0 +1,137 @@
+package space.shougat.blog.security.ratelimit;
+
+import space.shougat.blog.config.ApplicationProperties;
+import space.shougat.blog.security.AuthoritiesConstants;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.StreamUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the RateLimitFilter.
+ *
+ * @see RateLimitFilter
+ */
+public class RateLimitFilterUnitTest {
+
+    private MetricRegistry metricRegistry;
+
+    private RateLimitFilter rateLimitFilter;
+
+    @Before
+    public void setup() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        ApplicationProperties.Security.RateLimit rateLimit = applicationProperties.getSecurity().getRateLimit();
+        rateLimit.getAuthentication().setCapacity(2);
+        rateLimit.getAuthenticated().setCapacity(1);
+        rateLimit.getAuthorities().put(AuthoritiesConstants.ADMIN, new ApplicationProperties.Security.RateLimit.Limit(3, 60));
+        metricRegistry = new MetricRegistry();
+        rateLimitFilter = new RateLimitFilter(new RateLimiter(applicationProperties, metricRegistry),
+            applicationProperties, new ObjectMapper(), metricRegistry);
+    }
+
+    @After
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void testAuthenticationIsLimitedPerIpAddress() throws Exception {
+        assertThat(authenticate("10.0.0.1", "user1").getStatus()).isEqualTo(200);
+        assertThat(authenticate("10.0.0.1", "user2").getStatus()).isEqualTo(200);
+
+        MockHttpServletResponse response = authenticate("10.0.0.1", "user3");
+
+        assertThat(response.getStatus()).isEqualTo(429);
+        assertThat(response.getHeader("Retry-After")).isEqualTo("6");
+        assertThat(metricRegistry.counter(MetricRegistry.name(RateLimitFilter.class, "authentication", "limited"))
+            .getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testAuthenticationIsLimitedPerLogin() throws Exception {
+        assertThat(authenticate("10.0.0.1", "user").getStatus()).isEqualTo(200);
+        assertThat(authenticate("10.0.0.2", "USER").getStatus()).isEqualTo(200);
+
+        assertThat(authenticate("10.0.0.3", "user").getStatus()).isEqualTo(429);
+        assertThat(authenticate("10.0.0.3", "other").getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    public void testBodyIsReplayedToTheApplication() throws Exception {
+        MockHttpServletRequest request = createAuthenticateRequest("10.0.0.1", "user");
+        MockFilterChain filterChain = new MockFilterChain();
+
+        rateLimitFilter.doFilter(request, new MockHttpServletResponse(), filterChain);
+
+        assertThat(StreamUtils.copyToString(filterChain.getRequest().getInputStream(), StandardCharsets.UTF_8))
+            .isEqualTo("{\"username\":\"user\",\"password\":\"password\"}");
+    }
+
+    @Test
+    public void testPaddedBodiesAreRejected() throws Exception {
+        MockHttpServletRequest request = createAuthenticateRequest("10.0.0.1", "user");
+        request.setContent(("{\"username\":\"user\"," + StringUtils.repeat(' ', 4096) + "\"password\":\"password\"}")
+            .getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain filterChain = new MockFilterChain();
+
+        rateLimitFilter.doFilter(request, response, filterChain);
+
+        assertThat(response.getStatus()).isEqualTo(413);
+        assertThat(filterChain.getRequest()).isNull();
+    }
+
+    @Test
+    public void testApiIsLimitedPerUserWithTheLimitOfTheirAuthorities() throws Exception {
+        assertThat(callApi("user", AuthoritiesConstants.USER).getStatus()).isEqualTo(200);
+        assertThat(callApi("user", AuthoritiesConstants.USER).getStatus()).isEqualTo(429);
+
+        assertThat(callApi("admin", AuthoritiesConstants.ADMIN).getStatus()).isEqualTo(200);
+        assertThat(callApi("admin", AuthoritiesConstants.ADMIN).getStatus()).isEqualTo(200);
+        assertThat(callApi("admin", AuthoritiesConstants.ADMIN).getStatus()).isEqualTo(200);
+        assertThat(callApi("admin", AuthoritiesConstants.ADMIN).getStatus()).isEqualTo(429);
+        assertThat(metricRegistry.counter(MetricRegistry.name(RateLimitFilter.class, "authenticated", "limited"))
+            .getCount()).isEqualTo(2);
+    }
+
+    private MockHttpServletResponse authenticate(String remoteAddr, String username) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        rateLimitFilter.doFilter(createAuthenticateRequest(remoteAddr, username), response, new MockFilterChain());
+        return response;
+    }
+
+    private MockHttpServletRequest createAuthenticateRequest(String remoteAddr, String username) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/authenticate");
+        request.setServletPath("/api/authenticate");
+        request.setRemoteAddr(remoteAddr);
+        request.setContent(("{\"username\":\"" + username + "\",\"password\":\"password\"}")
+            .getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+
+    private MockHttpServletResponse callApi(String login, String authority) throws Exception {
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(login, null,
+            Collections.singletonList(new SimpleGrantedAuthority(authority))));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/account");
+        request.setServletPath("/api/account");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        rateLimitFilter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+}
@@ -0,0 +1,45 @@
+package space.shougat.blog.security.ratelimit;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the TokenBucket.
+ *
+ * @see TokenBucket
+ */
+public class TokenBucketUnitTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testBurstUpToCapacityThenRefill() {
+        long now = 42;
+        TokenBucket tokenBucket = new TokenBucket(3, 60, now);
+
+        assertThat(tokenBucket.tryConsume(now)).isZero();
+        assertThat(tokenBucket.tryConsume(now)).isZero();
+        assertThat(tokenBucket.tryConsume(now)).isZero();
+        assertThat(tokenBucket.tryConsume(now)).isEqualTo(SECOND);
+        assertThat(tokenBucket.isFull(now)).isFalse();
+
+        assertThat(tokenBucket.tryConsume(now + SECOND / 2)).isEqualTo(SECOND / 2);
+        assertThat(tokenBucket.tryConsume(now + SECOND)).isZero();
+        assertThat(tokenBucket.tryConsume(now + SECOND)).isEqualTo(SECOND);
+
+        assertThat(tokenBucket.isFull(now + 4 * SECOND)).isTrue();
+    }
+
+    @Test
+    public void testIdleBucketDoesNotExceedCapacity() {
+        TokenBucket tokenBucket = new TokenBucket(2, 60, 0);
+        long later = TimeUnit.HOURS.toNanos(1);
+
+        assertThat(tokenBucket.tryConsume(later)).isZero();
+        assertThat(tokenBucket.tryConsume(later)).isZero();
+        assertThat(tokenBucket.tryConsume(later)).isPositive();
+    }
+}
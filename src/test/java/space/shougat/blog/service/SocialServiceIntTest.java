@@ -5,7 +5,7 @@ import space.shougat.blog.domain.Authority;
 import space.shougat.blog.domain.User;
 import space.shougat.blog.repository.AuthorityRepository;
 import space.shougat.blog.repository.UserRepository;
-import space.shougat.blog.repository.search.UserSearchRepository;
+import space.shougat.blog.security.GrantedAuthorityRegistry;
 import space.shougat.blog.service.MailService;
 
 import org.junit.Before;
@@ -35,13 +35,16 @@ public class SocialServiceIntTest {
     @Autowired
     private AuthorityRepository authorityRepository;
 
+    @Autowired
+    private GrantedAuthorityRegistry grantedAuthorityRegistry;
+
     @Autowired
     private PasswordEncoder passwordEncoder;
 
     @Autowired
     private UserRepository userRepository;
     @Autowired
-    private UserSearchRepository userSearchRepository;
+    private UserSearchIndexer userSearchIndexer;
 
 
     @Mock
@@ -62,8 +65,8 @@ public class SocialServiceIntTest {
         doNothing().when(mockConnectionRepository).addConnection(anyObject());
         when(mockUsersConnectionRepository.createConnectionRepository(anyString())).thenReturn(mockConnectionRepository);
 
-        socialService = new SocialService(mockUsersConnectionRepository, authorityRepository,
-                passwordEncoder, userRepository, mockMailService, userSearchRepository);
+        socialService = new SocialService(mockUsersConnectionRepository, grantedAuthorityRegistry,
+                passwordEncoder, userRepository, mockMailService, userSearchIndexer);
     }
 
     @Test
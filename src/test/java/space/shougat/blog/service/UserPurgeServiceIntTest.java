@@ -0,0 +1,100 @@
+package space.shougat.blog.service;
+
+import space.shougat.blog.BlogApp;
+import space.shougat.blog.domain.JobLease;
+import space.shougat.blog.domain.User;
+import space.shougat.blog.repository.JobLeaseRepository;
+import space.shougat.blog.repository.UserRepository;
+import space.shougat.blog.repository.search.UserSearchRepository;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the UserPurgeService.
+ *
+ * @see UserPurgeService
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = BlogApp.class)
+public class UserPurgeServiceIntTest {
+
+    @Autowired
+    private UserPurgeService userPurgeService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserSearchRepository userSearchRepository;
+
+    @Autowired
+    private UserSearchIndexer userSearchIndexer;
+
+    @Autowired
+    private JobLeaseRepository jobLeaseRepository;
+
+    private final List<User> users = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        users.forEach(user -> userRepository.findOneByLogin(user.getLogin()).ifPresent(userRepository::delete));
+        JobLease jobLease = jobLeaseRepository.findOne(UserPurgeService.JOB_NAME);
+        jobLease.setOwner(null);
+        jobLease.setLockedUntil(ZonedDateTime.now());
+        jobLeaseRepository.save(jobLease);
+    }
+
+    @Test
+    public void assertThatStaleNotActivatedUsersAreDeleted() {
+        User stale = createUser("purge-stale", 4);
+        User otherStale = createUser("purge-other-stale", 4);
+        User recent = createUser("purge-recent", 1);
+
+        long deleted = userPurgeService.removeNotActivatedUsers(ZonedDateTime.now().minusDays(3));
+
+        assertThat(deleted).isGreaterThanOrEqualTo(2);
+        assertThat(userRepository.findOneByLogin(stale.getLogin())).isEmpty();
+        assertThat(userRepository.findOneByLogin(otherStale.getLogin())).isEmpty();
+        assertThat(userRepository.findOneByLogin(recent.getLogin())).isPresent();
+        userSearchIndexer.indexPendingUsers();
+        assertThat(userSearchRepository.findOne(stale.getId())).isNull();
+        assertThat(userSearchRepository.findOne(recent.getId())).isNotNull();
+        assertThat(jobLeaseRepository.findOne(UserPurgeService.JOB_NAME).getOwner()).isNull();
+    }
+
+    @Test
+    public void assertThatTheLeaseOfAnotherNodeIsRespected() {
+        User stale = createUser("purge-locked", 4);
+        JobLease jobLease = jobLeaseRepository.findOne(UserPurgeService.JOB_NAME);
+        jobLease.setOwner("another-node");
+        jobLease.setLockedUntil(ZonedDateTime.now().plusMinutes(1));
+        jobLeaseRepository.save(jobLease);
+
+        long deleted = userPurgeService.removeNotActivatedUsers(ZonedDateTime.now().minusDays(3));
+
+        assertThat(deleted).isEqualTo(-1);
+        assertThat(userRepository.findOneByLogin(stale.getLogin())).isPresent();
+    }
+
+    private User createUser(String login, int daysAgo) {
+        User user = userService.createUser(login, "password", "John", "Doe", login + "@localhost",
+            "http://placehold.it/50x50", "en-US");
+        user.setCreatedDate(ZonedDateTime.now().minusDays(daysAgo));
+        users.add(userRepository.save(user));
+        return user;
+    }
+}
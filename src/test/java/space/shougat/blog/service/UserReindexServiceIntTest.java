@@ -0,0 +1,79 @@
+package space.shougat.blog.service;
+
+import space.shougat.blog.BlogApp;
+import space.shougat.blog.domain.User;
+import space.shougat.blog.repository.UserRepository;
+import space.shougat.blog.repository.search.UserSearchRepository;
+import space.shougat.blog.service.dto.ReindexStatusDTO;
+
+import org.elasticsearch.client.IndicesAdminClient;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the UserReindexService.
+ *
+ * @see UserReindexService
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = BlogApp.class)
+public class UserReindexServiceIntTest {
+
+    @Autowired
+    private UserReindexService userReindexService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserSearchRepository userSearchRepository;
+
+    @Autowired
+    private ElasticsearchTemplate elasticsearchTemplate;
+
+    @Test
+    public void assertThatTheAliasIsMovedToTheNewIndex() throws Exception {
+        User admin = userRepository.findOneByLogin("admin").get();
+        IndicesAdminClient indices = elasticsearchTemplate.getClient().admin().indices();
+
+        ReindexStatusDTO first = reindex();
+
+        assertThat(first.getState()).isEqualTo(ReindexStatusDTO.State.COMPLETED);
+        assertThat(first.getIndexedUsers()).isEqualTo(first.getTotalUsers()).isEqualTo(userRepository.count());
+        assertThat(first.getCompletedPartitions()).isEqualTo(first.getPartitions()).isPositive();
+        assertThat(indices.prepareGetAliases("user").get().getAliases().containsKey(first.getIndex())).isTrue();
+        assertThat(userSearchRepository.findOne(admin.getId()).getLogin()).isEqualTo("admin");
+
+        ReindexStatusDTO second = reindex();
+
+        assertThat(second.getState()).isEqualTo(ReindexStatusDTO.State.COMPLETED);
+        assertThat(indices.prepareGetAliases("user").get().getAliases().containsKey(second.getIndex())).isTrue();
+        assertThat(indices.prepareExists(first.getIndex()).get().isExists()).isFalse();
+        assertThat(userSearchRepository.findOne(admin.getId()).getLogin()).isEqualTo("admin");
+    }
+
+    @Test
+    public void assertThatTheIdRangesCoverAllTheIds() {
+        assertThat(UserReindexService.split(1, 10, 4)).containsExactly(
+            new long[]{1, 3}, new long[]{4, 6}, new long[]{7, 9}, new long[]{10, 10});
+        assertThat(UserReindexService.split(5, 6, 16)).containsExactly(new long[]{5, 5}, new long[]{6, 6});
+    }
+
+    private ReindexStatusDTO reindex() throws InterruptedException {
+        assertThat(userReindexService.startReindex()).isTrue();
+        long timeout = System.currentTimeMillis() + 30000;
+        while (userReindexService.getStatus().getState() == ReindexStatusDTO.State.RUNNING
+                && System.currentTimeMillis() < timeout) {
+            Thread.sleep(100);
+        }
+        // the lease is released once the status is final
+        Thread.sleep(200);
+        return userReindexService.getStatus();
+    }
+}
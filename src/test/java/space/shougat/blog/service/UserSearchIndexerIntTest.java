@@ -0,0 +1,132 @@
+package space.shougat.blog.service;
+
+import space.shougat.blog.BlogApp;
+import space.shougat.blog.domain.User;
+import space.shougat.blog.repository.UserRepository;
+import space.shougat.blog.repository.UserSearchOutboxRepository;
+import space.shougat.blog.repository.search.UserSearchRepository;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the UserSearchIndexer.
+ *
+ * @see UserSearchIndexer
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = BlogApp.class)
+public class UserSearchIndexerIntTest {
+
+    @Autowired
+    private UserSearchIndexer userSearchIndexer;
+
+    @Autowired
+    private UserSearchOutboxRepository userSearchOutboxRepository;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserSearchRepository userSearchRepository;
+
+    @Autowired
+    private ElasticsearchTemplate elasticsearchTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JobLockService jobLockService;
+
+    @After
+    public void tearDown() {
+        userRepository.findOneByLogin("indexer-user").ifPresent(userRepository::delete);
+    }
+
+    @Test
+    public void assertThatCommittedChangesAreIndexed() {
+        User user = createUser();
+        assertThat(userSearchRepository.findOne(user.getId())).isNull();
+
+        userSearchIndexer.indexPendingUsers();
+
+        assertThat(userSearchRepository.findOne(user.getId()).getLogin()).isEqualTo("indexer-user");
+
+        userService.deleteUser("indexer-user");
+        userSearchIndexer.indexPendingUsers();
+
+        assertThat(userSearchRepository.findOne(user.getId())).isNull();
+        assertThat(userSearchOutboxRepository.findOldest(UserSearchIndexer.BATCH_SIZE)).isEmpty();
+    }
+
+    @Test
+    public void assertThatRolledBackChangesAreNotIndexed() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        User user = transactionTemplate.execute(status -> {
+            status.setRollbackOnly();
+            return createUser();
+        });
+
+        assertThat(userSearchOutboxRepository.findOldest(UserSearchIndexer.BATCH_SIZE))
+            .extracting(UserSearchOutboxRepository.Entry::getUserId).doesNotContain(user.getId());
+        userSearchIndexer.indexPendingUsers();
+        assertThat(userSearchRepository.findOne(user.getId())).isNull();
+    }
+
+    @Test
+    public void assertThatTheEntriesOfAUserAreCoalesced() {
+        User user = createUser();
+        new TransactionTemplate(transactionManager).execute(status -> {
+            userSearchIndexer.scheduleIndexing(Arrays.asList(user.getId(), user.getId()));
+            return null;
+        });
+
+        userSearchIndexer.indexPendingUsers();
+
+        ElasticsearchPersistentEntity<?> persistentEntity = elasticsearchTemplate.getPersistentEntityFor(User.class);
+        assertThat(elasticsearchTemplate.getClient()
+            .prepareGet(persistentEntity.getIndexName(), persistentEntity.getIndexType(), user.getId().toString())
+            .get().getVersion()).isEqualTo(1);
+    }
+
+    @Test
+    public void assertThatTheOutboxIsKeptDuringAReindex() {
+        assertThat(jobLockService.tryLock(UserReindexService.JOB_NAME, Duration.ofMinutes(1))).isTrue();
+        User user;
+        try {
+            user = createUser();
+            userSearchIndexer.indexPendingUsers();
+
+            assertThat(userSearchOutboxRepository.findOldest(UserSearchIndexer.BATCH_SIZE))
+                .extracting(UserSearchOutboxRepository.Entry::getUserId).contains(user.getId());
+        } finally {
+            jobLockService.unlock(UserReindexService.JOB_NAME);
+        }
+
+        userSearchIndexer.indexPendingUsers();
+
+        assertThat(userSearchRepository.findOne(user.getId())).isNotNull();
+    }
+
+    private User createUser() {
+        return userService.createUser("indexer-user", "password", "John", "Doe", "indexer-user@localhost",
+            "http://placehold.it/50x50", "en-US");
+    }
+}
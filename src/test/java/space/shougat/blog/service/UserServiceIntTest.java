@@ -2,16 +2,31 @@ package space.shougat.blog.service;
 
 import space.shougat.blog.BlogApp;
 import space.shougat.blog.domain.User;
+import space.shougat.blog.repository.TokenRevocationRepository;
 import space.shougat.blog.repository.UserRepository;
+import space.shougat.blog.security.AuthoritiesConstants;
+import space.shougat.blog.service.dto.AccountDTO;
+import space.shougat.blog.service.dto.UserDTO;
 import java.time.ZonedDateTime;
+import space.shougat.blog.service.util.KeysetCursor;
 import space.shougat.blog.service.util.RandomUtil;
+import com.codahale.metrics.MetricRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import javax.persistence.EntityManagerFactory;
 import java.util.Optional;
 import java.util.List;
 
@@ -33,6 +48,18 @@ public class UserServiceIntTest {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    @Autowired
+    private TokenRevocationRepository tokenRevocationRepository;
+
     @Test
     public void assertThatUserMustExistToResetPassword() {
         Optional<User> maybeUser = userService.requestPasswordReset("john.doe@localhost");
@@ -113,4 +140,64 @@ public class UserServiceIntTest {
         List<User> users = userRepository.findAllByActivatedIsFalseAndCreatedDateBefore(now.minusDays(3));
         assertThat(users).isEmpty();
     }
+
+    @Test
+    public void assertThatManagedUsersAreListedWithOneAuthoritiesQueryPerPage() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        Page<UserDTO> page = userService.getAllManagedUsers(new PageRequest(0, 2, Sort.Direction.ASC, "id"));
+
+        // page, count and authorities queries
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+        assertThat(page.getContent()).hasSize(2);
+        assertThat(page.getContent().get(0).getLogin()).isEqualTo("system");
+        assertThat(page.getContent().get(0).getAuthorities()).containsOnly("ROLE_ADMIN", "ROLE_USER");
+    }
+
+    @Test
+    public void assertThatKeysetPagesAreListedWithOneAuthoritiesQuery() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        Slice<UserDTO> slice = userService.getAllManagedUsers(
+            new KeysetCursor("login", Sort.Direction.ASC, "anonymoususer"), 2);
+
+        // slice and authorities queries
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+        assertThat(slice.getContent()).extracting(UserDTO::getLogin).containsExactly("system", "user");
+        assertThat(slice.getContent().get(1).getAuthorities()).containsOnly("ROLE_USER");
+    }
+
+    @Test
+    @WithMockUser("user")
+    public void assertThatAccountIsCachedUntilTheUserIsUpdated() {
+        cacheManager.getCache(UserService.ACCOUNT_CACHE).clear();
+        long hits = metricRegistry.counter(MetricRegistry.name(UserService.class, "account-cache", "hits")).getCount();
+
+        AccountDTO account = userService.getAccount().get();
+
+        assertThat(userService.getAccount().get()).isSameAs(account);
+        assertThat(metricRegistry.counter(MetricRegistry.name(UserService.class, "account-cache", "hits")).getCount())
+            .isEqualTo(hits + 1);
+
+        userService.updateUser("Changed", account.getLastName(), account.getEmail(), account.getLangKey(), null);
+
+        assertThat(userService.getAccount().get().getFirstName()).isEqualTo("Changed");
+    }
+
+    @Test
+    public void assertThatTokensAreRevokedWhenTheAuthoritiesChange() {
+        UserDTO user = new UserDTO(userRepository.findOneWithAuthoritiesByLogin("user").get());
+        userService.updateUser(user, null);
+
+        assertThat(tokenRevocationRepository.findAll()).extracting("login").doesNotContain("user");
+
+        user.getAuthorities().add(AuthoritiesConstants.ADMIN);
+        userService.updateUser(user, null);
+
+        assertThat(tokenRevocationRepository.findAll()).extracting("login").contains("user");
+    }
 }
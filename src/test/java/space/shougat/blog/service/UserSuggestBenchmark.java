@@ -0,0 +1,126 @@
+package space.shougat.blog.service;
+
+import space.shougat.blog.BlogApp;
+import space.shougat.blog.domain.User;
+import space.shougat.blog.repository.UserRepository;
+import space.shougat.blog.service.dto.UserSuggestionDTO;
+import space.shougat.blog.service.search.UserSearchEngine;
+
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.runner.IterationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Measures the lookups of the UserSuggestService not served by its cache, against the index of the test
+ * configuration, and fails when the 95th percentile of a measurement iteration is above the latency budget.
+ *
+ * @see UserSuggestService#LATENCY_BUDGET
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserSuggestBenchmark {
+
+    private static final int USERS = 1000;
+
+    private ConfigurableApplicationContext context;
+
+    private UserSearchEngine userSearchEngine;
+
+    private List<String> prefixes;
+
+    private int next;
+
+    private Timer timer;
+
+    @Setup
+    public void setup() {
+        context = new SpringApplicationBuilder(BlogApp.class).properties("server.port=0").run();
+        userSearchEngine = context.getBean(UserSearchEngine.class);
+        UserRepository userRepository = context.getBean(UserRepository.class);
+        UserSearchIndexer userSearchIndexer = context.getBean(UserSearchIndexer.class);
+        new TransactionTemplate(context.getBean(PlatformTransactionManager.class)).execute(status -> {
+            List<Long> userIds = new ArrayList<>();
+            for (int i = 0; i < USERS; i++) {
+                User user = new User();
+                user.setLogin("suggest-" + i);
+                user.setPassword(RandomStringUtils.random(60));
+                user.setFirstName("Firstname" + i);
+                user.setLastName("Lastname" + i);
+                user.setEmail("suggest-" + i + "@localhost");
+                user.setActivated(true);
+                user.setLangKey("en");
+                userIds.add(userRepository.save(user).getId());
+            }
+            userSearchIndexer.scheduleIndexing(userIds);
+            return null;
+        });
+        userSearchIndexer.indexPendingUsers();
+        context.getBean(ElasticsearchTemplate.class).refresh(User.class);
+        prefixes = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            prefixes.add("suggest-" + i);
+            prefixes.add("firstname" + i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        UserRepository userRepository = context.getBean(UserRepository.class);
+        UserSearchIndexer userSearchIndexer = context.getBean(UserSearchIndexer.class);
+        new TransactionTemplate(context.getBean(PlatformTransactionManager.class)).execute(status -> {
+            List<User> users = userRepository.findAll().stream()
+                .filter(user -> user.getLogin().startsWith("suggest-"))
+                .collect(Collectors.toList());
+            userRepository.delete(users);
+            userSearchIndexer.scheduleIndexing(users.stream().map(User::getId).collect(Collectors.toList()));
+            return null;
+        });
+        userSearchIndexer.indexPendingUsers();
+        context.close();
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        timer = new Timer();
+    }
+
+    @TearDown(Level.Iteration)
+    public void checkLatencyBudget(IterationParams iterationParams) {
+        Snapshot snapshot = timer.getSnapshot();
+        if (iterationParams.getType() == IterationType.MEASUREMENT
+            && snapshot.get95thPercentile() > UserSuggestService.LATENCY_BUDGET.toNanos()) {
+            throw new IllegalStateException("The 95th percentile of the suggestions is "
+                + TimeUnit.NANOSECONDS.toMillis((long) snapshot.get95thPercentile()) + " ms, above the budget of "
+                + UserSuggestService.LATENCY_BUDGET.toMillis() + " ms");
+        }
+    }
+
+    /**
+     * The lookup of the service when the prefix is not cached.
+     */
+    @Benchmark
+    public List<UserSuggestionDTO> suggest() {
+        String prefix = prefixes.get(next);
+        next = (next + 1) % prefixes.size();
+        try (Timer.Context ignored = timer.time()) {
+            return userSearchEngine.suggest(prefix, 10);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package space.shougat.blog.service;
+
+import space.shougat.blog.BlogApp;
+import space.shougat.blog.domain.User;
+import space.shougat.blog.repository.UserRepository;
+import space.shougat.blog.service.dto.UserSuggestionDTO;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the UserSuggestService.
+ *
+ * @see UserSuggestService
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = BlogApp.class)
+public class UserSuggestServiceIntTest {
+
+    @Autowired
+    private UserSuggestService userSuggestService;
+
+    @Autowired
+    private UserSearchIndexer userSearchIndexer;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ElasticsearchTemplate elasticsearchTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    @After
+    public void tearDown() {
+        new TransactionTemplate(transactionManager).execute(status -> {
+            List<User> users = userRepository.findAll().stream()
+                .filter(user -> user.getLogin().startsWith("suggest-"))
+                .collect(Collectors.toList());
+            userRepository.delete(users);
+            userSearchIndexer.scheduleIndexing(users.stream().map(User::getId)
+                .collect(Collectors.toList()));
+            return null;
+        });
+        userSearchIndexer.indexPendingUsers();
+        cacheManager.getCache(UserSuggestService.SUGGESTIONS_CACHE).clear();
+    }
+
+    @Test
+    public void assertThatUsersAreSuggestedByLoginAndNames() {
+        createUsers(1);
+
+        assertThat(userSuggestService.suggest("suggest-", 10)).extracting(UserSuggestionDTO::getLogin)
+            .containsExactly("suggest-0");
+        assertThat(userSuggestService.suggest("Firstname0", 10)).extracting(UserSuggestionDTO::getLogin)
+            .containsExactly("suggest-0");
+        List<UserSuggestionDTO> suggestions = userSuggestService.suggest(" firstname0 last", 10);
+        assertThat(suggestions).hasSize(1);
+        assertThat(suggestions.get(0).getId()).isNotNull();
+        assertThat(suggestions.get(0).getFirstName()).isEqualTo("Firstname0");
+        assertThat(suggestions.get(0).getLastName()).isEqualTo("Lastname0");
+        assertThat(userSuggestService.suggest("unknown-prefix", 10)).isEmpty();
+        assertThat(userSuggestService.suggest(" ", 10)).isEmpty();
+    }
+
+    @Test
+    public void assertThatHotPrefixesAreCached() {
+        createUsers(1);
+        Timer suggestRequests = metricRegistry.timer(
+            MetricRegistry.name(UserSuggestService.class, "suggest-requests"));
+
+        List<UserSuggestionDTO> suggestions = userSuggestService.suggest("suggest-", 5);
+        long count = suggestRequests.getCount();
+
+        assertThat(userSuggestService.suggest("SUGGEST-", 5)).isEqualTo(suggestions);
+        assertThat(suggestRequests.getCount()).isEqualTo(count);
+    }
+
+    private void createUsers(int count) {
+        new TransactionTemplate(transactionManager).execute(status -> {
+            List<Long> userIds = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                User user = new User();
+                user.setLogin("suggest-" + i);
+                user.setPassword(RandomStringUtils.random(60));
+                user.setFirstName("Firstname" + i);
+                user.setLastName("Lastname" + i);
+                user.setEmail("suggest-" + i + "@localhost");
+                user.setActivated(true);
+                user.setLangKey("en");
+                userIds.add(userRepository.save(user).getId());
+            }
+            userSearchIndexer.scheduleIndexing(userIds);
+            return null;
+        });
+        userSearchIndexer.indexPendingUsers();
+        elasticsearchTemplate.refresh(User.class);
+    }
+}
@@ -0,0 +1,107 @@
+package space.shougat.blog.service.search;
+
+import space.shougat.blog.BlogApp;
+import space.shougat.blog.domain.User;
+import space.shougat.blog.service.dto.UserSearchResultDTO;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.common.collect.ImmutableOpenMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the ElasticsearchUserSearchEngine.
+ *
+ * @see ElasticsearchUserSearchEngine
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = BlogApp.class)
+public class ElasticsearchUserSearchEngineIntTest {
+
+    private static final long USER_ID = 9100;
+
+    @Autowired
+    private UserSearchEngine userSearchEngine;
+
+    @Autowired
+    private ElasticsearchTemplate elasticsearchTemplate;
+
+    private Map<String, Object> definedMapping;
+
+    @Before
+    public void setup() throws Exception {
+        try (InputStream inputStream =
+                new ClassPathResource(ElasticsearchUserSearchEngine.INDEX_DEFINITION).getInputStream()) {
+            Map<String, Map<String, Map<String, Object>>> definition = new ObjectMapper().readValue(inputStream,
+                new TypeReference<Map<String, Map<String, Map<String, Object>>>>() {});
+            definedMapping = definition.get("mappings").get("user");
+        }
+    }
+
+    @After
+    public void tearDown() {
+        userSearchEngine.index(Collections.emptyList(), Collections.singletonList(USER_ID));
+        elasticsearchTemplate.refresh(User.class);
+    }
+
+    @Test
+    public void assertThatTheIndexHasTheMappingOfTheDefinition() throws Exception {
+        ImmutableOpenMap<String, ImmutableOpenMap<String, MappingMetaData>> mappings = elasticsearchTemplate
+            .getClient().admin().indices().prepareGetMappings("user").setTypes("user").get().getMappings();
+
+        assertThat(mappings.size()).isEqualTo(1);
+        Map<String, Object> mapping = mappings.valuesIt().next().get("user").sourceAsMap();
+        assertThat(ElasticsearchUserSearchEngine.compareMapping(definedMapping, mapping)).isEmpty();
+    }
+
+    @Test
+    public void assertThatAnOutdatedMappingIsReported() throws Exception {
+        Map<String, Object> mapping = new ObjectMapper().readValue(
+            "{\"properties\": {\"login\": {\"type\": \"string\"}, \"imageUrl\": {\"type\": \"string\"}}}",
+            new TypeReference<Map<String, Object>>() {});
+
+        assertThat(ElasticsearchUserSearchEngine.compareMapping(definedMapping, mapping))
+            .contains("version null instead of 1", "login has analyzer null instead of lowercase_keyword",
+                "imageUrl has index null instead of no", "email is not mapped");
+    }
+
+    @Test
+    public void assertThatLoginsAndEmailsAreMatchedAsLowerCaseKeywords() {
+        User user = new User();
+        user.setId(USER_ID);
+        user.setLogin("keyword-user");
+        user.setEmail("Keyword.User@Example.com");
+        user.setImageUrl("http://placehold.it/50x50");
+        user.setLangKey("en");
+        assertThat(userSearchEngine.index(Collections.singletonList(user), Collections.emptyList())).isEmpty();
+        elasticsearchTemplate.refresh(User.class);
+
+        assertThat(search("login:KEYWORD-USER")).containsExactly(USER_ID);
+        assertThat(search("login:keyword")).isEmpty();
+        assertThat(search("email:keyword.user@example.com")).containsExactly(USER_ID);
+        assertThat(search("keyword")).containsExactly(USER_ID);
+        assertThat(search("placehold.it")).isEmpty();
+    }
+
+    private Long[] search(String query) {
+        return userSearchEngine.search(query, new PageRequest(0, 10)).getContent().stream()
+            .map(UserSearchResultDTO::getId)
+            .toArray(Long[]::new);
+    }
+}
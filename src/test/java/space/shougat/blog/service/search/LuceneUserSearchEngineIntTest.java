@@ -0,0 +1,185 @@
+package space.shougat.blog.service.search;
+
+import space.shougat.blog.BlogApp;
+import space.shougat.blog.config.ApplicationProperties;
+import space.shougat.blog.domain.User;
+import space.shougat.blog.service.dto.UserSearchResultDTO;
+import space.shougat.blog.service.dto.UserSuggestionDTO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test class for the LuceneUserSearchEngine, comparing its results with the ones of Elasticsearch.
+ *
+ * @see LuceneUserSearchEngine
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = BlogApp.class)
+public class LuceneUserSearchEngineIntTest {
+
+    /**
+     * Ids of the users of this test, above the ids of the users of the database.
+     */
+    private static final long FIRST_ID = 9000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Autowired
+    private UserSearchEngine elasticsearchEngine;
+
+    @Autowired
+    private ElasticsearchTemplate elasticsearchTemplate;
+
+    private ApplicationProperties applicationProperties;
+
+    private LuceneUserSearchEngine luceneEngine;
+
+    private List<User> users;
+
+    @Before
+    public void setup() throws Exception {
+        applicationProperties = new ApplicationProperties();
+        applicationProperties.getSearch().getLucene().setDirectory(temporaryFolder.getRoot().getPath());
+        luceneEngine = new LuceneUserSearchEngine(applicationProperties);
+
+        users = Arrays.asList(
+            createUser(0, "alice", "Alice", "Smith", "alice@example.com", true),
+            createUser(1, "bob", "Bob", "Smith", "bob@example.org", true),
+            createUser(2, "carol", "Carol", "Jones", "carol.jones@example.com", false),
+            createUser(3, "alicia", "Alicia", "Keys", "alicia@example.org", true),
+            createUser(4, "dave-99", "Dave", "Alison", "dave@example.com", true),
+            createUser(5, "erin", null, null, "erin@example.net", false));
+        elasticsearchEngine.index(users, Collections.emptyList());
+        elasticsearchTemplate.refresh(User.class);
+        luceneEngine.index(users, Collections.emptyList());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        luceneEngine.close();
+        elasticsearchEngine.index(Collections.emptyList(),
+            users.stream().map(User::getId).collect(Collectors.toList()));
+        elasticsearchTemplate.refresh(User.class);
+    }
+
+    @Test
+    public void assertThatTheQueriesMatchTheSameUsersAsElasticsearch() {
+        for (String query : Arrays.asList("alice", "Alice", "ali*", "*lice", "login:bob", "firstName:Carol",
+                "alice OR bob", "+smith -alice", "\"Alice Smith\"", "activated:false", "alise~", "example.org",
+                "email:carol.jones@example.com", "email:Carol.Jones@Example.com", "login:ALICE", "login:dave-99",
+                "Smith AND NOT Bob")) {
+            assertThat(search(luceneEngine, query)).as(query).isEqualTo(search(elasticsearchEngine, query))
+                .isNotEmpty();
+        }
+    }
+
+    @Test
+    public void assertThatTheMatchesAreHighlighted() {
+        UserSearchResultDTO result = luceneEngine.search("alice", new PageRequest(0, 10)).getContent().get(0);
+
+        assertThat(result.getLogin()).isEqualTo("alice");
+        assertThat(result.getHighlights().get("login")).containsExactly("<em>alice</em>");
+        assertThat(result.getHighlights().get("firstName")).containsExactly("<em>Alice</em>");
+        assertThat(result.getHighlights()).doesNotContainKey("lastName");
+    }
+
+    @Test
+    public void assertThatTheResultsArePagedAndSorted() {
+        assertThat(luceneEngine.search("en", new PageRequest(1, 2, Sort.Direction.DESC, "login")))
+            .extracting(UserSearchResultDTO::getLogin).containsExactly("carol", "bob");
+        assertThat(luceneEngine.search("en", new PageRequest(0, 2, Sort.Direction.ASC, "id"))
+            .getTotalElements()).isEqualTo(users.size());
+        assertThatThrownBy(() -> luceneEngine.search("en", new PageRequest(0, 2, Sort.Direction.ASC, "email")))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> luceneEngine.search("alice AND (", new PageRequest(0, 2)))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void assertThatTheImageUrlIsOnlyStored() {
+        assertThat(search(luceneEngine, "placehold.it")).isEmpty();
+        assertThat(luceneEngine.search("alice", new PageRequest(0, 1)).getContent().get(0).getImageUrl())
+            .isEqualTo("http://placehold.it/50x50");
+    }
+
+    @Test
+    public void assertThatUsersAreSuggestedByPrefix() {
+        assertThat(luceneEngine.suggest("ali", 10)).extracting(UserSuggestionDTO::getLogin)
+            .containsExactly("alice", "alicia", "dave-99");
+        assertThat(luceneEngine.suggest("alice s", 10)).extracting(UserSuggestionDTO::getLogin)
+            .containsExactly("alice");
+        assertThat(luceneEngine.suggest("ali", 1).get(0).getFirstName()).isEqualTo("Alice");
+    }
+
+    @Test
+    public void assertThatTheIndexIsKeptAcrossRestarts() throws Exception {
+        luceneEngine.index(Collections.emptyList(), Collections.singletonList(FIRST_ID + 1));
+        luceneEngine.close();
+
+        luceneEngine = new LuceneUserSearchEngine(applicationProperties);
+
+        assertThat(search(luceneEngine, "smith")).containsExactly(FIRST_ID);
+    }
+
+    @Test
+    public void assertThatAPublishedIndexReplacesTheCurrentOne() throws Exception {
+        UserSearchEngine.NewIndex newIndex = luceneEngine.createIndex();
+        newIndex.index(users.subList(0, 2));
+
+        assertThat(search(luceneEngine, "en")).hasSize(users.size());
+
+        newIndex.publish();
+
+        assertThat(search(luceneEngine, "en")).containsExactlyInAnyOrder(FIRST_ID, FIRST_ID + 1);
+        assertThat(temporaryFolder.getRoot().list()).containsExactly(newIndex.getName());
+
+        UserSearchEngine.NewIndex deletedIndex = luceneEngine.createIndex();
+        deletedIndex.index(users);
+        deletedIndex.delete();
+
+        assertThat(temporaryFolder.getRoot().list()).containsExactly(newIndex.getName());
+        assertThat(search(luceneEngine, "en")).hasSize(2);
+    }
+
+    private static Set<Long> search(UserSearchEngine engine, String query) {
+        return engine.search(query, new PageRequest(0, 100)).getContent().stream()
+            .map(UserSearchResultDTO::getId)
+            .filter(id -> id >= FIRST_ID)
+            .collect(Collectors.toSet());
+    }
+
+    private static User createUser(int index, String login, String firstName, String lastName, String email,
+            boolean activated) {
+        User user = new User();
+        user.setId(FIRST_ID + index);
+        user.setLogin(login);
+        user.setFirstName(firstName);
+        user.setLastName(lastName);
+        user.setEmail(email);
+        user.setActivated(activated);
+        user.setLangKey("en");
+        user.setImageUrl("http://placehold.it/50x50");
+        return user;
+    }
+}
@@ -7,9 +7,12 @@ import space.shougat.blog.repository.AuthorityRepository;
 import space.shougat.blog.repository.UserRepository;
 import space.shougat.blog.security.AuthoritiesConstants;
 import space.shougat.blog.service.MailService;
+import space.shougat.blog.service.UserAvailabilityService;
 import space.shougat.blog.service.UserService;
+import space.shougat.blog.service.dto.AccountDTO;
 import space.shougat.blog.service.dto.UserDTO;
 import space.shougat.blog.web.rest.vm.ManagedUserVM;
+import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -17,7 +20,9 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
@@ -51,6 +56,9 @@ public class AccountResourceIntTest {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private UserAvailabilityService userAvailabilityService;
+
     @Mock
     private UserService mockUserService;
 
@@ -67,10 +75,10 @@ public class AccountResourceIntTest {
         doNothing().when(mockMailService).sendActivationEmail((User) anyObject());
 
         AccountResource accountResource =
-            new AccountResource(userRepository, userService, mockMailService);
+            new AccountResource(userRepository, userService, mockMailService, userAvailabilityService);
 
         AccountResource accountUserMockResource =
-            new AccountResource(userRepository, mockUserService, mockMailService);
+            new AccountResource(userRepository, mockUserService, mockMailService, userAvailabilityService);
 
         this.restMvc = MockMvcBuilders.standaloneSetup(accountResource).build();
         this.restUserMockMvc = MockMvcBuilders.standaloneSetup(accountUserMockResource).build();
@@ -110,7 +118,7 @@ public class AccountResourceIntTest {
         user.setEmail("john.doe@jhipster.com");
         user.setImageUrl("http://placehold.it/50x50");
         user.setAuthorities(authorities);
-        when(mockUserService.getUserWithAuthorities()).thenReturn(user);
+        when(mockUserService.getAccount()).thenReturn(Optional.of(new AccountDTO(user)));
 
         restUserMockMvc.perform(get("/api/account")
                 .accept(MediaType.APPLICATION_JSON))
@@ -124,9 +132,41 @@ public class AccountResourceIntTest {
                 .andExpect(jsonPath("$.authorities").value(AuthoritiesConstants.ADMIN));
     }
 
+    @Test
+    @Transactional
+    @WithMockUser("admin")
+    public void testGetNotModifiedAccount() throws Exception {
+        User admin = userRepository.findOneByLogin("admin").get();
+        String eTag = "\"" + admin.getId() + "-" + admin.getVersion() + "\"";
+
+        restMvc.perform(get("/api/account"))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, eTag));
+
+        restMvc.perform(get("/api/account").header(HttpHeaders.IF_NONE_MATCH, eTag))
+            .andExpect(status().isNotModified())
+            .andExpect(content().string(""));
+    }
+
+    @Test
+    @Transactional
+    @WithMockUser("admin")
+    public void testSaveModifiedAccount() throws Exception {
+        User admin = userRepository.findOneByLogin("admin").get();
+        String staleETag = "\"" + admin.getId() + "-" + (admin.getVersion() + 1) + "\"";
+
+        restMvc.perform(post("/api/account")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .header(HttpHeaders.IF_MATCH, staleETag)
+                .content("{\"login\":\"admin\",\"firstName\":\"Changed\",\"email\":\"admin@localhost\",\"langKey\":\"en\"}"))
+            .andExpect(status().isPreconditionFailed());
+
+        assertThat(userRepository.findOneByLogin("admin").get().getFirstName()).isNotEqualTo("Changed");
+    }
+
     @Test
     public void testGetUnknownAccount() throws Exception {
-        when(mockUserService.getUserWithAuthorities()).thenReturn(null);
+        when(mockUserService.getAccount()).thenReturn(Optional.empty());
 
         restUserMockMvc.perform(get("/api/account")
                 .accept(MediaType.APPLICATION_JSON))
@@ -333,6 +373,41 @@ public class AccountResourceIntTest {
         assertThat(userDup.isPresent()).isFalse();
     }
 
+    @Test
+    @Transactional
+    public void testRegisterDuplicateEmailInAnotherCase() throws Exception {
+        User user = new User();
+        user.setLogin("foo");
+        user.setEmail("foo@x.com");
+        user.setPassword(RandomStringUtils.random(60));
+        user.setActivated(true);
+        userRepository.saveAndFlush(user);
+
+        ManagedUserVM duplicatedUser = new ManagedUserVM(
+            null,                   // id
+            "foobar",               // login
+            "password",             // password
+            "Foo",                  // firstName
+            "Bar",                  // lastName
+            "Foo@x.com",            // e-mail
+            true,                   // activated
+            "http://placehold.it/50x50", //imageUrl
+            "en",                   // langKey
+            null,                   // createdBy
+            null,                   // createdDate
+            null,                   // lastModifiedBy
+            null,                   // lastModifiedDate
+            new HashSet<>(Arrays.asList(AuthoritiesConstants.USER)));
+
+        restMvc.perform(
+            post("/api/register")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(duplicatedUser)))
+            .andExpect(status().isBadRequest());
+
+        assertThat(userRepository.findOneByLogin("foobar").isPresent()).isFalse();
+    }
+
     @Test
     @Transactional
     public void testRegisterAdminIsIgnored() throws Exception {
@@ -392,4 +467,34 @@ public class AccountResourceIntTest {
         Optional<User> user = userRepository.findOneByEmail("funky@example.com");
         assertThat(user.isPresent()).isFalse();
     }
+
+    @Test
+    @Transactional
+    public void testCheckAvailability() throws Exception {
+        userAvailabilityService.rebuild();
+        User user = userService.createUser("availability-test", "password", "Joe", "Shmoe", "Availability@Example.com",
+            "http://placehold.it/50x50", "en-US");
+
+        restMvc.perform(get("/api/account/availability")
+            .param("login", "Admin")
+            .param("email", "available@example.com"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.login").value(false))
+            .andExpect(jsonPath("$.email").value(true));
+
+        restMvc.perform(get("/api/account/availability")
+            .param("login", "available-login")
+            .param("email", user.getEmail()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.login").value(true))
+            .andExpect(jsonPath("$.email").value(false));
+
+        restMvc.perform(get("/api/account/availability")
+            .param("email", "AVAILABILITY@example.com"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.email").value(false));
+
+        restMvc.perform(get("/api/account/availability"))
+            .andExpect(status().isBadRequest());
+    }
 }
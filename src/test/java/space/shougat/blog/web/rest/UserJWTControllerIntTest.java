@@ -0,0 +1,130 @@
+package space.shougat.blog.web.rest;
+
+import space.shougat.blog.BlogApp;
+import space.shougat.blog.config.ApplicationProperties;
+import space.shougat.blog.security.PasswordHashingExecutor;
+import space.shougat.blog.security.PasswordHashingRejectedException;
+import space.shougat.blog.web.rest.errors.ErrorConstants;
+import space.shougat.blog.web.rest.errors.ExceptionTranslator;
+import space.shougat.blog.web.rest.vm.LoginVM;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Test class for the UserJWTController REST controller.
+ *
+ * @see UserJWTController
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = BlogApp.class)
+public class UserJWTControllerIntTest {
+
+    @Autowired
+    private UserJWTController userJWTController;
+
+    @Autowired
+    private PasswordHashingExecutor passwordHashingExecutor;
+
+    @Autowired
+    private ApplicationProperties applicationProperties;
+
+    private MockMvc restMvc;
+
+    @Before
+    public void setup() {
+        this.restMvc = MockMvcBuilders.standaloneSetup(userJWTController)
+            .setControllerAdvice(new ExceptionTranslator())
+            .build();
+    }
+
+    @Test
+    public void testAuthorizeWithWrongPassword() throws Exception {
+        MvcResult result = restMvc.perform(post("/api/authenticate")
+                .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                .content(TestUtil.convertObjectToJsonBytes(login("admin", "wrong password"))))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        restMvc.perform(asyncDispatch(result))
+            .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    public void testAuthorizeWhenThePasswordHashingPoolIsSaturated() throws Exception {
+        int poolSize = applicationProperties.getSecurity().getPasswordHashing().getPoolSize();
+        CountDownLatch started = new CountDownLatch(poolSize);
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<Boolean>> tasks = new ArrayList<>();
+        try {
+            fill(tasks, started, release);
+            assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+            // the idle threads of the pool may have left room in the queue while they were taking their task
+            fill(tasks, started, release);
+
+            MvcResult result = restMvc.perform(post("/api/authenticate")
+                    .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                    .content(TestUtil.convertObjectToJsonBytes(login("admin", "admin"))))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+            restMvc.perform(asyncDispatch(result))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"))
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.message").value(ErrorConstants.ERR_TOO_MANY_REQUESTS));
+        } finally {
+            release.countDown();
+            for (CompletableFuture<Boolean> task : tasks) {
+                task.get(10, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    /**
+     * Submit tasks waiting for the release until the pool rejects one.
+     */
+    private void fill(List<CompletableFuture<Boolean>> tasks, CountDownLatch started, CountDownLatch release) {
+        try {
+            while (true) {
+                tasks.add(passwordHashingExecutor.submit(() -> {
+                    started.countDown();
+                    try {
+                        return release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        return false;
+                    }
+                }));
+            }
+        } catch (PasswordHashingRejectedException e) {
+            // the threads of the pool are busy and its queue is full
+        }
+    }
+
+    private static LoginVM login(String username, String password) {
+        LoginVM loginVM = new LoginVM();
+        loginVM.setUsername(username);
+        loginVM.setPassword(password);
+        return loginVM;
+    }
+}
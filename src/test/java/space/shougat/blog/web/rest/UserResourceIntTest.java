@@ -4,26 +4,56 @@ import space.shougat.blog.BlogApp;
 import space.shougat.blog.domain.User;
 import space.shougat.blog.repository.UserRepository;
 import space.shougat.blog.repository.search.UserSearchRepository;
+import space.shougat.blog.security.GrantedAuthorityRegistry;
+import space.shougat.blog.security.PasswordHashingExecutor;
+import space.shougat.blog.security.PasswordHashingRejectedException;
+import space.shougat.blog.service.UserAvailabilityService;
+import space.shougat.blog.service.UserImportService;
+import space.shougat.blog.service.UserSearchIndexer;
+import space.shougat.blog.service.UserSearchService;
 import space.shougat.blog.service.UserService;
+import space.shougat.blog.service.UserSuggestService;
 import space.shougat.blog.service.MailService;
 
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
+import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.validation.Validator;
 
 import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 /**
@@ -47,6 +77,36 @@ public class UserResourceIntTest {
     @Autowired
     private UserSearchRepository userSearchRepository;
 
+    @Autowired
+    private UserSearchIndexer userSearchIndexer;
+
+    @Autowired
+    private UserSearchService userSearchService;
+
+    @Autowired
+    private UserSuggestService userSuggestService;
+
+    @Autowired
+    private ElasticsearchTemplate elasticsearchTemplate;
+
+    @Autowired
+    private UserImportService userImportService;
+
+    @Autowired
+    private UserAvailabilityService userAvailabilityService;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private GrantedAuthorityRegistry grantedAuthorityRegistry;
+
+    @Autowired
+    private Validator validator;
+
     private MockMvc restUserMockMvc;
 
     /**
@@ -72,8 +132,11 @@ public class UserResourceIntTest {
 
     @Before
     public void setup() {
-        UserResource userResource = new UserResource(userRepository, mailService, userService, userSearchRepository);
-        this.restUserMockMvc = MockMvcBuilders.standaloneSetup(userResource).build();
+        UserResource userResource = new UserResource(userRepository, mailService, userService, userSearchService,
+            userSuggestService, userImportService, userAvailabilityService, objectMapper);
+        this.restUserMockMvc = MockMvcBuilders.standaloneSetup(userResource)
+            .setCustomArgumentResolvers(new PageableHandlerMethodArgumentResolver())
+            .build();
     }
 
     @Test
@@ -92,6 +155,55 @@ public class UserResourceIntTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    public void testGetNotModifiedUser() throws Exception {
+        String eTag = restUserMockMvc.perform(get("/api/users/admin"))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, private"))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(eTag).matches("\"\\d+-\\d+\"");
+
+        restUserMockMvc.perform(get("/api/users/admin").header(HttpHeaders.IF_NONE_MATCH, "\"0-0\", " + eTag))
+            .andExpect(status().isNotModified())
+            .andExpect(header().string(HttpHeaders.ETAG, eTag))
+            .andExpect(content().string(""));
+
+        restUserMockMvc.perform(get("/api/users/admin").header(HttpHeaders.IF_NONE_MATCH, "\"0-0\""))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, eTag));
+    }
+
+    @Test
+    public void testUpdateUserIfMatch() throws Exception {
+        User user = userService.createUser("etag-user", "password", "John", "Doe", "etag-user@localhost", null, "en");
+        String eTag = "\"" + user.getId() + "-" + user.getVersion() + "\"";
+        String update = "{\"id\":" + user.getId() + ",\"login\":\"etag-user\",\"firstName\":\"%s\"," +
+            "\"email\":\"etag-user@localhost\",\"activated\":true,\"langKey\":\"en\",\"authorities\":[\"ROLE_USER\"]}";
+        try {
+            restUserMockMvc.perform(put("/api/users")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .header(HttpHeaders.IF_MATCH, "\"" + user.getId() + "-" + (user.getVersion() + 1) + "\"")
+                    .content(String.format(update, "Jane")))
+                .andExpect(status().isPreconditionFailed());
+
+            restUserMockMvc.perform(put("/api/users")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .header(HttpHeaders.IF_MATCH, eTag)
+                    .content(String.format(update, "Jane")))
+                .andExpect(status().isOk());
+
+            restUserMockMvc.perform(put("/api/users")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .header(HttpHeaders.IF_MATCH, eTag)
+                    .content(String.format(update, "Jack")))
+                .andExpect(status().isPreconditionFailed());
+
+            assertThat(userRepository.findOneByLogin("etag-user").get().getFirstName()).isEqualTo("Jane");
+        } finally {
+            userRepository.findOneByLogin("etag-user").ifPresent(userRepository::delete);
+        }
+    }
+
     @Test
     public void testGetExistingUserWithAnEmailLogin() throws Exception {
         User user = userService.createUser("john.doe@localhost.com", "johndoe", "John", "Doe", "john.doe@localhost.com", "http://placehold.it/50x50", "en-US");
@@ -118,6 +230,66 @@ public class UserResourceIntTest {
         userRepository.delete(user);
     }
 
+    @Test
+    public void testGetAllUsersByCursor() throws Exception {
+        long total = userRepository.count();
+
+        MvcResult firstPage = restUserMockMvc.perform(get("/api/users?cursor=&size=2&count=true")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Total-Count", Long.toString(total)))
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].id").value(1))
+                .andExpect(jsonPath("$[1].id").value(2))
+                .andReturn();
+
+        restUserMockMvc.perform(get(nextLink(firstPage))
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("X-Total-Count"))
+                .andExpect(jsonPath("$[0].id").value(3))
+                .andExpect(jsonPath("$[1].id").value(4));
+    }
+
+    @Test
+    public void testGetAllUsersByCursorSortedOnLogin() throws Exception {
+        MvcResult firstPage = restUserMockMvc.perform(get("/api/users?cursor=&size=1&sort=login,desc")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].login").value("user"))
+                .andReturn();
+
+        restUserMockMvc.perform(get(nextLink(firstPage))
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].login").value("system"));
+    }
+
+    @Test
+    public void testGetAllUsersByCursorLastPage() throws Exception {
+        restUserMockMvc.perform(get("/api/users?cursor=&size=" + (userRepository.count() + 1))
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.LINK, not(containsString("rel=\"next\""))));
+    }
+
+    @Test
+    public void testGetAllUsersByInvalidCursor() throws Exception {
+        restUserMockMvc.perform(get("/api/users?cursor=invalid")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        restUserMockMvc.perform(get("/api/users?cursor=&sort=email")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    private String nextLink(MvcResult result) {
+        Matcher matcher = Pattern.compile("<([^>]*)>; rel=\"next\"")
+            .matcher(result.getResponse().getHeader(HttpHeaders.LINK));
+        assertThat(matcher.find()).isTrue();
+        return matcher.group(1);
+    }
+
     @Test
     public void equalsVerifier() throws Exception {
         User userA = new User();
@@ -126,4 +298,226 @@ public class UserResourceIntTest {
         userB.setLogin("BBB");
         assertThat(userA).isNotEqualTo(userB);
     }
+
+    @Test
+    public void testExportUsersAsNdjson() throws Exception {
+        MvcResult result = restUserMockMvc.perform(get("/api/users/_export"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType("application/x-ndjson;charset=UTF-8"))
+            .andReturn();
+
+        String[] lines = result.getResponse().getContentAsString().split("\n");
+        assertThat(lines.length).isEqualTo((int) userRepository.count());
+        JsonNode first = objectMapper.readTree(lines[0]);
+        assertThat(first.get("login").asText()).isEqualTo("system");
+        assertThat(first.get("authorities")).hasSize(2);
+        assertThat(objectMapper.readTree(lines[2]).get("login").asText()).isEqualTo("admin");
+    }
+
+    @Test
+    public void testExportUsersAsCsv() throws Exception {
+        MvcResult result = restUserMockMvc.perform(get("/api/users/_export").param("format", "csv"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType("text/csv;charset=UTF-8"))
+            .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=users.csv"))
+            .andReturn();
+
+        String[] lines = result.getResponse().getContentAsString().split("\r\n");
+        assertThat(lines.length).isEqualTo((int) userRepository.count() + 1);
+        assertThat(lines[0]).startsWith("id,login,firstName,");
+        assertThat(lines[4]).startsWith("4,user,User,User,user@localhost,true,,en,system,")
+            .endsWith(",ROLE_USER");
+    }
+
+    @Test
+    public void testExportUsersAsCsvWithFormulas() throws Exception {
+        userService.createUser("csvformula", "password", "=HYPERLINK(\"http://example.com\")", "@SUM(A1)",
+            "csvformula@localhost", null, "en");
+        try {
+            MvcResult result = restUserMockMvc.perform(get("/api/users/_export").param("format", "csv"))
+                .andExpect(status().isOk())
+                .andReturn();
+
+            assertThat(result.getResponse().getContentAsString())
+                .contains(",csvformula,\"'=HYPERLINK(\"\"http://example.com\"\")\",\"'@SUM(A1)\",csvformula@localhost,");
+        } finally {
+            userRepository.findOneByLogin("csvformula").ifPresent(userRepository::delete);
+        }
+    }
+
+    @Test
+    public void testExportUsersWithAnUnsupportedFormat() throws Exception {
+        restUserMockMvc.perform(get("/api/users/_export").param("format", "xml"))
+            .andExpect(status().isBadRequest())
+            .andExpect(header().string("X-blogApp-error", "Unsupported export format: xml"));
+    }
+
+    @Test
+    public void testImportUsers() throws Exception {
+        String users = "{\"login\":\"bulk-one\",\"email\":\"bulk-one@localhost\",\"password\":\"secret\"," +
+            "\"authorities\":[\"ROLE_USER\"]}\n" +
+            "{\"login\":\"Bulk-Two\",\"email\":\"bulk-two@localhost\",\"langKey\":\"fr\"," +
+            "\"authorities\":[\"ROLE_ADMIN\",\"ROLE_USER\"]}\n" +
+            "\n" +
+            "{\"login\":\"admin\",\"email\":\"bulk-admin@localhost\"}\n" +
+            "{\"login\":\"bulk-three\",\"email\":\"bulk-one@localhost\"}\n" +
+            "{\"login\":\"bulk-four\",\"email\":\"bulk-four@localhost\",\"authorities\":[\"ROLE_UNKNOWN\"]}\n" +
+            "{\"login\":\"bulk-five\",\"email\":\"not an email\"}\n" +
+            "not json\n";
+
+        try {
+            restUserMockMvc.perform(post("/api/users/_bulk")
+                    .contentType("application/x-ndjson")
+                    .content(users))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-blogApp-params", "2"))
+                .andExpect(jsonPath("$.length()").value(7))
+                .andExpect(jsonPath("$[0].line").value(1))
+                .andExpect(jsonPath("$[0].status").value("CREATED"))
+                .andExpect(jsonPath("$[1].login").value("bulk-two"))
+                .andExpect(jsonPath("$[1].status").value("CREATED"))
+                .andExpect(jsonPath("$[2].line").value(4))
+                .andExpect(jsonPath("$[2].message").value("Login already in use"))
+                .andExpect(jsonPath("$[3].message").value("Email already in the import"))
+                .andExpect(jsonPath("$[4].message").value("Unknown authority: ROLE_UNKNOWN"))
+                .andExpect(jsonPath("$[5].status").value("REJECTED"))
+                .andExpect(jsonPath("$[6].message").value("Invalid JSON"));
+
+            User one = userRepository.findOneWithAuthoritiesByLogin("bulk-one").get();
+            assertThat(passwordEncoder.matches("secret", one.getPassword())).isTrue();
+            assertThat(one.getCreatedBy()).isEqualTo("system");
+            User two = userRepository.findOneWithAuthoritiesByLogin("bulk-two").get();
+            assertThat(two.getLangKey()).isEqualTo("fr");
+            assertThat(two.getResetKey()).isNotNull();
+            assertThat(two.getAuthorities()).extracting("name").containsOnly("ROLE_ADMIN", "ROLE_USER");
+            userSearchIndexer.indexPendingUsers();
+            assertThat(userSearchRepository.findOne(two.getId())).isNotNull();
+        } finally {
+            userRepository.findOneByLogin("bulk-one").ifPresent(userRepository::delete);
+            userRepository.findOneByLogin("bulk-two").ifPresent(userRepository::delete);
+        }
+    }
+
+    @Test
+    public void testImportUsersWithEmailsInAnotherCase() throws Exception {
+        String users = "{\"login\":\"bulk-case-one\",\"email\":\"Bulk-Case@Localhost\"}\n" +
+            "{\"login\":\"bulk-case-two\",\"email\":\"bulk-case@localhost\"}\n" +
+            "{\"login\":\"bulk-case-three\",\"email\":\"Admin@Localhost\"}\n";
+
+        try {
+            restUserMockMvc.perform(post("/api/users/_bulk")
+                    .contentType("application/x-ndjson")
+                    .content(users))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value("CREATED"))
+                .andExpect(jsonPath("$[1].message").value("Email already in the import"))
+                .andExpect(jsonPath("$[2].message").value("Email already in use"));
+
+            assertThat(userRepository.findOneByLogin("bulk-case-one").get().getEmail())
+                .isEqualTo("bulk-case@localhost");
+        } finally {
+            userRepository.findOneByLogin("bulk-case-one").ifPresent(userRepository::delete);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testImportInterruptedByThePasswordHashingPool() throws Exception {
+        PasswordHashingExecutor passwordHashingExecutor = mock(PasswordHashingExecutor.class);
+        when(passwordHashingExecutor.<String>executeAll(any()))
+            .thenAnswer(invocation -> ((List<Supplier<String>>) invocation.getArguments()[0]).stream()
+                .map(Supplier::get)
+                .collect(Collectors.toList()))
+            .thenThrow(new PasswordHashingRejectedException());
+        UserImportService interruptedImportService = new UserImportService(userService, userRepository,
+            grantedAuthorityRegistry, passwordEncoder, passwordHashingExecutor, mock(MailService.class), objectMapper,
+            validator, new MetricRegistry());
+        UserResource userResource = new UserResource(userRepository, mailService, userService, userSearchService,
+            userSuggestService, interruptedImportService, userAvailabilityService, objectMapper);
+        MockMvc restInterruptedMockMvc = MockMvcBuilders.standaloneSetup(userResource).build();
+        int batchSize = 500;
+        String users = IntStream.rangeClosed(1, batchSize + 1)
+            .mapToObj(i -> "{\"login\":\"bulk-batch-" + i + "\",\"email\":\"bulk-batch-" + i + "@localhost\"}\n")
+            .collect(Collectors.joining());
+
+        try {
+            restInterruptedMockMvc.perform(post("/api/users/_bulk")
+                    .contentType("application/x-ndjson")
+                    .content(users))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"))
+                .andExpect(header().string("X-blogApp-params", String.valueOf(batchSize)))
+                .andExpect(jsonPath("$.length()").value(batchSize + 1))
+                .andExpect(jsonPath("$[0].status").value("CREATED"))
+                .andExpect(jsonPath("$[" + (batchSize - 1) + "].status").value("CREATED"))
+                .andExpect(jsonPath("$[" + batchSize + "].login").value("bulk-batch-" + (batchSize + 1)))
+                .andExpect(jsonPath("$[" + batchSize + "].status").value("INTERRUPTED"));
+
+            assertThat(userRepository.findOneByLogin("bulk-batch-1")).isPresent();
+            assertThat(userRepository.findOneByLogin("bulk-batch-" + (batchSize + 1))).isEmpty();
+        } finally {
+            for (int i = 1; i <= batchSize; i++) {
+                userRepository.findOneByLogin("bulk-batch-" + i).ifPresent(userRepository::delete);
+            }
+        }
+    }
+
+    @Test
+    public void testSearchUsers() throws Exception {
+        userService.createUser("searchuser", "password", "Search", "User", "searchuser@localhost",
+            "http://placehold.it/50x50", "en");
+        try {
+            userSearchIndexer.indexPendingUsers();
+            elasticsearchTemplate.refresh(User.class);
+
+            restUserMockMvc.perform(get("/api/_search/users?query=searchuser&size=1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Total-Count", "1"))
+                .andExpect(header().string(HttpHeaders.LINK, containsString("query=searchuser")))
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].login").value("searchuser"))
+                .andExpect(jsonPath("$[0].firstName").value("Search"))
+                .andExpect(jsonPath("$[0].highlights.login[0]").value("<em>searchuser</em>"))
+                .andExpect(jsonPath("$[0].resetDate").doesNotExist())
+                .andExpect(jsonPath("$[0].createdBy").doesNotExist());
+        } finally {
+            userRepository.findOneByLogin("searchuser").ifPresent(userRepository::delete);
+        }
+    }
+
+    @Test
+    public void testSearchUsersWithAnInvalidQuery() throws Exception {
+        restUserMockMvc.perform(get("/api/_search/users").param("query", "login:("))
+            .andExpect(status().isBadRequest())
+            .andExpect(header().string("X-blogApp-error", containsString("Invalid query")));
+
+        restUserMockMvc.perform(get("/api/_search/users").param("query", "*").param("sort", "nosuchfield"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testSearchUsersBeyondTheResultWindow() throws Exception {
+        restUserMockMvc.perform(get("/api/_search/users?query=*&page=100&size=100"))
+            .andExpect(status().isBadRequest())
+            .andExpect(header().string("X-blogApp-error", "Only the first 10000 results can be read"));
+    }
+
+    @Test
+    public void testSuggestUsers() throws Exception {
+        userService.createUser("suggestuser", "password", "Suggested", "User", "suggestuser@localhost",
+            "http://placehold.it/50x50", "en");
+        try {
+            userSearchIndexer.indexPendingUsers();
+            elasticsearchTemplate.refresh(User.class);
+
+            restUserMockMvc.perform(get("/api/_suggest/users?prefix=sugg&size=5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].login").value("suggestuser"))
+                .andExpect(jsonPath("$[0].firstName").value("Suggested"))
+                .andExpect(jsonPath("$[0].imageUrl").value("http://placehold.it/50x50"));
+        } finally {
+            userRepository.findOneByLogin("suggestuser").ifPresent(userRepository::delete);
+        }
+    }
 }